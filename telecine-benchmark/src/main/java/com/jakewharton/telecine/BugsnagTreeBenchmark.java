@@ -0,0 +1,50 @@
+package com.jakewharton.telecine;
+
+import android.util.Log;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Logging into {@link BugsnagTree} from one thread, and from three while a fourth formats the
+ * buffer as an error report does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class BugsnagTreeBenchmark {
+  private BugsnagTree tree;
+
+  @Setup public void setUp() {
+    tree = new BugsnagTree();
+    // Start from a full buffer as a long running app would.
+    for (int i = 0; i < 500; i++) {
+      tree.log(Log.DEBUG, null, "Encoded frame", null);
+    }
+  }
+
+  @Benchmark @Group("uncontended") public void log() {
+    tree.log(Log.DEBUG, null, "Encoded frame", null);
+  }
+
+  @Benchmark @Group("contended") @GroupThreads(3) public void logWhileUpdating() {
+    tree.log(Log.DEBUG, null, "Encoded frame", null);
+  }
+
+  @Benchmark @Group("contended") @GroupThreads(1) public Object update() {
+    return tree.snapshot();
+  }
+}
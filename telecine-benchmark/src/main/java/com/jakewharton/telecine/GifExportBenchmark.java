@@ -0,0 +1,122 @@
+package com.jakewharton.telecine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.jakewharton.telecine.ColorQuantizer.IndexedFrame;
+
+/**
+ * The pure Java stages of exporting a GIF on synthetic screen-like frames: quantizing, LZW
+ * encoding, and the whole pipeline with a given number of workers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GifExportBenchmark {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 854;
+  private static final int PIPELINE_FRAMES = 10;
+
+  private final ColorQuantizer quantizer = new ColorQuantizer();
+  private int[] pixels;
+  private IndexedFrame indexed;
+
+  @State(Scope.Thread)
+  public static class Workers {
+    @Param({ "1", "4" }) public int workers;
+    ForkJoinPool pool;
+
+    @Setup public void setUp() {
+      pool = new ForkJoinPool(workers);
+    }
+
+    @TearDown public void tearDown() {
+      pool.shutdown();
+    }
+  }
+
+  @Setup public void setUp() {
+    pixels = frame(0);
+    indexed = quantizer.quantize(pixels, WIDTH, HEIGHT);
+  }
+
+  @Benchmark public Object quantize() {
+    return quantizer.quantize(pixels, WIDTH, HEIGHT);
+  }
+
+  @Benchmark public byte[] encodeFrame() {
+    return GifEncoder.encodeFrame(indexed, 10);
+  }
+
+  /** Reported per export of {@link #PIPELINE_FRAMES} frames. */
+  @Benchmark public int pipeline(Workers workers) throws IOException {
+    ForkJoinPool pool = workers.pool;
+    GifExportPipeline pipeline = new GifExportPipeline(pool, pool.getParallelism() * 2);
+    return pipeline.export(new SyntheticFrames(), new NullOutputStream(), 10);
+  }
+
+  /** A gradient background with text-like stripes which scroll, like a list. */
+  static int[] frame(int index) {
+    int offset = index * 7;
+    int[] pixels = new int[WIDTH * HEIGHT];
+    for (int y = 0; y < HEIGHT; y++) {
+      int row = (y + offset) % HEIGHT;
+      boolean text = row % 48 > 30 && row % 48 < 40;
+      for (int x = 0; x < WIDTH; x++) {
+        int color;
+        if (text && x > 40 && x < 400 && (x / 6) % 5 != 0) {
+          color = 0xff212121;
+        } else {
+          color = 0xff000000 | (row * 255 / HEIGHT) << 16 | (x * 255 / WIDTH) << 8 | 0xe0;
+        }
+        pixels[y * WIDTH + x] = color;
+      }
+    }
+    return pixels;
+  }
+
+  static final class SyntheticFrames implements GifExportPipeline.FrameSource {
+    private int frame;
+
+    @Override public int width() {
+      return WIDTH;
+    }
+
+    @Override public int height() {
+      return HEIGHT;
+    }
+
+    @Override public int[] nextFrame() {
+      return frame == PIPELINE_FRAMES ? null : frame(frame++);
+    }
+
+    @Override public int intervals() {
+      return 1;
+    }
+  }
+
+  static final class NullOutputStream extends OutputStream {
+    @Override public void write(int b) {
+    }
+
+    @Override public void write(byte[] b, int off, int len) {
+    }
+  }
+}
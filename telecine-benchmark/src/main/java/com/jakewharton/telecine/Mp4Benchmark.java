@@ -0,0 +1,147 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rewriting MP4 boxes through isoparser when trimming, joining and reading recordings, and moving
+ * the moov box ahead of the media data as every stop does. Sample data is tiny so the results are
+ * dominated by box parsing and writing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Mp4Benchmark {
+  /** One minute at 10 fps. */
+  private static final int FRAMES = 600;
+
+  private File dir;
+  private File first;
+  private File second;
+  private File output;
+
+  @Setup public void setUp() throws IOException {
+    dir = File.createTempFile("telecine", "benchmark");
+    if (!dir.delete() || !dir.mkdir()) {
+      throw new IOException("Unable to create " + dir);
+    }
+    first = TestRecordings.write(new File(dir, "first.mp4"), 0, FRAMES);
+    second = TestRecordings.write(new File(dir, "second.mp4"), 0, FRAMES);
+    output = new File(dir, "output.mp4");
+  }
+
+  @TearDown public void tearDown() {
+    for (File file : dir.listFiles()) {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+    //noinspection ResultOfMethodCallIgnored
+    dir.delete();
+  }
+
+  @Benchmark public boolean trim() throws IOException {
+    return RecordingTrimmer.trim(first, output, RecordingSession.TRIM_START_US,
+        RecordingSession.TRIM_END_US);
+  }
+
+  @Benchmark public long join() throws IOException {
+    RecordingJoiner.join(Arrays.asList(first, second), output);
+    return output.length();
+  }
+
+  @Benchmark public Object readMetadata() throws IOException {
+    return RecordingMetadata.read(first);
+  }
+
+  /** A fresh copy of a recording with its moov box last, as the platform muxer writes it. */
+  @State(Scope.Thread)
+  public static class MoovAtEnd {
+    /** Whether a free box ahead of mdat has room for moov, as the platform muxer reserves. */
+    @Param({ "false", "true" }) public boolean reserved;
+
+    private File dir;
+    private File template;
+    File file;
+
+    @Setup public void setUp() throws IOException {
+      dir = File.createTempFile("telecine", "benchmark");
+      if (!dir.delete() || !dir.mkdir()) {
+        throw new IOException("Unable to create " + dir);
+      }
+      File recording = TestRecordings.write(new File(dir, "recording.mp4"), 0, FRAMES);
+      // Trimming writes a flat MP4 with moov ahead of mdat.
+      File flat = new File(dir, "flat.mp4");
+      RecordingTrimmer.trim(recording, flat, 0, 0);
+      template = new File(dir, "template.mp4");
+      moveMovieBoxToEnd(flat, template, reserved);
+      file = new File(dir, "file.mp4");
+    }
+
+    /** FastStart rewrites the file in place, so every call needs the original back. */
+    @Setup(Level.Invocation) public void copy() throws IOException {
+      Files.copy(template.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown public void tearDown() {
+      for (File file : dir.listFiles()) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+      //noinspection ResultOfMethodCallIgnored
+      dir.delete();
+    }
+
+    private static void moveMovieBoxToEnd(File flat, File output, boolean reserved)
+        throws IOException {
+      try (RandomAccessFile in = new RandomAccessFile(flat, "r");
+           RandomAccessFile out = new RandomAccessFile(output, "rw")) {
+        FileChannel inChannel = in.getChannel();
+        FileChannel outChannel = out.getChannel();
+        out.setLength(0);
+        Mp4Box moov = Mp4Box.find(Mp4Box.scan(inChannel), "moov");
+        long freeSize = reserved ? moov.size + 1024 : 0;
+        // Everything after moov moves back by its size, then forward past the free box.
+        ByteBuffer moovBytes =
+            FastStart.readMovieBox(inChannel, moov, moov.end(), freeSize - moov.size);
+
+        FastStart.transferFully(inChannel, 0, moov.offset, outChannel);
+        if (reserved) {
+          outChannel.write(ByteBuffer.allocate((int) freeSize));
+          Mp4Box.writeFreeHeader(outChannel, moov.offset, freeSize);
+        }
+        FastStart.transferFully(inChannel, moov.end(), inChannel.size() - moov.end(),
+            outChannel);
+        while (moovBytes.hasRemaining()) {
+          outChannel.write(moovBytes);
+        }
+      }
+    }
+  }
+
+  @Benchmark public boolean fastStart(MoovAtEnd moovAtEnd) throws IOException {
+    return FastStart.process(moovAtEnd.file);
+  }
+}
@@ -0,0 +1,38 @@
+package com.jakewharton.telecine;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.jakewharton.telecine.RecordingSession.calculateRecordingInfo;
+
+/** Sizing a recording runs on every start, before the countdown ends. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordingInfoBenchmark {
+  private final EncoderLimits limits = new EncoderLimits(64000, 40000000);
+  private final CropRegion crop = new CropRegion(0.1f, 0.25f, 0.9f, 0.75f);
+
+  @Benchmark public Object fullScreen() {
+    return calculateRecordingInfo(1080, 1920, 480, false, 1920, 1080, 30, 100, limits);
+  }
+
+  @Benchmark public Object scaledDown() {
+    return calculateRecordingInfo(1440, 2560, 640, false, 1920, 1080, 30, 50, limits);
+  }
+
+  @Benchmark public Object cropped() {
+    return calculateRecordingInfo(1080, 1920, 480, false, 1920, 1080, 30, 100, limits, crop);
+  }
+}
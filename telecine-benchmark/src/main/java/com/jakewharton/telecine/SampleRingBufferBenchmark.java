@@ -0,0 +1,67 @@
+package com.jakewharton.telecine;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Instant replay writes every encoded frame into a {@link SampleRingBuffer} on the encoder's drain
+ * thread and reads the whole buffer back when saving.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleRingBufferBenchmark {
+  private static final int FRAME_RATE = 30;
+  /** About 8 Mbps. */
+  private static final int FRAME_BYTES = 32 * 1024;
+  private static final int CAPACITY_BYTES = 35 * FRAME_RATE * FRAME_BYTES;
+  private static final long REPLAY_US =
+      TimeUnit.SECONDS.toMicros(RecordingSession.REPLAY_SECONDS);
+
+  private SampleRingBuffer buffer;
+  private ByteBuffer frame;
+  private int frames;
+
+  @Setup public void setUp() {
+    buffer = new SampleRingBuffer(CAPACITY_BYTES, 35 * FRAME_RATE);
+    frame = ByteBuffer.allocateDirect(FRAME_BYTES);
+    // Fill the buffer so every write also evicts.
+    for (int i = 0; i < 40 * FRAME_RATE; i++) {
+      write();
+    }
+  }
+
+  private void write() {
+    // A key frame every second.
+    int flags = frames % FRAME_RATE == 0 ? SampleRingBuffer.FLAG_KEY_FRAME : 0;
+    frame.clear();
+    buffer.write(frame, frames * 1000000L / FRAME_RATE, flags);
+    frames++;
+  }
+
+  @Benchmark public void writeFrame() {
+    write();
+  }
+
+  @Benchmark public int readAll(final Blackhole blackhole) {
+    return buffer.read(REPLAY_US, new SampleRingBuffer.Reader() {
+      @Override public void onSample(ByteBuffer data, long presentationTimeUs, int flags) {
+        blackhole.consume(data.remaining());
+      }
+    });
+  }
+}
@@ -11,19 +11,31 @@ interface Analytics {
   String ACTION_CAPTURE_INTENT_LAUNCH = "Launch Overlay Launch";
   String ACTION_CAPTURE_INTENT_RESULT = "Launch Overlay Result";
   String ACTION_CHANGE_VIDEO_SIZE = "Change Video Size";
+  String ACTION_CHANGE_VIDEO_CODEC = "Change Video Codec";
   String ACTION_CHANGE_SHOW_COUNTDOWN = "Show Countdown";
   String ACTION_CHANGE_HIDE_RECENTS = "Hide In Recents";
   String ACTION_CHANGE_RECORDING_NOTIFICATION = "Recording Notification";
   String ACTION_CHANGE_SHOW_TOUCHES = "Show Touches";
+  String ACTION_CHANGE_USE_MEDIA_CODEC = "Use MediaCodec";
+  String ACTION_CHANGE_INSTANT_REPLAY = "Instant Replay";
+  String ACTION_CHANGE_SEGMENT_LENGTH = "Change Segment Length";
+  String ACTION_CHANGE_KEEP_ALIVE_INTERVAL = "Change Keep Alive Interval";
+  String ACTION_CHANGE_RECORDING_REGION = "Change Recording Region";
+  String ACTION_CHANGE_FRAGMENTED_OUTPUT = "Fragmented Output";
+  String ACTION_CHANGE_SHARE_TRANSCODE = "Share Transcode";
   String ACTION_OVERLAY_SHOW = "Overlay Show";
   String ACTION_OVERLAY_HIDE = "Overlay Hide";
   String ACTION_OVERLAY_CANCEL = "Overlay Cancel";
   String ACTION_RECORDING_START = "Recording Start";
   String ACTION_RECORDING_STOP = "Recording Stop";
+  String ACTION_STORAGE_FULL = "Storage Full";
   String ACTION_SHORTCUT_ADDED = "Shortcut Added";
   String ACTION_SHORTCUT_LAUNCHED = "Shortcut Launched";
 
   String VARIABLE_RECORDING_LENGTH = "Recording Length";
+  String VARIABLE_NOTIFICATION_LATENCY = "Stop To Notification";
+  String VARIABLE_START_LATENCY = "Tap To Start";
+  String VARIABLE_GIF_EXPORT = "GIF Export";
 
   /** @see {@link Tracker#send(Map)} for usage. */
   void send(Map<String, String> params);
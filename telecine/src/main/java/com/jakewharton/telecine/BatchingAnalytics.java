@@ -0,0 +1,104 @@
+package com.jakewharton.telecine;
+
+import android.os.Process;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import timber.log.Timber;
+
+/**
+ * An {@link Analytics} which queues hits and sends them to a delegate in batches on a background
+ * thread. Sending never blocks the caller: when the queue is full the hit is dropped and counted.
+ * The thread sleeps without a timeout while the queue is empty so an idle app is never woken.
+ */
+final class BatchingAnalytics implements Analytics {
+  private final Analytics delegate;
+  private final int capacity;
+  private final int batchSize;
+  private final long intervalNanos;
+
+  private final Queue<Map<String, String>> queue = new ConcurrentLinkedQueue<>();
+  /** Bounds the otherwise unbounded queue without taking a lock. */
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong dropped = new AtomicLong();
+  private long droppedReported;
+  /** True while the thread waits for the first hit after the queue emptied. */
+  private final AtomicBoolean idle = new AtomicBoolean();
+  private volatile Thread thread;
+
+  BatchingAnalytics(Analytics delegate, int capacity, int batchSize, long interval,
+      TimeUnit unit) {
+    this.delegate = delegate;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.intervalNanos = unit.toNanos(interval);
+  }
+
+  /** Start the thread which sends queued hits within an interval of the first being queued. */
+  void start() {
+    Thread thread = new Thread(new Runnable() {
+      @Override public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        while (true) {
+          if (size.get() == 0) {
+            idle.set(true);
+            // Checked again after publishing idle so a hit sent in between is not missed.
+            if (size.get() == 0) {
+              LockSupport.park(BatchingAnalytics.this);
+            }
+            idle.set(false);
+            continue;
+          }
+          // Let a batch gather. A full batch wakes the thread early.
+          LockSupport.parkNanos(BatchingAnalytics.this, intervalNanos);
+          flush();
+        }
+      }
+    }, "telecine-analytics");
+    thread.setDaemon(true);
+    this.thread = thread;
+    thread.start();
+  }
+
+  @Override public void send(Map<String, String> params) {
+    if (size.incrementAndGet() > capacity) {
+      size.decrementAndGet();
+      dropped.incrementAndGet();
+      return;
+    }
+    queue.offer(params);
+    if (idle.compareAndSet(true, false) || size.get() >= batchSize) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /** Send all queued hits to the delegate on the calling thread. Returns the number sent. */
+  int flush() {
+    int sent = 0;
+    Map<String, String> params;
+    while ((params = queue.poll()) != null) {
+      size.decrementAndGet();
+      try {
+        delegate.send(params);
+      } catch (RuntimeException e) {
+        Timber.w(e, "Unable to send analytics hit.");
+      }
+      sent++;
+    }
+    long dropped = this.dropped.get();
+    if (dropped != droppedReported) {
+      Timber.w("Dropped %s analytics hits because the queue was full.", dropped - droppedReported);
+      droppedReported = dropped;
+    }
+    return sent;
+  }
+
+  long droppedCount() {
+    return dropped.get();
+  }
+}
@@ -0,0 +1,59 @@
+package com.jakewharton.telecine;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A small pool of mutable bitmaps for reuse as decode and drawing targets. Bitmaps are matched by
+ * exact size and config so they can be used with {@code inBitmap} on every supported API level.
+ */
+final class BitmapPool {
+  private final int maxBytes;
+  private final ArrayDeque<Bitmap> bitmaps = new ArrayDeque<>();
+  private int bytes;
+
+  BitmapPool(int maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /** Returns a cleared bitmap from the pool, or a new one if none match. */
+  Bitmap get(int width, int height, Bitmap.Config config) {
+    Bitmap bitmap = take(width, height, config);
+    if (bitmap != null) {
+      bitmap.eraseColor(Color.TRANSPARENT);
+      return bitmap;
+    }
+    return Bitmap.createBitmap(width, height, config);
+  }
+
+  /** Returns a bitmap from the pool as-is for use as {@code inBitmap}, or null if none match. */
+  synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+    for (Iterator<Bitmap> i = bitmaps.iterator(); i.hasNext(); ) {
+      Bitmap bitmap = i.next();
+      if (bitmap.getWidth() == width && bitmap.getHeight() == height
+          && bitmap.getConfig() == config) {
+        i.remove();
+        bytes -= bitmap.getByteCount();
+        return bitmap;
+      }
+    }
+    return null;
+  }
+
+  /** Offer a bitmap which is no longer referenced anywhere else. */
+  synchronized void put(Bitmap bitmap) {
+    if (!bitmap.isMutable() || bitmap.isRecycled() || bitmap.getByteCount() > maxBytes) {
+      bitmap.recycle();
+      return;
+    }
+    bitmaps.addLast(bitmap);
+    bytes += bitmap.getByteCount();
+    while (bytes > maxBytes) {
+      Bitmap oldest = bitmaps.removeFirst();
+      bytes -= oldest.getByteCount();
+      oldest.recycle();
+    }
+  }
+}
@@ -3,40 +3,86 @@ package com.jakewharton.telecine;
 import android.util.Log;
 import com.bugsnag.android.Bugsnag;
 import com.bugsnag.android.Error;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import timber.log.Timber;
 
 /**
  * A logging implementation which buffers the last 200 messages and notifies on error exceptions.
+ * <p>
+ * Messages are written into a preallocated ring without locking so that logging threads never
+ * wait on each other or on {@link #update}. Entries are only formatted when an error is reported.
  */
 final class BugsnagTree extends Timber.Tree {
   private static final int BUFFER_SIZE = 200;
+  // A power of two larger than the buffer so slots being overwritten are rarely the ones read.
+  private static final int RING_SIZE = 256;
+  private static final int MASK = RING_SIZE - 1;
+  /** Marks a slot whose entry is being written. */
+  private static final long WRITING = -1;
 
-  // Adding one to the initial size accounts for the add before remove.
-  private final Deque<String> buffer = new ArrayDeque<>(BUFFER_SIZE + 1);
+  private final AtomicLong sequence = new AtomicLong();
+  /** The sequence number of the entry in each slot, or {@link #WRITING}. */
+  private final AtomicLongArray published = new AtomicLongArray(RING_SIZE);
+  private final AtomicLongArray timestamps = new AtomicLongArray(RING_SIZE);
+  private final AtomicIntegerArray priorities = new AtomicIntegerArray(RING_SIZE);
+  private final AtomicReferenceArray<String> messages = new AtomicReferenceArray<>(RING_SIZE);
+
+  BugsnagTree() {
+    for (int i = 0; i < RING_SIZE; i++) {
+      published.set(i, WRITING);
+    }
+  }
 
   @Override
   protected void log(int priority, String tag, String message, Throwable t) {
-    message = System.currentTimeMillis() + " " + priorityToString(priority) + " " + message;
-    synchronized (buffer) {
-      buffer.addLast(message);
-      if (buffer.size() > BUFFER_SIZE) {
-        buffer.removeFirst();
-      }
-    }
+    long seq = sequence.getAndIncrement();
+    int slot = (int) (seq & MASK);
+    published.set(slot, WRITING);
+    timestamps.set(slot, System.currentTimeMillis());
+    priorities.set(slot, priority);
+    messages.set(slot, message);
+    published.set(slot, seq);
+
     if (t != null && priority == Log.ERROR) {
       Bugsnag.notify(t);
     }
   }
 
   public void update(Error error) {
-    synchronized (buffer) {
-      int i = 1;
-      for (String message : buffer) {
-        error.addToTab("Log", String.format("%03d", i++), message);
+    int i = 1;
+    for (String message : snapshot()) {
+      error.addToTab("Log", String.format("%03d", i++), message);
+    }
+  }
+
+  /** The formatted buffered messages, oldest first. Entries being written are skipped. */
+  String[] snapshot() {
+    long end = sequence.get();
+    long start = Math.max(0, end - BUFFER_SIZE);
+    String[] entries = new String[(int) (end - start)];
+    int count = 0;
+    for (long seq = start; seq < end; seq++) {
+      int slot = (int) (seq & MASK);
+      if (published.get(slot) != seq) {
+        continue;
       }
+      long timestamp = timestamps.get(slot);
+      int priority = priorities.get(slot);
+      String message = messages.get(slot);
+      if (published.get(slot) != seq) {
+        continue; // Overwritten while being read.
+      }
+      entries[count++] = timestamp + " " + priorityToString(priority) + " " + message;
+    }
+    if (count == entries.length) {
+      return entries;
     }
+    String[] complete = new String[count];
+    System.arraycopy(entries, 0, complete, 0, count);
+    return complete;
   }
 
   private static String priorityToString(int priority) {
@@ -0,0 +1,121 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaFormat;
+import android.support.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Names the codec and profile of an encoded stream. The profile is read from the stream's
+ * parameter sets since encoders which pick their own profile do not report it in their output
+ * format.
+ */
+final class CodecProfile {
+  private static final int HEVC_NAL_VPS = 32;
+  private static final int HEVC_NAL_SPS = 33;
+
+  private CodecProfile() {
+    throw new AssertionError("No instances.");
+  }
+
+  static String codecName(String mimeType) {
+    switch (mimeType) {
+      case MediaFormat.MIMETYPE_VIDEO_AVC:
+        return "H.264";
+      case MediaFormat.MIMETYPE_VIDEO_HEVC:
+        return "HEVC";
+      default:
+        return mimeType;
+    }
+  }
+
+  /**
+   * The profile in {@code csd}, the {@code csd-0} codec specific data of an output format holding
+   * Annex B parameter sets. Returns null if it cannot be read.
+   */
+  @Nullable static String profileName(String mimeType, ByteBuffer csd) {
+    ByteBuffer data = csd.duplicate();
+    int nal = skipStartCode(data);
+    if (nal == -1) {
+      return null;
+    }
+    switch (mimeType) {
+      case MediaFormat.MIMETYPE_VIDEO_AVC:
+        // nal_unit_header(1) then profile_idc.
+        return nal + 1 < data.limit() ? avcProfileName(data.get(nal + 1) & 0xFF) : null;
+      case MediaFormat.MIMETYPE_VIDEO_HEVC:
+        return hevcProfile(data, nal);
+      default:
+        return null;
+    }
+  }
+
+  /** Returns the index of the first byte after the leading start code, or -1 if there is none. */
+  private static int skipStartCode(ByteBuffer data) {
+    int zeros = 0;
+    for (int i = data.position(); i < data.limit(); i++) {
+      int b = data.get(i);
+      if (b == 0) {
+        zeros++;
+      } else if (b == 1 && zeros >= 2) {
+        return i + 1;
+      } else {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  @Nullable private static String hevcProfile(ByteBuffer data, int nal) {
+    if (nal >= data.limit()) {
+      return null;
+    }
+    int type = (data.get(nal) >> 1) & 0x3F;
+    // profile_tier_level follows the two byte nal_unit_header and the leading fields of the set.
+    int offset;
+    if (type == HEVC_NAL_VPS) {
+      offset = nal + 2 + 4;
+    } else if (type == HEVC_NAL_SPS) {
+      offset = nal + 2 + 1;
+    } else {
+      return null;
+    }
+    // general_profile_space(2) general_tier_flag(1) general_profile_idc(5)
+    return offset < data.limit() ? hevcProfileName(data.get(offset) & 0x1F) : null;
+  }
+
+  private static String avcProfileName(int profileIdc) {
+    switch (profileIdc) {
+      case 66:
+        return "Baseline";
+      case 77:
+        return "Main";
+      case 88:
+        return "Extended";
+      case 100:
+        return "High";
+      case 110:
+        return "High 10";
+      case 122:
+        return "High 4:2:2";
+      case 244:
+        return "High 4:4:4";
+      default:
+        return "profile " + profileIdc;
+    }
+  }
+
+  private static String hevcProfileName(int profileIdc) {
+    switch (profileIdc) {
+      case 1:
+        return "Main";
+      case 2:
+        return "Main 10";
+      case 3:
+        return "Main Still Picture";
+      case 4:
+        return "Range Extensions";
+      default:
+        return "profile " + profileIdc;
+    }
+  }
+}
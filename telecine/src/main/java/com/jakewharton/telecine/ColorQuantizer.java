@@ -0,0 +1,205 @@
+package com.jakewharton.telecine;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a frame to a palette of at most 256 colors with median cut over a 15-bit color
+ * histogram. Pure Java so it can run on any number of worker threads and be measured on the JVM.
+ * Instances hold scratch buffers and are not thread-safe.
+ */
+final class ColorQuantizer {
+  static final int MAX_COLORS = 256;
+
+  private static final int BITS = 5;
+  private static final int SIZE = 1 << (3 * BITS);
+  private static final int RED = 0;
+  private static final int GREEN = 1;
+  private static final int BLUE = 2;
+
+  private final int[] histogram = new int[SIZE];
+  /** Palette index plus one for each 15-bit color in the frame. */
+  private final int[] lookup = new int[SIZE];
+  private final int[] colors = new int[SIZE];
+
+  /** A frame reduced to indices into a palette. */
+  static final class IndexedFrame {
+    final int width;
+    final int height;
+    final byte[] indices;
+    /** RGB colors, at most {@link #MAX_COLORS}. */
+    final int[] palette;
+
+    IndexedFrame(int width, int height, byte[] indices, int[] palette) {
+      this.width = width;
+      this.height = height;
+      this.indices = indices;
+      this.palette = palette;
+    }
+  }
+
+  IndexedFrame quantize(int[] argb, int width, int height) {
+    Arrays.fill(histogram, 0);
+    int pixelCount = width * height;
+    for (int i = 0; i < pixelCount; i++) {
+      histogram[key(argb[i])]++;
+    }
+
+    int colorCount = 0;
+    for (int key = 0; key < SIZE; key++) {
+      if (histogram[key] != 0) {
+        colors[colorCount++] = key;
+      }
+    }
+
+    int[] palette;
+    if (colorCount <= MAX_COLORS) {
+      // Few enough colors to keep every one of them.
+      palette = new int[colorCount];
+      for (int i = 0; i < colorCount; i++) {
+        palette[i] = rgb(colors[i]);
+        lookup[colors[i]] = i + 1;
+      }
+    } else {
+      palette = medianCut(colorCount);
+    }
+
+    byte[] indices = new byte[pixelCount];
+    for (int i = 0; i < pixelCount; i++) {
+      indices[i] = (byte) (lookup[key(argb[i])] - 1);
+    }
+    return new IndexedFrame(width, height, indices, palette);
+  }
+
+  /** Split the box with the most pixels along its widest channel until there are enough boxes. */
+  private int[] medianCut(int colorCount) {
+    int[] starts = new int[MAX_COLORS];
+    int[] ends = new int[MAX_COLORS];
+    long[] boxPixels = new long[MAX_COLORS];
+    int boxes = 1;
+    ends[0] = colorCount;
+    for (int i = 0; i < colorCount; i++) {
+      boxPixels[0] += histogram[colors[i]];
+    }
+
+    while (boxes < MAX_COLORS) {
+      int box = -1;
+      long mostPixels = 0;
+      for (int i = 0; i < boxes; i++) {
+        if (ends[i] - starts[i] < 2) {
+          continue;
+        }
+        if (boxPixels[i] > mostPixels) {
+          mostPixels = boxPixels[i];
+          box = i;
+        }
+      }
+      if (box == -1) {
+        break; // Every box is a single color.
+      }
+
+      int start = starts[box];
+      int end = ends[box];
+      int channel = widestChannel(start, end);
+      sortByChannel(start, end, channel);
+
+      // Split where half of the box's pixels fall on either side.
+      long half = mostPixels / 2;
+      long seen = 0;
+      int split = end - 1;
+      for (int i = start; i < end - 1; i++) {
+        seen += histogram[colors[i]];
+        if (seen >= half) {
+          split = i + 1;
+          break;
+        }
+      }
+
+      ends[box] = split;
+      boxPixels[box] = seen;
+      starts[boxes] = split;
+      ends[boxes] = end;
+      boxPixels[boxes] = mostPixels - seen;
+      boxes++;
+    }
+
+    int[] palette = new int[boxes];
+    for (int i = 0; i < boxes; i++) {
+      palette[i] = average(starts[i], ends[i]);
+      for (int j = starts[i]; j < ends[i]; j++) {
+        lookup[colors[j]] = i + 1;
+      }
+    }
+    return palette;
+  }
+
+  private int widestChannel(int start, int end) {
+    int minR = 31, minG = 31, minB = 31;
+    int maxR = 0, maxG = 0, maxB = 0;
+    for (int i = start; i < end; i++) {
+      int key = colors[i];
+      int r = channel(key, RED);
+      int g = channel(key, GREEN);
+      int b = channel(key, BLUE);
+      minR = Math.min(minR, r);
+      maxR = Math.max(maxR, r);
+      minG = Math.min(minG, g);
+      maxG = Math.max(maxG, g);
+      minB = Math.min(minB, b);
+      maxB = Math.max(maxB, b);
+    }
+    int rangeR = maxR - minR;
+    int rangeG = maxG - minG;
+    int rangeB = maxB - minB;
+    if (rangeG >= rangeR && rangeG >= rangeB) {
+      return GREEN;
+    }
+    return rangeR >= rangeB ? RED : BLUE;
+  }
+
+  /** Sort a range of colors by one channel, which only has 32 values, with a counting sort. */
+  private void sortByChannel(int start, int end, int channel) {
+    int[] counts = new int[(1 << BITS) + 1];
+    for (int i = start; i < end; i++) {
+      counts[channel(colors[i], channel) + 1]++;
+    }
+    for (int i = 1; i < counts.length; i++) {
+      counts[i] += counts[i - 1];
+    }
+    int[] sorted = new int[end - start];
+    for (int i = start; i < end; i++) {
+      sorted[counts[channel(colors[i], channel)]++] = colors[i];
+    }
+    System.arraycopy(sorted, 0, colors, start, sorted.length);
+  }
+
+  /** The pixel-weighted average of a box, which also becomes the palette entry for its colors. */
+  private int average(int start, int end) {
+    long r = 0, g = 0, b = 0, total = 0;
+    for (int i = start; i < end; i++) {
+      int key = colors[i];
+      int count = histogram[key];
+      r += (long) expand(channel(key, RED)) * count;
+      g += (long) expand(channel(key, GREEN)) * count;
+      b += (long) expand(channel(key, BLUE)) * count;
+      total += count;
+    }
+    return (int) (r / total) << 16 | (int) (g / total) << 8 | (int) (b / total);
+  }
+
+  private static int key(int argb) {
+    return ((argb >> 9) & 0x7c00) | ((argb >> 6) & 0x03e0) | ((argb >> 3) & 0x001f);
+  }
+
+  private static int channel(int key, int channel) {
+    return (key >> (BITS * (2 - channel))) & 0x1f;
+  }
+
+  private static int expand(int value) {
+    return (value << 3) | (value >> 2);
+  }
+
+  private static int rgb(int key) {
+    return expand(channel(key, RED)) << 16 | expand(channel(key, GREEN)) << 8
+        | expand(channel(key, BLUE));
+  }
+}
@@ -0,0 +1,103 @@
+package com.jakewharton.telecine;
+
+import android.support.annotation.Nullable;
+import java.util.Locale;
+
+/**
+ * A rectangle of the screen to record. Edges are fractions of the screen size so that a region
+ * chosen at one resolution applies to any other.
+ */
+final class CropRegion {
+  static final CropRegion FULL = new CropRegion(0, 0, 1, 1);
+  /** Regions narrower or shorter than this fraction of the screen are rejected as accidental. */
+  static final float MIN_SIZE = 0.1f;
+
+  final float left;
+  final float top;
+  final float right;
+  final float bottom;
+
+  CropRegion(float left, float top, float right, float bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  /**
+   * Create a region from a pixel rectangle on a screen of {@code width} by {@code height}. The
+   * rectangle may be given in any corner order and is clamped to the screen. Returns {@link #FULL}
+   * when the result would be smaller than {@link #MIN_SIZE}.
+   */
+  static CropRegion fromPixels(float x1, float y1, float x2, float y2, int width, int height) {
+    float left = clamp(Math.min(x1, x2) / width);
+    float top = clamp(Math.min(y1, y2) / height);
+    float right = clamp(Math.max(x1, x2) / width);
+    float bottom = clamp(Math.max(y1, y2) / height);
+    if (right - left < MIN_SIZE || bottom - top < MIN_SIZE) {
+      return FULL;
+    }
+    return new CropRegion(left, top, right, bottom);
+  }
+
+  /** Parse the value of {@link #flatten()}. Returns {@link #FULL} for null or malformed input. */
+  static CropRegion unflatten(@Nullable String value) {
+    if (value == null) {
+      return FULL;
+    }
+    String[] parts = value.split(",");
+    if (parts.length != 4) {
+      return FULL;
+    }
+    try {
+      return fromFractions(Float.parseFloat(parts[0]), Float.parseFloat(parts[1]),
+          Float.parseFloat(parts[2]), Float.parseFloat(parts[3]));
+    } catch (NumberFormatException e) {
+      return FULL;
+    }
+  }
+
+  private static CropRegion fromFractions(float left, float top, float right, float bottom) {
+    return fromPixels(left, top, right, bottom, 1, 1);
+  }
+
+  private static float clamp(float value) {
+    return Math.max(0, Math.min(1, value));
+  }
+
+  boolean isFull() {
+    return left == 0 && top == 0 && right == 1 && bottom == 1;
+  }
+
+  float width() {
+    return right - left;
+  }
+
+  float height() {
+    return bottom - top;
+  }
+
+  String flatten() {
+    return String.format(Locale.US, "%.4f,%.4f,%.4f,%.4f", left, top, right, bottom);
+  }
+
+  @Override public boolean equals(Object o) {
+    if (!(o instanceof CropRegion)) {
+      return false;
+    }
+    CropRegion other = (CropRegion) o;
+    return left == other.left && top == other.top && right == other.right
+        && bottom == other.bottom;
+  }
+
+  @Override public int hashCode() {
+    int result = Float.floatToIntBits(left);
+    result = 31 * result + Float.floatToIntBits(top);
+    result = 31 * result + Float.floatToIntBits(right);
+    return 31 * result + Float.floatToIntBits(bottom);
+  }
+
+  @Override public String toString() {
+    return "CropRegion{" + flatten() + '}';
+  }
+}
@@ -0,0 +1,33 @@
+package com.jakewharton.telecine;
+
+import android.content.SharedPreferences;
+
+final class CropRegionPreference {
+  private final SharedPreferences preferences;
+  private final String key;
+
+  public CropRegionPreference(SharedPreferences preferences, String key) {
+    this.preferences = preferences;
+    this.key = key;
+  }
+
+  public CropRegion get() {
+    return CropRegion.unflatten(preferences.getString(key, null));
+  }
+
+  public boolean isSet() {
+    return preferences.contains(key);
+  }
+
+  public void set(CropRegion value) {
+    if (value.isFull()) {
+      delete();
+    } else {
+      preferences.edit().putString(key, value.flatten()).apply();
+    }
+  }
+
+  public void delete() {
+    preferences.edit().remove(key).apply();
+  }
+}
@@ -0,0 +1,170 @@
+package com.jakewharton.telecine;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+import butterknife.Bind;
+import butterknife.BindColor;
+import butterknife.BindDimen;
+import butterknife.ButterKnife;
+import butterknife.OnClick;
+
+import static android.graphics.PixelFormat.TRANSLUCENT;
+import static android.view.WindowManager.LayoutParams.FLAG_LAYOUT_INSET_DECOR;
+import static android.view.WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
+import static android.view.WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS;
+import static android.view.WindowManager.LayoutParams.MATCH_PARENT;
+import static android.view.WindowManager.LayoutParams.TYPE_SYSTEM_ERROR;
+
+/**
+ * 覆盖整个屏幕的选区视图, 拖动选择需要录制的区域.
+ */
+@SuppressLint("ViewConstructor")
+final class CropSelectionView extends FrameLayout {
+  interface Listener {
+    /** Called with the chosen region, which is {@link CropRegion#FULL} for the full screen. */
+    void onSelected(CropRegion region);
+
+    void onCancel();
+  }
+
+  /** Show the selection over everything else on screen, starting from {@code initial}. */
+  static void show(Context context, CropRegion initial, final Listener listener) {
+    final WindowManager windowManager =
+        (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+    final CropSelectionView[] view = new CropSelectionView[1];
+    view[0] = new CropSelectionView(context, initial, new Listener() {
+      @Override public void onSelected(CropRegion region) {
+        windowManager.removeView(view[0]);
+        listener.onSelected(region);
+      }
+
+      @Override public void onCancel() {
+        windowManager.removeView(view[0]);
+        listener.onCancel();
+      }
+    });
+    WindowManager.LayoutParams params =
+        new WindowManager.LayoutParams(MATCH_PARENT, MATCH_PARENT, TYPE_SYSTEM_ERROR,
+            FLAG_LAYOUT_NO_LIMITS | FLAG_LAYOUT_INSET_DECOR | FLAG_LAYOUT_IN_SCREEN, TRANSLUCENT);
+    windowManager.addView(view[0], params);
+  }
+
+  @Bind(R.id.crop_selection_done) View doneView;
+
+  @BindColor(R.color.crop_scrim) int scrimColor;
+  @BindColor(R.color.accent_normal) int strokeColor;
+  @BindDimen(R.dimen.crop_selection_stroke) int strokeWidth;
+
+  private final Listener listener;
+  private final Paint scrimPaint = new Paint();
+  private final Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final RectF selection = new RectF();
+  private final int[] location = new int[2];
+  private final int screenWidth;
+  private final int screenHeight;
+  private final CropRegion initial;
+  private float downX;
+  private float downY;
+
+  private CropSelectionView(Context context, CropRegion initial, Listener listener) {
+    super(context);
+    this.listener = listener;
+    this.initial = initial;
+
+    inflate(context, R.layout.crop_selection_view, this);
+    ButterKnife.bind(this);
+    setWillNotDraw(false);
+
+    scrimPaint.setColor(scrimColor);
+    strokePaint.setColor(strokeColor);
+    strokePaint.setStyle(Paint.Style.STROKE);
+    strokePaint.setStrokeWidth(strokeWidth);
+
+    // Regions are fractions of the real display, including any system bars.
+    DisplayMetrics metrics = new DisplayMetrics();
+    WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+    wm.getDefaultDisplay().getRealMetrics(metrics);
+    screenWidth = metrics.widthPixels;
+    screenHeight = metrics.heightPixels;
+  }
+
+  @Override protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    if (!initial.isFull()) {
+      selection.set(initial.left * screenWidth, initial.top * screenHeight,
+          initial.right * screenWidth, initial.bottom * screenHeight);
+    }
+    updateDone();
+  }
+
+  @Override public boolean onTouchEvent(MotionEvent event) {
+    // Raw coordinates are relative to the screen, which is what regions are measured against.
+    float x = event.getRawX();
+    float y = event.getRawY();
+    switch (event.getActionMasked()) {
+      case MotionEvent.ACTION_DOWN:
+        downX = x;
+        downY = y;
+        selection.set(x, y, x, y);
+        break;
+      case MotionEvent.ACTION_MOVE:
+      case MotionEvent.ACTION_UP:
+        selection.set(Math.min(downX, x), Math.min(downY, y), Math.max(downX, x),
+            Math.max(downY, y));
+        break;
+      default:
+        return super.onTouchEvent(event);
+    }
+    updateDone();
+    invalidate();
+    return true;
+  }
+
+  @Override protected void onDraw(Canvas canvas) {
+    getLocationOnScreen(location);
+    canvas.save();
+    canvas.translate(-location[0], -location[1]);
+    if (selection.isEmpty()) {
+      canvas.drawRect(0, 0, screenWidth, screenHeight, scrimPaint);
+    } else {
+      // Dim everything outside of the selection.
+      canvas.drawRect(0, 0, screenWidth, selection.top, scrimPaint);
+      canvas.drawRect(0, selection.bottom, screenWidth, screenHeight, scrimPaint);
+      canvas.drawRect(0, selection.top, selection.left, selection.bottom, scrimPaint);
+      canvas.drawRect(selection.right, selection.top, screenWidth, selection.bottom, scrimPaint);
+      canvas.drawRect(selection, strokePaint);
+    }
+    canvas.restore();
+  }
+
+  private CropRegion currentRegion() {
+    return CropRegion.fromPixels(selection.left, selection.top, selection.right, selection.bottom,
+        screenWidth, screenHeight);
+  }
+
+  /** Only allow confirming a selection which is large enough to be a region. */
+  private void updateDone() {
+    doneView.setEnabled(!currentRegion().isFull());
+  }
+
+  @OnClick(R.id.crop_selection_done) void onDoneClicked() {
+    listener.onSelected(currentRegion());
+  }
+
+  @OnClick(R.id.crop_selection_full) void onFullClicked() {
+    listener.onSelected(CropRegion.FULL);
+  }
+
+  @OnClick(R.id.crop_selection_cancel) void onCancelClicked() {
+    listener.onCancel();
+  }
+}
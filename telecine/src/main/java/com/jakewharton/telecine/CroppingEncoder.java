@@ -0,0 +1,340 @@
+package com.jakewharton.telecine;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import timber.log.Timber;
+
+import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+
+/**
+ * A {@link RecordingEncoder} which records only the {@link CropRegion} of its input. The display
+ * renders into a texture at {@link RecordingInfo#displayWidth} by
+ * {@link RecordingInfo#displayHeight} and the region is drawn into the delegate's smaller input
+ * surface, so the delegate never sees the pixels outside of it.
+ */
+final class CroppingEncoder implements RecordingEncoder {
+  private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+  private static final String VERTEX_SHADER = ""
+      + "uniform mat4 uTexMatrix;\n"
+      + "attribute vec4 aPosition;\n"
+      + "attribute vec4 aTexCoord;\n"
+      + "varying vec2 vTexCoord;\n"
+      + "void main() {\n"
+      + "  gl_Position = aPosition;\n"
+      + "  vTexCoord = (uTexMatrix * aTexCoord).xy;\n"
+      + "}\n";
+  private static final String FRAGMENT_SHADER = ""
+      + "#extension GL_OES_EGL_image_external : require\n"
+      + "precision mediump float;\n"
+      + "varying vec2 vTexCoord;\n"
+      + "uniform samplerExternalOES sTexture;\n"
+      + "void main() {\n"
+      + "  gl_FragColor = texture2D(sTexture, vTexCoord);\n"
+      + "}\n";
+  private static final float[] POSITIONS = {
+      -1, -1, // Bottom left.
+      1, -1, // Bottom right.
+      -1, 1, // Top left.
+      1, 1, // Top right.
+  };
+
+  private final RecordingEncoder delegate;
+  private final HandlerThread renderThread = new HandlerThread("telecine-crop");
+  private final float[] texMatrix = new float[16];
+  private final Semaphore framesDrawn = new Semaphore(0);
+
+  private Handler handler;
+  // Only touched on the render thread.
+  private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+  private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+  private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+  private SurfaceTexture texture;
+  private int program;
+  private int textureId;
+  private FloatBuffer positions;
+  private FloatBuffer texCoords;
+  private boolean started;
+
+  private Surface inputSurface;
+
+  CroppingEncoder(RecordingEncoder delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override public void prepare(final RecordingInfo info) throws IOException {
+    delegate.prepare(info);
+
+    renderThread.start();
+    handler = new Handler(renderThread.getLooper());
+    try {
+      inputSurface = runOnRenderThread(new Callable<Surface>() {
+        @Override public Surface call() {
+          return setUp(info);
+        }
+      });
+    } catch (IllegalStateException e) {
+      // Release only sees the delegate once the render thread is gone.
+      stopRenderThread();
+      throw new IOException("Unable to set up cropping.", e);
+    }
+  }
+
+  @Override public Surface getInputSurface() {
+    return inputSurface;
+  }
+
+  /**
+   * Wait until the next frame rendered into the input surface has been drawn. Producers which
+   * render faster than real time, such as a decoder, must wait after each frame or frames are lost.
+   */
+  boolean awaitFrame(long timeout, TimeUnit unit) throws InterruptedException {
+    return framesDrawn.tryAcquire(timeout, unit);
+  }
+
+  @Override public void start() {
+    delegate.start();
+    runOnRenderThread(new Callable<Void>() {
+      @Override public Void call() {
+        started = true;
+        return null;
+      }
+    });
+  }
+
+  @Override public void stop() {
+    // Make sure no frame is drawn into the delegate once it has been asked to stop.
+    runOnRenderThread(new Callable<Void>() {
+      @Override public Void call() {
+        started = false;
+        return null;
+      }
+    });
+    delegate.stop();
+  }
+
+  @Override public boolean setBitRate(int bitRate) {
+    return delegate.setBitRate(bitRate);
+  }
+
+  /** Safe to call after {@link #prepare} failed part way. */
+  @Override public void release() {
+    if (handler != null) {
+      stopRenderThread();
+    }
+    delegate.release();
+  }
+
+  private void stopRenderThread() {
+    runOnRenderThread(new Callable<Void>() {
+      @Override public Void call() {
+        tearDown();
+        return null;
+      }
+    });
+    renderThread.quitSafely();
+    handler = null;
+  }
+
+  private Surface setUp(RecordingInfo info) {
+    eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+    int[] version = new int[2];
+    if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
+      throw new IllegalStateException("Unable to initialize EGL.");
+    }
+    int[] configAttributes = {
+        EGL14.EGL_RED_SIZE, 8,
+        EGL14.EGL_GREEN_SIZE, 8,
+        EGL14.EGL_BLUE_SIZE, 8,
+        EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+        EGL_RECORDABLE_ANDROID, 1,
+        EGL14.EGL_NONE
+    };
+    EGLConfig[] configs = new EGLConfig[1];
+    int[] configCount = new int[1];
+    if (!EGL14.eglChooseConfig(eglDisplay, configAttributes, 0, configs, 0, 1, configCount, 0)
+        || configCount[0] == 0) {
+      throw new IllegalStateException("No recordable EGL config.");
+    }
+    int[] contextAttributes = { EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE };
+    eglContext = EGL14.eglCreateContext(eglDisplay, configs[0], EGL14.EGL_NO_CONTEXT,
+        contextAttributes, 0);
+    int[] surfaceAttributes = { EGL14.EGL_NONE };
+    eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, configs[0], delegate.getInputSurface(),
+        surfaceAttributes, 0);
+    if (eglContext == EGL14.EGL_NO_CONTEXT || eglSurface == EGL14.EGL_NO_SURFACE) {
+      throw new IllegalStateException("Unable to create EGL context or surface.");
+    }
+    EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext);
+
+    program = createProgram();
+    positions = floatBuffer(POSITIONS);
+    texCoords = floatBuffer(texCoordsFor(info.crop));
+
+    int[] textures = new int[1];
+    GLES20.glGenTextures(1, textures, 0);
+    textureId = textures[0];
+    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER,
+        GLES20.GL_LINEAR);
+    GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER,
+        GLES20.GL_LINEAR);
+    GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S,
+        GLES20.GL_CLAMP_TO_EDGE);
+    GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T,
+        GLES20.GL_CLAMP_TO_EDGE);
+    GLES20.glViewport(0, 0, info.width, info.height);
+
+    texture = new SurfaceTexture(textureId);
+    texture.setDefaultBufferSize(info.displayWidth, info.displayHeight);
+    texture.setOnFrameAvailableListener(new SurfaceTexture.OnFrameAvailableListener() {
+      @Override public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        drawFrame();
+      }
+    }, handler);
+    Timber.d("Cropping %s x %s display to %s x %s (%s).", info.displayWidth, info.displayHeight,
+        info.width, info.height, info.crop);
+    return new Surface(texture);
+  }
+
+  private void drawFrame() {
+    if (texture == null) {
+      return; // Released while a frame was pending.
+    }
+    // Always latch the frame so the display can render the next one.
+    texture.updateTexImage();
+    if (!started) {
+      framesDrawn.release();
+      return;
+    }
+    texture.getTransformMatrix(texMatrix);
+
+    GLES20.glUseProgram(program);
+    int positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+    int texCoordHandle = GLES20.glGetAttribLocation(program, "aTexCoord");
+    GLES20.glEnableVertexAttribArray(positionHandle);
+    GLES20.glVertexAttribPointer(positionHandle, 2, GLES20.GL_FLOAT, false, 0, positions);
+    GLES20.glEnableVertexAttribArray(texCoordHandle);
+    GLES20.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false, 0, texCoords);
+    GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "uTexMatrix"), 1, false,
+        texMatrix, 0);
+    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    GLES20.glDisableVertexAttribArray(positionHandle);
+    GLES20.glDisableVertexAttribArray(texCoordHandle);
+
+    EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, texture.getTimestamp());
+    EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+    framesDrawn.release();
+  }
+
+  private void tearDown() {
+    if (texture != null) {
+      texture.release();
+      texture = null;
+    }
+    if (inputSurface != null) {
+      inputSurface.release();
+    }
+    if (eglDisplay != EGL14.EGL_NO_DISPLAY) {
+      if (program != 0) {
+        GLES20.glDeleteProgram(program);
+      }
+      if (textureId != 0) {
+        GLES20.glDeleteTextures(1, new int[] { textureId }, 0);
+      }
+      EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE,
+          EGL14.EGL_NO_CONTEXT);
+      EGL14.eglDestroySurface(eglDisplay, eglSurface);
+      EGL14.eglDestroyContext(eglDisplay, eglContext);
+      EGL14.eglReleaseThread();
+      EGL14.eglTerminate(eglDisplay);
+      eglDisplay = EGL14.EGL_NO_DISPLAY;
+    }
+  }
+
+  /**
+   * Texture coordinates of the region for each corner of {@link #POSITIONS}. Regions are measured
+   * from the top left of the screen while texture coordinates start at the bottom left.
+   */
+  static float[] texCoordsFor(CropRegion crop) {
+    float bottom = 1 - crop.bottom;
+    float top = 1 - crop.top;
+    return new float[] {
+        crop.left, bottom,
+        crop.right, bottom,
+        crop.left, top,
+        crop.right, top,
+    };
+  }
+
+  private static int createProgram() {
+    int program = GLES20.glCreateProgram();
+    GLES20.glAttachShader(program, compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER));
+    GLES20.glAttachShader(program, compileShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER));
+    GLES20.glLinkProgram(program);
+    int[] status = new int[1];
+    GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+    if (status[0] != GLES20.GL_TRUE) {
+      String log = GLES20.glGetProgramInfoLog(program);
+      GLES20.glDeleteProgram(program);
+      throw new IllegalStateException("Unable to link program: " + log);
+    }
+    return program;
+  }
+
+  private static int compileShader(int type, String source) {
+    int shader = GLES20.glCreateShader(type);
+    GLES20.glShaderSource(shader, source);
+    GLES20.glCompileShader(shader);
+    int[] status = new int[1];
+    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+    if (status[0] == 0) {
+      String log = GLES20.glGetShaderInfoLog(shader);
+      GLES20.glDeleteShader(shader);
+      throw new IllegalStateException("Unable to compile shader: " + log);
+    }
+    return shader;
+  }
+
+  private static FloatBuffer floatBuffer(float[] values) {
+    FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+    buffer.put(values).position(0);
+    return buffer;
+  }
+
+  private <T> T runOnRenderThread(Callable<T> callable) {
+    FutureTask<T> task = new FutureTask<>(callable);
+    handler.post(task);
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for the render thread.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Render thread failed.", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.support.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import timber.log.Timber;
+
+/**
+ * What the device's video encoders support. Walking {@link MediaCodecList} is slow so it is probed
+ * once for each OS build and app version and the result is kept in a small file. Loading happens
+ * on first use which blocks, so call {@link #loadInBackground} ahead of time.
+ */
+final class EncoderCapabilities {
+  /** Probes the encoders for each supported MIME type. */
+  interface Prober {
+    List<Encoder> probe();
+  }
+
+  /** The encoder which is created for a MIME type. */
+  static final class Encoder {
+    final String name;
+    final String mimeType;
+    final boolean hardware;
+    /** The {@code MediaCodecInfo.CodecProfileLevel} profiles it advertises. */
+    final int[] profiles;
+    final EncoderLimits limits;
+
+    Encoder(String name, String mimeType, boolean hardware, int[] profiles,
+        EncoderLimits limits) {
+      this.name = name;
+      this.mimeType = mimeType;
+      this.hardware = hardware;
+      this.profiles = profiles;
+      this.limits = limits;
+    }
+
+    @Override public String toString() {
+      return "Encoder{name=" + name
+          + ", mimeType=" + mimeType
+          + ", hardware=" + hardware
+          + ", profiles=" + Arrays.toString(profiles)
+          + ", limits=" + limits
+          + '}';
+    }
+  }
+
+  /** Bump when the file format or what is probed changes. */
+  private static final int FORMAT_VERSION = 2;
+
+  private final File file;
+  private final String buildKey;
+  private final Prober prober;
+  /** Guarded by this. */
+  private Map<String, Encoder> encoders;
+
+  /**
+   * @param buildKey identifies the OS build and app version. A file written for any other is
+   * probed again.
+   */
+  EncoderCapabilities(File file, String buildKey, Prober prober) {
+    this.file = file;
+    this.buildKey = FORMAT_VERSION + ":" + buildKey;
+    this.prober = prober;
+  }
+
+  void loadInBackground(Executor executor) {
+    executor.execute(new Runnable() {
+      @Override public void run() {
+        encoders();
+      }
+    });
+  }
+
+  /** The encoder for {@code mimeType}, or null if there is none. Blocks until loaded. */
+  @Nullable Encoder get(String mimeType) {
+    return encoders().get(mimeType);
+  }
+
+  private synchronized Map<String, Encoder> encoders() {
+    if (encoders == null) {
+      encoders = load();
+    }
+    return encoders;
+  }
+
+  private Map<String, Encoder> load() {
+    Map<String, Encoder> cached = read();
+    if (cached != null) {
+      return cached;
+    }
+
+    long startNanos = System.nanoTime();
+    Map<String, Encoder> probed = new LinkedHashMap<>();
+    for (Encoder encoder : prober.probe()) {
+      probed.put(encoder.mimeType, encoder);
+    }
+    probed = Collections.unmodifiableMap(probed);
+    Timber.i("Probed encoders in %sms: %s",
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), probed.values());
+
+    try {
+      write(probed);
+    } catch (IOException e) {
+      Timber.w(e, "Unable to save encoder capabilities.");
+    }
+    return probed;
+  }
+
+  /** Returns null if the file is missing, unreadable or written for a different build. */
+  @Nullable private Map<String, Encoder> read() {
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    } catch (IOException e) {
+      return null;
+    }
+    if (!buildKey.equals(properties.getProperty("build"))) {
+      Timber.d("Encoder capabilities were saved by a different build.");
+      return null;
+    }
+    try {
+      Map<String, Encoder> encoders = new LinkedHashMap<>();
+      String mimeTypes = properties.getProperty("encoders", "");
+      for (String mimeType : mimeTypes.isEmpty() ? new String[0] : mimeTypes.split(",")) {
+        encoders.put(mimeType, readEncoder(properties, mimeType));
+      }
+      return Collections.unmodifiableMap(encoders);
+    } catch (IllegalArgumentException | NullPointerException e) {
+      Timber.w(e, "Malformed encoder capabilities.");
+      return null;
+    }
+  }
+
+  private void write(Map<String, Encoder> encoders) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("build", buildKey);
+    StringBuilder mimeTypes = new StringBuilder();
+    for (Encoder encoder : encoders.values()) {
+      if (mimeTypes.length() > 0) {
+        mimeTypes.append(',');
+      }
+      mimeTypes.append(encoder.mimeType);
+      writeEncoder(properties, encoder);
+    }
+    properties.setProperty("encoders", mimeTypes.toString());
+
+    //noinspection ResultOfMethodCallIgnored
+    file.getParentFile().mkdirs();
+    File temp = new File(file.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(temp)) {
+      properties.store(out, null);
+    }
+    if (!temp.renameTo(file)) {
+      throw new IOException("Unable to rename '" + temp + "' to '" + file + "'.");
+    }
+  }
+
+  private static void writeEncoder(Properties properties, Encoder encoder) {
+    String prefix = encoder.mimeType + '.';
+    EncoderLimits limits = encoder.limits;
+    properties.setProperty(prefix + "name", encoder.name);
+    properties.setProperty(prefix + "hardware", String.valueOf(encoder.hardware));
+    properties.setProperty(prefix + "profiles", join(encoder.profiles));
+    properties.setProperty(prefix + "bitRate", join(limits.minBitRate, limits.maxBitRate));
+    properties.setProperty(prefix + "maxSize", join(limits.maxWidth, limits.maxHeight));
+    properties.setProperty(prefix + "maxFrameRate", String.valueOf(limits.maxFrameRate));
+    properties.setProperty(prefix + "alignment",
+        join(limits.widthAlignment, limits.heightAlignment));
+  }
+
+  private static Encoder readEncoder(Properties properties, String mimeType) {
+    String prefix = mimeType + '.';
+    String name = properties.getProperty(prefix + "name");
+    if (name == null) {
+      throw new IllegalArgumentException("No encoder for " + mimeType);
+    }
+    boolean hardware = Boolean.parseBoolean(properties.getProperty(prefix + "hardware"));
+    int[] profiles = split(properties.getProperty(prefix + "profiles"), -1);
+    int[] bitRate = split(properties.getProperty(prefix + "bitRate"), 2);
+    int[] maxSize = split(properties.getProperty(prefix + "maxSize"), 2);
+    int maxFrameRate = Integer.parseInt(properties.getProperty(prefix + "maxFrameRate"));
+    int[] alignment = split(properties.getProperty(prefix + "alignment"), 2);
+    EncoderLimits limits = new EncoderLimits(bitRate[0], bitRate[1], maxSize[0], maxSize[1],
+        maxFrameRate, alignment[0], alignment[1]);
+    return new Encoder(name, mimeType, hardware, profiles, limits);
+  }
+
+  private static String join(int... values) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append(values[i]);
+    }
+    return builder.toString();
+  }
+
+  /** @param count the number of values expected, or -1 for any. */
+  private static int[] split(String value, int count) {
+    String[] parts = value.isEmpty() ? new String[0] : value.split(",");
+    if (count != -1 && parts.length != count) {
+      throw new IllegalArgumentException("Expected " + count + " values: " + value);
+    }
+    int[] values = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      values[i] = Integer.parseInt(parts[i]);
+    }
+    return values;
+  }
+
+  /** Asks {@link MediaCodecList} about the encoder {@code MediaCodec} creates for each type. */
+  static final class MediaCodecProber implements Prober {
+    private static final String[] MIME_TYPES = {
+        MediaFormat.MIMETYPE_VIDEO_AVC, MediaFormat.MIMETYPE_VIDEO_HEVC
+    };
+    /** Landscape sizes from largest to smallest. The first supported one is the maximum. */
+    private static final int[][] SIZES = {
+        { 3840, 2160 }, { 2560, 1440 }, { 1920, 1080 }, { 1280, 720 }, { 854, 480 }, { 640, 360 }
+    };
+
+    @Override public List<Encoder> probe() {
+      MediaCodecInfo[] codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS)
+          .getCodecInfos();
+      List<Encoder> encoders = new ArrayList<>();
+      for (String mimeType : MIME_TYPES) {
+        // MediaCodec.createEncoderByType picks the first encoder for a type, so describe that one.
+        MediaCodecInfo codecInfo = firstEncoder(codecInfos, mimeType);
+        if (codecInfo != null) {
+          encoders.add(describe(codecInfo, mimeType));
+        } else {
+          Timber.w("No encoder for %s.", mimeType);
+        }
+      }
+      return encoders;
+    }
+
+    @Nullable private static MediaCodecInfo firstEncoder(MediaCodecInfo[] codecInfos,
+        String mimeType) {
+      for (MediaCodecInfo codecInfo : codecInfos) {
+        if (!codecInfo.isEncoder()) {
+          continue;
+        }
+        for (String type : codecInfo.getSupportedTypes()) {
+          if (type.equalsIgnoreCase(mimeType)) {
+            return codecInfo;
+          }
+        }
+      }
+      return null;
+    }
+
+    private static Encoder describe(MediaCodecInfo codecInfo, String mimeType) {
+      MediaCodecInfo.CodecCapabilities capabilities = codecInfo.getCapabilitiesForType(mimeType);
+      MediaCodecInfo.VideoCapabilities video = capabilities.getVideoCapabilities();
+      int widthAlignment = video.getWidthAlignment();
+      int heightAlignment = video.getHeightAlignment();
+
+      int maxWidth = EncoderLimits.UNKNOWN;
+      int maxHeight = EncoderLimits.UNKNOWN;
+      int maxFrameRate = EncoderLimits.UNKNOWN;
+      for (int[] size : SIZES) {
+        int width = alignUp(size[0], widthAlignment);
+        int height = alignUp(size[1], heightAlignment);
+        // Portrait recordings swap the frame so both orientations have to be supported.
+        if (video.isSizeSupported(width, height)
+            && video.isSizeSupported(alignUp(size[1], widthAlignment),
+                alignUp(size[0], heightAlignment))) {
+          maxWidth = width;
+          maxHeight = height;
+          maxFrameRate = video.getSupportedFrameRatesFor(width, height).getUpper().intValue();
+          break;
+        }
+      }
+
+      MediaCodecInfo.CodecProfileLevel[] profileLevels = capabilities.profileLevels;
+      int[] profiles = new int[profileLevels.length];
+      for (int i = 0; i < profileLevels.length; i++) {
+        profiles[i] = profileLevels[i].profile;
+      }
+
+      EncoderLimits limits = new EncoderLimits(video.getBitrateRange().getLower(),
+          video.getBitrateRange().getUpper(), maxWidth, maxHeight, maxFrameRate, widthAlignment,
+          heightAlignment);
+      String name = codecInfo.getName();
+      return new Encoder(name, mimeType, isHardware(name), profiles, limits);
+    }
+
+    private static int alignUp(int value, int alignment) {
+      return (value + alignment - 1) / alignment * alignment;
+    }
+
+    /** Software encoders are the ones shipped with the platform. */
+    static boolean isHardware(String name) {
+      return !name.startsWith("OMX.google.") && !name.startsWith("c2.android.");
+    }
+  }
+}
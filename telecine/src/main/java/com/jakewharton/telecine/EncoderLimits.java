@@ -0,0 +1,63 @@
+package com.jakewharton.telecine;
+
+/** The range of values which the video encoder advertises support for. */
+final class EncoderLimits {
+  /** Limits which permit any value. Used when the encoder capabilities are unknown. */
+  static final EncoderLimits NONE = new EncoderLimits(1, Integer.MAX_VALUE);
+
+  static final int UNKNOWN = -1;
+
+  final int minBitRate;
+  final int maxBitRate;
+  /** Largest frame in landscape orientation, or {@link #UNKNOWN}. */
+  final int maxWidth;
+  final int maxHeight;
+  /** Highest frame rate at the largest frame, or {@link #UNKNOWN}. */
+  final int maxFrameRate;
+  /** What the frame width and height must be a multiple of. */
+  final int widthAlignment;
+  final int heightAlignment;
+
+  EncoderLimits(int minBitRate, int maxBitRate) {
+    this(minBitRate, maxBitRate, UNKNOWN, UNKNOWN, UNKNOWN, 1, 1);
+  }
+
+  EncoderLimits(int minBitRate, int maxBitRate, int maxWidth, int maxHeight, int maxFrameRate,
+      int widthAlignment, int heightAlignment) {
+    if (minBitRate > maxBitRate) {
+      throw new IllegalArgumentException(
+          "minBitRate > maxBitRate: " + minBitRate + " > " + maxBitRate);
+    }
+    if (widthAlignment < 1 || heightAlignment < 1) {
+      throw new IllegalArgumentException(
+          "Alignment must be positive: " + widthAlignment + " x " + heightAlignment);
+    }
+    this.minBitRate = minBitRate;
+    this.maxBitRate = maxBitRate;
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+    this.maxFrameRate = maxFrameRate;
+    this.widthAlignment = widthAlignment;
+    this.heightAlignment = heightAlignment;
+  }
+
+  boolean hasMaxSize() {
+    return maxWidth != UNKNOWN && maxHeight != UNKNOWN;
+  }
+
+  int clampBitRate(long bitRate) {
+    return (int) Math.max(minBitRate, Math.min(maxBitRate, bitRate));
+  }
+
+  int clampFrameRate(int frameRate) {
+    return maxFrameRate == UNKNOWN ? frameRate : Math.min(maxFrameRate, frameRate);
+  }
+
+  @Override public String toString() {
+    return "EncoderLimits{bitRate=[" + minBitRate + ", " + maxBitRate + "]"
+        + ", maxSize=" + maxWidth + "x" + maxHeight
+        + ", maxFrameRate=" + maxFrameRate
+        + ", alignment=" + widthAlignment + "x" + heightAlignment
+        + '}';
+  }
+}
@@ -0,0 +1,118 @@
+package com.jakewharton.telecine;
+
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.widget.Toast;
+import com.google.android.gms.analytics.HitBuilders;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import timber.log.Timber;
+
+import static android.content.Intent.ACTION_SEND;
+import static android.content.Intent.FLAG_ACTIVITY_NEW_TASK;
+
+/**
+ * Offered in the chooser of the captured notification's share action. Converts the recording to
+ * an animated GIF in the background and then shares that instead.
+ */
+public final class ExportGifActivity extends Activity {
+  private static final int FRAME_RATE = 10;
+  private static final int MAX_WIDTH = 480;
+  private static final String MIME_TYPE = "image/gif";
+
+  /** Shared by every export. Quantizing uses all cores while reading frames keeps one busy. */
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  @Inject Analytics analytics;
+
+  @Override protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    ((TelecineApplication) getApplication()).inject(this);
+
+    Uri uri = getIntent().getData();
+    if (uri != null) {
+      Toast.makeText(this, R.string.export_gif_started, Toast.LENGTH_SHORT).show();
+      export(getApplicationContext(), uri, analytics);
+    }
+    finish();
+  }
+
+  private static void export(final Context context, final Uri uri, final Analytics analytics) {
+    final ContentResolver contentResolver = context.getContentResolver();
+    new AsyncTask<Void, Void, File>() {
+      @Override protected File doInBackground(@NonNull Void... none) {
+        String path = RecordingSession.queryPath(contentResolver, uri);
+        if (path == null) {
+          Timber.e("Unable to find recording for '%s'.", uri);
+          return null;
+        }
+        File input = new File(path);
+        File output = new File(path.replaceFirst("\\.mp4$", "") + ".gif");
+        long startNanos = System.nanoTime();
+        try {
+          int frames = exportGif(input, output);
+          long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+          Timber.i("Exported %s GIF frames in %sms (%s bytes).", frames, tookMs, output.length());
+          analytics.send(new HitBuilders.TimingBuilder() //
+              .setCategory(Analytics.CATEGORY_RECORDING)
+              .setValue(tookMs)
+              .setVariable(Analytics.VARIABLE_GIF_EXPORT)
+              .build());
+          return output;
+        } catch (IOException | RuntimeException e) {
+          Timber.e(e, "Unable to export GIF.");
+          //noinspection ResultOfMethodCallIgnored
+          output.delete();
+          return null;
+        }
+      }
+
+      @Override protected void onPostExecute(@Nullable File output) {
+        if (output == null) {
+          Toast.makeText(context, R.string.export_gif_failed, Toast.LENGTH_SHORT).show();
+          return;
+        }
+        MediaScannerConnection.scanFile(context, new String[] { output.getAbsolutePath() },
+            new String[] { MIME_TYPE }, new MediaScannerConnection.OnScanCompletedListener() {
+              @Override public void onScanCompleted(String path, Uri gifUri) {
+                share(context, gifUri != null ? gifUri : Uri.fromFile(new File(path)));
+              }
+            });
+      }
+    }.execute();
+  }
+
+  static int exportGif(File input, File output) throws IOException {
+    VideoFrameSource source = new VideoFrameSource(input, FRAME_RATE, MAX_WIDTH);
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+      // Two frames per worker keeps every core busy while bounding memory.
+      GifExportPipeline pipeline = new GifExportPipeline(POOL, POOL.getParallelism() * 2);
+      return pipeline.export(source, out, 100 / FRAME_RATE);
+    } finally {
+      source.release();
+    }
+  }
+
+  private static void share(Context context, Uri uri) {
+    Intent shareIntent = new Intent(ACTION_SEND);
+    shareIntent.setType(MIME_TYPE);
+    shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+    Intent chooser = Intent.createChooser(shareIntent, null);
+    chooser.addFlags(FLAG_ACTIVITY_NEW_TASK);
+    context.startActivity(chooser);
+  }
+}
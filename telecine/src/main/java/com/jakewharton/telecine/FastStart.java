@@ -0,0 +1,186 @@
+package com.jakewharton.telecine;
+
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.boxes.ChunkOffsetBox;
+import com.coremedia.iso.boxes.MovieBox;
+import com.googlecode.mp4parser.MemoryDataSourceImpl;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import timber.log.Timber;
+
+/**
+ * Moves the {@code moov} box of an MP4 ahead of its {@code mdat} box so that playback can begin
+ * before the whole file has been downloaded.
+ * <p>
+ * When a {@code free} box ahead of {@code mdat} has room for {@code moov} (the platform muxer
+ * reserves one), the box is written into it and the file truncated. This touches only as many
+ * bytes as the {@code moov} box occupies. Otherwise the media data has to shift to make room, so
+ * the file is streamed into a copy with patched chunk offsets. Neither path holds more than the
+ * {@code moov} box in memory.
+ */
+final class FastStart {
+  private FastStart() {
+    throw new AssertionError("No instances.");
+  }
+
+  /** Returns true if {@code file} was rewritten. False if it was already fast-start. */
+  static boolean process(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = raf.getChannel();
+      List<Mp4Box> boxes = Mp4Box.scan(channel);
+      Mp4Box moov = Mp4Box.find(boxes, "moov");
+      Mp4Box mdat = Mp4Box.find(boxes, "mdat");
+      if (moov == null || mdat == null) {
+        throw new IOException("Missing moov or mdat box: " + boxes);
+      }
+      if (moov.offset < mdat.offset) {
+        return false;
+      }
+      if (moov.end() > channel.size()) {
+        throw new IOException("Truncated moov box: " + moov);
+      }
+
+      Mp4Box free = findReservedSpace(boxes, mdat, moov.size);
+      if (free != null) {
+        Timber.d("Moving %s into reserved %s.", moov, free);
+        moveIntoReservedSpace(channel, moov, free);
+        return true;
+      }
+    }
+
+    Timber.d("No reserved space for moov in '%s'. Rewriting file.", file);
+    File temp = new File(file.getPath() + ".faststart");
+    try {
+      rewrite(file, temp);
+    } catch (IOException e) {
+      if (!temp.delete()) {
+        Timber.w("Unable to delete '%s'.", temp);
+      }
+      throw e;
+    }
+    if (!temp.renameTo(file)) {
+      throw new IOException("Unable to rename '" + temp + "' to '" + file + "'.");
+    }
+    return true;
+  }
+
+  /** Find a {@code free} box before {@code mdat} which can exactly hold or be split around moov. */
+  private static Mp4Box findReservedSpace(List<Mp4Box> boxes, Mp4Box mdat, long moovSize) {
+    for (Mp4Box box : boxes) {
+      if (box.offset >= mdat.offset) {
+        break;
+      }
+      if (("free".equals(box.type) || "skip".equals(box.type))
+          && (box.size == moovSize || box.size >= moovSize + 8)) {
+        return box;
+      }
+    }
+    return null;
+  }
+
+  private static void moveIntoReservedSpace(FileChannel channel, Mp4Box moov, Mp4Box free)
+      throws IOException {
+    ByteBuffer moovBytes = ByteBuffer.allocate(checkedSize(moov));
+    Mp4Box.readFully(channel, moovBytes, moov.offset);
+    moovBytes.flip();
+
+    // The media data does not move so the chunk offsets remain valid as-is.
+    Mp4Box.writeFully(channel, moovBytes, free.offset);
+    long remaining = free.size - moov.size;
+    if (remaining > 0) {
+      Mp4Box.writeFreeHeader(channel, free.offset + moov.size, remaining);
+    }
+    // Make sure the new copy is durable before discarding the original.
+    channel.force(false);
+
+    if (moov.end() == channel.size()) {
+      channel.truncate(moov.offset);
+    } else {
+      Mp4Box.writeFreeHeader(channel, moov.offset, moov.size);
+    }
+  }
+
+  private static void rewrite(File source, File destination) throws IOException {
+    try (RandomAccessFile in = new RandomAccessFile(source, "r");
+         RandomAccessFile out = new RandomAccessFile(destination, "rw")) {
+      FileChannel inChannel = in.getChannel();
+      FileChannel outChannel = out.getChannel();
+      out.setLength(0);
+
+      List<Mp4Box> boxes = Mp4Box.scan(inChannel);
+      Mp4Box moov = Mp4Box.find(boxes, "moov");
+      Mp4Box mdat = Mp4Box.find(boxes, "mdat");
+
+      // Everything from the start of mdat onward shifts forward by the size of moov.
+      ByteBuffer moovBytes = readMovieBox(inChannel, moov, mdat.offset, moov.size);
+
+      transferFully(inChannel, 0, mdat.offset, outChannel);
+      while (moovBytes.hasRemaining()) {
+        outChannel.write(moovBytes);
+      }
+      transferFully(inChannel, mdat.offset, moov.offset - mdat.offset, outChannel);
+      transferFully(inChannel, moov.end(), inChannel.size() - moov.end(), outChannel);
+      outChannel.force(false);
+    }
+  }
+
+  /** Read {@code moov} and shift any chunk offset at or after {@code from} by {@code delta}. */
+  static ByteBuffer readMovieBox(FileChannel channel, Mp4Box moov, long from, long delta)
+      throws IOException {
+    ByteBuffer moovBytes = ByteBuffer.allocate(checkedSize(moov));
+    Mp4Box.readFully(channel, moovBytes, moov.offset);
+    moovBytes.flip();
+
+    IsoFile isoFile = new IsoFile(new MemoryDataSourceImpl(moovBytes));
+    try {
+      MovieBox movieBox = isoFile.getMovieBox();
+      for (ChunkOffsetBox chunkOffsetBox : movieBox.getBoxes(ChunkOffsetBox.class, true)) {
+        boolean is64Bit = "co64".equals(chunkOffsetBox.getType());
+        long[] offsets = chunkOffsetBox.getChunkOffsets();
+        for (int i = 0; i < offsets.length; i++) {
+          if (offsets[i] >= from) {
+            offsets[i] += delta;
+            if (!is64Bit && offsets[i] > 0xFFFFFFFFL) {
+              throw new IOException("Chunk offset overflows stco: " + offsets[i]);
+            }
+          }
+        }
+        chunkOffsetBox.setChunkOffsets(offsets);
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(moovBytes.capacity());
+      movieBox.getBox(Channels.newChannel(bytes));
+      if (bytes.size() != moov.size) {
+        throw new IOException("moov size changed from " + moov.size + " to " + bytes.size());
+      }
+      return ByteBuffer.wrap(bytes.toByteArray());
+    } finally {
+      isoFile.close();
+    }
+  }
+
+  static void transferFully(FileChannel in, long position, long count, FileChannel out)
+      throws IOException {
+    while (count > 0) {
+      long transferred = in.transferTo(position, count, out);
+      if (transferred <= 0) {
+        throw new IOException("Unable to transfer at " + position);
+      }
+      position += transferred;
+      count -= transferred;
+    }
+  }
+
+  private static int checkedSize(Mp4Box box) throws IOException {
+    if (box.size > Integer.MAX_VALUE) {
+      throw new IOException("Box too large: " + box);
+    }
+    return (int) box.size;
+  }
+}
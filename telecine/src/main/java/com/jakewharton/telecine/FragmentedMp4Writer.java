@@ -0,0 +1,365 @@
+package com.jakewharton.telecine;
+
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.DataEntryUrlBox;
+import com.coremedia.iso.boxes.DataInformationBox;
+import com.coremedia.iso.boxes.DataReferenceBox;
+import com.coremedia.iso.boxes.FileTypeBox;
+import com.coremedia.iso.boxes.HandlerBox;
+import com.coremedia.iso.boxes.MediaBox;
+import com.coremedia.iso.boxes.MediaHeaderBox;
+import com.coremedia.iso.boxes.MediaInformationBox;
+import com.coremedia.iso.boxes.MovieBox;
+import com.coremedia.iso.boxes.MovieHeaderBox;
+import com.coremedia.iso.boxes.SampleDescriptionBox;
+import com.coremedia.iso.boxes.SampleSizeBox;
+import com.coremedia.iso.boxes.SampleTableBox;
+import com.coremedia.iso.boxes.SampleToChunkBox;
+import com.coremedia.iso.boxes.StaticChunkOffsetBox;
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.coremedia.iso.boxes.TrackBox;
+import com.coremedia.iso.boxes.TrackHeaderBox;
+import com.coremedia.iso.boxes.VideoMediaHeaderBox;
+import com.coremedia.iso.boxes.fragment.MovieExtendsBox;
+import com.coremedia.iso.boxes.fragment.MovieFragmentBox;
+import com.coremedia.iso.boxes.fragment.MovieFragmentHeaderBox;
+import com.coremedia.iso.boxes.fragment.SampleFlags;
+import com.coremedia.iso.boxes.fragment.TrackExtendsBox;
+import com.coremedia.iso.boxes.fragment.TrackFragmentBaseMediaDecodeTimeBox;
+import com.coremedia.iso.boxes.fragment.TrackFragmentBox;
+import com.coremedia.iso.boxes.fragment.TrackFragmentHeaderBox;
+import com.coremedia.iso.boxes.fragment.TrackRunBox;
+import com.coremedia.iso.boxes.sampleentry.VisualSampleEntry;
+import com.mp4parser.iso14496.part15.AvcConfigurationBox;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes H.264 samples as a fragmented MP4: an initial {@code moov} followed by one
+ * {@code moof}/{@code mdat} pair per group of pictures. Every completed fragment is playable, so
+ * a file cut short by a crash only loses the fragment which was in flight.
+ */
+final class FragmentedMp4Writer implements Closeable {
+  static final long TIMESCALE = 90000;
+  private static final int TRACK_ID = 1;
+  /** Used for the final sample, whose duration cannot be derived from a following sample. */
+  private static final long DEFAULT_SAMPLE_DURATION_US = 33333;
+
+  private final FileChannel channel;
+  private final long fragmentDurationUs;
+
+  // Samples of the pending fragment, converted to length-prefixed NAL units.
+  private ByteBuffer pendingData = ByteBuffer.allocate(1024 * 1024);
+  private final List<Long> pendingTimesUs = new ArrayList<>();
+  private final List<Integer> pendingSizes = new ArrayList<>();
+  private final List<Boolean> pendingKeyFrames = new ArrayList<>();
+
+  private long firstTimeUs = -1;
+  private long lastDurationUs = DEFAULT_SAMPLE_DURATION_US;
+  private int sequenceNumber;
+  private boolean closed;
+
+  /**
+   * @param sps The sequence parameter set without a start code.
+   * @param pps The picture parameter set without a start code.
+   */
+  FragmentedMp4Writer(FileChannel channel, int width, int height, byte[] sps, byte[] pps,
+      long fragmentDurationUs) throws IOException {
+    this.channel = channel;
+    this.fragmentDurationUs = fragmentDurationUs;
+    writeBox(createFileTypeBox());
+    writeBox(createMovieBox(width, height, sps, pps));
+  }
+
+  /** Append the Annex B sample between the position and limit of {@code sample}. */
+  void writeSample(ByteBuffer sample, long presentationTimeUs, boolean keyFrame)
+      throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Closed.");
+    }
+    if (firstTimeUs == -1) {
+      if (!keyFrame) {
+        return; // Undecodable without the key frame which precedes it.
+      }
+      firstTimeUs = presentationTimeUs;
+    }
+    if (keyFrame && !pendingTimesUs.isEmpty()
+        && presentationTimeUs - pendingTimesUs.get(0) >= fragmentDurationUs) {
+      flushFragment(presentationTimeUs);
+    }
+
+    // Each start code of at least three bytes becomes a four byte length.
+    ensurePendingCapacity(sample.remaining() + countNalUnits(sample) + 4);
+    int start = pendingData.position();
+    annexBToLengthPrefixed(sample, pendingData);
+    pendingTimesUs.add(presentationTimeUs);
+    pendingSizes.add(pendingData.position() - start);
+    pendingKeyFrames.add(keyFrame);
+  }
+
+  @Override public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (!pendingTimesUs.isEmpty()) {
+      flushFragment(pendingTimesUs.get(pendingTimesUs.size() - 1) + lastDurationUs);
+    }
+    channel.force(false);
+  }
+
+  /** Write all pending samples as one fragment. {@code endUs} is when the last sample ends. */
+  private void flushFragment(long endUs) throws IOException {
+    int count = pendingTimesUs.size();
+    List<TrackRunBox.Entry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      long startUs = pendingTimesUs.get(i);
+      long nextUs = i + 1 < count ? pendingTimesUs.get(i + 1) : endUs;
+      long durationUs = Math.max(nextUs - startUs, 0);
+      if (i + 1 < count) {
+        lastDurationUs = durationUs;
+      }
+      entries.add(new TrackRunBox.Entry(toTicks(durationUs), pendingSizes.get(i),
+          sampleFlags(pendingKeyFrames.get(i)), 0));
+    }
+
+    MovieFragmentBox moof = new MovieFragmentBox();
+    MovieFragmentHeaderBox mfhd = new MovieFragmentHeaderBox();
+    mfhd.setSequenceNumber(++sequenceNumber);
+    moof.addBox(mfhd);
+    TrackFragmentBox traf = new TrackFragmentBox();
+    TrackFragmentHeaderBox tfhd = new TrackFragmentHeaderBox();
+    tfhd.setTrackId(TRACK_ID);
+    tfhd.setDefaultBaseIsMoof(true);
+    traf.addBox(tfhd);
+    TrackFragmentBaseMediaDecodeTimeBox tfdt = new TrackFragmentBaseMediaDecodeTimeBox();
+    tfdt.setVersion(1);
+    tfdt.setBaseMediaDecodeTime(toTicks(pendingTimesUs.get(0) - firstTimeUs));
+    traf.addBox(tfdt);
+    TrackRunBox trun = new TrackRunBox();
+    trun.setDataOffsetPresent(true);
+    trun.setSampleDurationPresent(true);
+    trun.setSampleSizePresent(true);
+    trun.setSampleFlagsPresent(true);
+    trun.setEntries(entries);
+    traf.addBox(trun);
+    moof.addBox(traf);
+    // The data offset is relative to the start of moof and points past the mdat header.
+    trun.setDataOffset((int) moof.getSize() + 8);
+
+    pendingData.flip();
+    ByteBuffer mdatHeader = ByteBuffer.allocate(8);
+    mdatHeader.putInt(8 + pendingData.remaining()).put(new byte[] { 'm', 'd', 'a', 't' }).flip();
+    writeBox(moof);
+    writeFully(mdatHeader);
+    writeFully(pendingData);
+
+    pendingData.clear();
+    pendingTimesUs.clear();
+    pendingSizes.clear();
+    pendingKeyFrames.clear();
+  }
+
+  private void ensurePendingCapacity(int additional) {
+    if (pendingData.remaining() < additional) {
+      int capacity = Math.max(pendingData.capacity() * 2, pendingData.position() + additional);
+      ByteBuffer grown = ByteBuffer.allocate(capacity);
+      pendingData.flip();
+      grown.put(pendingData);
+      pendingData = grown;
+    }
+  }
+
+  private void writeBox(Box box) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) box.getSize());
+    box.getBox(Channels.newChannel(bytes));
+    writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  static long toTicks(long timeUs) {
+    return timeUs * TIMESCALE / 1000000;
+  }
+
+  private static SampleFlags sampleFlags(boolean keyFrame) {
+    SampleFlags flags = new SampleFlags();
+    flags.setSampleDependsOn(keyFrame ? 2 : 1);
+    flags.setSampleIsDifferenceSample(!keyFrame);
+    return flags;
+  }
+
+  /** The number of NAL units in the Annex B data between the position and limit of {@code in}. */
+  static int countNalUnits(ByteBuffer in) {
+    int count = 0;
+    int limit = in.limit();
+    for (int i = in.position(); i + 2 < limit; i++) {
+      if (in.get(i) == 0 && in.get(i + 1) == 0 && in.get(i + 2) == 1) {
+        count++;
+        i += 2;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Convert the Annex B data between the position and limit of {@code in} into NAL units prefixed
+   * by their four byte length. Does not move the position of {@code in}.
+   */
+  static void annexBToLengthPrefixed(ByteBuffer in, ByteBuffer out) {
+    int limit = in.limit();
+    int nalStart = -1;
+    int i = in.position();
+    while (i + 2 < limit) {
+      if (in.get(i) == 0 && in.get(i + 1) == 0 && in.get(i + 2) == 1) {
+        if (nalStart != -1) {
+          // A four byte start code leaves a trailing zero on the previous unit.
+          int nalEnd = i - 1 >= nalStart && in.get(i - 1) == 0 ? i - 1 : i;
+          putNalUnit(in, nalStart, nalEnd, out);
+        }
+        i += 3;
+        nalStart = i;
+      } else {
+        i++;
+      }
+    }
+    if (nalStart == -1) {
+      putNalUnit(in, in.position(), limit, out); // Not Annex B. Assume a single NAL unit.
+    } else {
+      putNalUnit(in, nalStart, limit, out);
+    }
+  }
+
+  private static void putNalUnit(ByteBuffer in, int start, int end, ByteBuffer out) {
+    if (end <= start) {
+      return;
+    }
+    out.putInt(end - start);
+    ByteBuffer nal = in.duplicate();
+    nal.limit(end).position(start);
+    out.put(nal);
+  }
+
+  /** Strip a leading three or four byte start code from a parameter set. */
+  static byte[] stripStartCode(ByteBuffer parameterSet) {
+    ByteBuffer copy = parameterSet.duplicate();
+    int start = copy.position();
+    if (copy.remaining() >= 4 && copy.get(start) == 0 && copy.get(start + 1) == 0
+        && copy.get(start + 2) == 0 && copy.get(start + 3) == 1) {
+      copy.position(start + 4);
+    } else if (copy.remaining() >= 3 && copy.get(start) == 0 && copy.get(start + 1) == 0
+        && copy.get(start + 2) == 1) {
+      copy.position(start + 3);
+    }
+    byte[] bytes = new byte[copy.remaining()];
+    copy.get(bytes);
+    return bytes;
+  }
+
+  private static FileTypeBox createFileTypeBox() {
+    return new FileTypeBox("isom", 0, Arrays.asList("isom", "iso6", "avc1", "mp41"));
+  }
+
+  private static MovieBox createMovieBox(int width, int height, byte[] sps, byte[] pps) {
+    Date now = new Date();
+    MovieBox moov = new MovieBox();
+
+    MovieHeaderBox mvhd = new MovieHeaderBox();
+    mvhd.setCreationTime(now);
+    mvhd.setModificationTime(now);
+    mvhd.setTimescale(TIMESCALE);
+    mvhd.setNextTrackId(TRACK_ID + 1);
+    moov.addBox(mvhd);
+
+    TrackBox trak = new TrackBox();
+    TrackHeaderBox tkhd = new TrackHeaderBox();
+    tkhd.setCreationTime(now);
+    tkhd.setModificationTime(now);
+    tkhd.setTrackId(TRACK_ID);
+    tkhd.setEnabled(true);
+    tkhd.setInMovie(true);
+    tkhd.setWidth(width);
+    tkhd.setHeight(height);
+    trak.addBox(tkhd);
+
+    MediaBox mdia = new MediaBox();
+    MediaHeaderBox mdhd = new MediaHeaderBox();
+    mdhd.setCreationTime(now);
+    mdhd.setModificationTime(now);
+    mdhd.setTimescale(TIMESCALE);
+    mdhd.setLanguage("und");
+    mdia.addBox(mdhd);
+    HandlerBox hdlr = new HandlerBox();
+    hdlr.setHandlerType("vide");
+    hdlr.setName("VideoHandle");
+    mdia.addBox(hdlr);
+
+    MediaInformationBox minf = new MediaInformationBox();
+    minf.addBox(new VideoMediaHeaderBox());
+    DataInformationBox dinf = new DataInformationBox();
+    DataReferenceBox dref = new DataReferenceBox();
+    DataEntryUrlBox url = new DataEntryUrlBox();
+    url.setFlags(1); // Media data is in this file.
+    dref.addBox(url);
+    dinf.addBox(dref);
+    minf.addBox(dinf);
+
+    SampleTableBox stbl = new SampleTableBox();
+    SampleDescriptionBox stsd = new SampleDescriptionBox();
+    VisualSampleEntry avc1 = new VisualSampleEntry(VisualSampleEntry.TYPE3);
+    avc1.setDataReferenceIndex(1);
+    avc1.setWidth(width);
+    avc1.setHeight(height);
+    avc1.setHorizresolution(72);
+    avc1.setVertresolution(72);
+    avc1.setFrameCount(1);
+    avc1.setDepth(24);
+    avc1.setCompressorname("AVC Coding");
+    AvcConfigurationBox avcC = new AvcConfigurationBox();
+    avcC.setConfigurationVersion(1);
+    avcC.setAvcProfileIndication(sps[1] & 0xFF);
+    avcC.setProfileCompatibility(sps[2] & 0xFF);
+    avcC.setAvcLevelIndication(sps[3] & 0xFF);
+    avcC.setLengthSizeMinusOne(3);
+    avcC.setSequenceParameterSets(Collections.singletonList(sps));
+    avcC.setPictureParameterSets(Collections.singletonList(pps));
+    avc1.addBox(avcC);
+    stsd.addBox(avc1);
+    stbl.addBox(stsd);
+    // Sample tables are empty. Every sample is described by a fragment.
+    stbl.addBox(new TimeToSampleBox());
+    stbl.addBox(new SampleToChunkBox());
+    SampleSizeBox stsz = new SampleSizeBox();
+    stsz.setSampleSizes(new long[0]);
+    stbl.addBox(stsz);
+    StaticChunkOffsetBox stco = new StaticChunkOffsetBox();
+    stco.setChunkOffsets(new long[0]);
+    stbl.addBox(stco);
+    minf.addBox(stbl);
+    mdia.addBox(minf);
+    trak.addBox(mdia);
+    moov.addBox(trak);
+
+    MovieExtendsBox mvex = new MovieExtendsBox();
+    TrackExtendsBox trex = new TrackExtendsBox();
+    trex.setTrackId(TRACK_ID);
+    trex.setDefaultSampleDescriptionIndex(1);
+    trex.setDefaultSampleFlags(new SampleFlags());
+    mvex.addBox(trex);
+    moov.addBox(mvex);
+    return moov;
+  }
+}
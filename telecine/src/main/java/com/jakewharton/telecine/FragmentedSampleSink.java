@@ -0,0 +1,103 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import timber.log.Timber;
+
+import static android.media.MediaCodec.BUFFER_FLAG_KEY_FRAME;
+
+/**
+ * A {@link SampleSink} which writes a crash-safe fragmented MP4. A marker file sits next to the
+ * output until it is completely written so that {@link RecordingRecovery} can find interrupted
+ * recordings.
+ */
+final class FragmentedSampleSink implements SampleSink {
+  private static final long FRAGMENT_DURATION_US = TimeUnit.SECONDS.toMicros(1);
+
+  private final File outputFile;
+  private final File markerFile;
+  private RandomAccessFile file;
+  private FragmentedMp4Writer writer;
+  private boolean failed;
+
+  FragmentedSampleSink(String outputFile) throws IOException {
+    this.outputFile = new File(outputFile);
+    markerFile = RecordingRecovery.markerFor(this.outputFile);
+    if (!markerFile.createNewFile()) {
+      Timber.w("Recording marker '%s' already exists.", markerFile);
+    }
+  }
+
+  @Override public void onFormatChanged(MediaFormat format) {
+    byte[] sps = FragmentedMp4Writer.stripStartCode(format.getByteBuffer("csd-0"));
+    byte[] pps = FragmentedMp4Writer.stripStartCode(format.getByteBuffer("csd-1"));
+    int width = format.getInteger(MediaFormat.KEY_WIDTH);
+    int height = format.getInteger(MediaFormat.KEY_HEIGHT);
+    try {
+      file = new RandomAccessFile(outputFile, "rw");
+      file.setLength(0);
+      writer = new FragmentedMp4Writer(file.getChannel(), width, height, sps, pps,
+          FRAGMENT_DURATION_US);
+    } catch (IOException e) {
+      Timber.e(e, "Unable to start fragmented MP4 '%s'.", outputFile);
+      writer = null;
+      failed = true;
+    }
+  }
+
+  @Override public void onSample(ByteBuffer buffer, MediaCodec.BufferInfo info) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.writeSample(buffer, info.presentationTimeUs,
+          (info.flags & BUFFER_FLAG_KEY_FRAME) != 0);
+    } catch (IOException e) {
+      Timber.e(e, "Unable to write fragment.");
+      writer = null;
+      failed = true;
+    }
+  }
+
+  @Override public void onEnd() {
+    try {
+      if (writer != null) {
+        writer.close();
+      }
+      if (file != null) {
+        file.close();
+      }
+    } catch (IOException e) {
+      Timber.e(e, "Unable to finish fragmented MP4.");
+      failed = true;
+    }
+    if (failed) {
+      Timber.w("Leaving recording marker so '%s' is repaired on next launch.", outputFile);
+      return;
+    }
+    deleteMarker();
+  }
+
+  @Override public void onAbort() {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        Timber.w(e, "Unable to close fragmented MP4.");
+      }
+    }
+    // The recording is discarded so there is nothing to repair.
+    deleteMarker();
+  }
+
+  private void deleteMarker() {
+    if (!markerFile.delete()) {
+      Timber.w("Unable to delete recording marker '%s'.", markerFile);
+    }
+  }
+}
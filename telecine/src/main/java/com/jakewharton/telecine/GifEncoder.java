@@ -0,0 +1,223 @@
+package com.jakewharton.telecine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static com.jakewharton.telecine.ColorQuantizer.IndexedFrame;
+
+/**
+ * Writes an animated GIF which loops forever. Each frame carries its own palette. Frames are
+ * encoded independently with {@link #encodeFrame} so that they can be compressed in parallel and
+ * then written in order.
+ */
+final class GifEncoder {
+  private static final int MAX_CODE_SIZE = 12;
+  private static final int MAX_CODES = 1 << MAX_CODE_SIZE;
+  private static final int HASH_SIZE = 5003;
+  private static final int MAX_SUB_BLOCK = 255;
+
+  private final OutputStream out;
+  private final int width;
+  private final int height;
+  private boolean headerWritten;
+
+  GifEncoder(OutputStream out, int width, int height) {
+    this.out = out;
+    this.width = width;
+    this.height = height;
+  }
+
+  /** Write a frame previously returned by {@link #encodeFrame}. */
+  void writeFrame(byte[] encodedFrame) throws IOException {
+    if (!headerWritten) {
+      writeHeader();
+      headerWritten = true;
+    }
+    out.write(encodedFrame);
+  }
+
+  /** Write the trailer. The underlying stream is not closed. */
+  void finish() throws IOException {
+    if (!headerWritten) {
+      writeHeader();
+      headerWritten = true;
+    }
+    out.write(0x3b);
+    out.flush();
+  }
+
+  private void writeHeader() throws IOException {
+    out.write(new byte[] { 'G', 'I', 'F', '8', '9', 'a' });
+    // Logical screen descriptor without a global color table.
+    writeShort(out, width);
+    writeShort(out, height);
+    out.write(0);
+    out.write(0); // Background color index.
+    out.write(0); // Pixel aspect ratio.
+    // Netscape application extension to loop forever.
+    out.write(new byte[] { 0x21, (byte) 0xff, 11 });
+    out.write(new byte[] { 'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0' });
+    out.write(new byte[] { 3, 1, 0, 0, 0 });
+  }
+
+  /**
+   * Encode one frame, including its graphic control extension, local color table and compressed
+   * pixels.
+   *
+   * @param delayCentis how long the frame is shown, in hundredths of a second.
+   */
+  static byte[] encodeFrame(IndexedFrame frame, int delayCentis) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(frame.indices.length / 2);
+    try {
+      // Graphic control extension with the frame delay.
+      out.write(new byte[] { 0x21, (byte) 0xf9, 4, 0 });
+      writeShort(out, delayCentis);
+      out.write(new byte[] { 0, 0 });
+
+      int tableBits = tableBits(frame.palette.length);
+      // Image descriptor with a local color table.
+      out.write(0x2c);
+      writeShort(out, 0);
+      writeShort(out, 0);
+      writeShort(out, frame.width);
+      writeShort(out, frame.height);
+      out.write(0x80 | (tableBits - 1));
+      int tableSize = 1 << tableBits;
+      for (int i = 0; i < tableSize; i++) {
+        int color = i < frame.palette.length ? frame.palette[i] : 0;
+        out.write((color >> 16) & 0xff);
+        out.write((color >> 8) & 0xff);
+        out.write(color & 0xff);
+      }
+
+      int minCodeSize = Math.max(2, tableBits);
+      out.write(minCodeSize);
+      compress(frame.indices, minCodeSize, out);
+      out.write(0); // Block terminator.
+    } catch (IOException e) {
+      throw new AssertionError(e); // Not thrown by ByteArrayOutputStream.
+    }
+    return out.toByteArray();
+  }
+
+  /** The number of bits needed to index a color table of {@code colors}, at least one. */
+  static int tableBits(int colors) {
+    int bits = 1;
+    while ((1 << bits) < colors) {
+      bits++;
+    }
+    return bits;
+  }
+
+  /** Variable-length LZW as the GIF format requires, written in sub-blocks. */
+  private static void compress(byte[] indices, int minCodeSize, OutputStream out)
+      throws IOException {
+    int clearCode = 1 << minCodeSize;
+    int endCode = clearCode + 1;
+    int nextCode = endCode + 1;
+    int codeSize = minCodeSize + 1;
+
+    // Keys are the prefix code and the appended index. Empty slots are -1.
+    int[] hashKeys = new int[HASH_SIZE];
+    int[] hashCodes = new int[HASH_SIZE];
+    Arrays.fill(hashKeys, -1);
+
+    BitWriter bits = new BitWriter(out);
+    bits.write(clearCode, codeSize);
+    if (indices.length == 0) {
+      bits.write(endCode, codeSize);
+      bits.flush();
+      return;
+    }
+
+    int prefix = indices[0] & 0xff;
+    for (int i = 1; i < indices.length; i++) {
+      int index = indices[i] & 0xff;
+      int key = (prefix << 8) | index;
+      int slot = (key * 31 & 0x7fffffff) % HASH_SIZE;
+      int found = -1;
+      while (hashKeys[slot] != -1) {
+        if (hashKeys[slot] == key) {
+          found = hashCodes[slot];
+          break;
+        }
+        slot = slot + 1 == HASH_SIZE ? 0 : slot + 1;
+      }
+      if (found != -1) {
+        prefix = found;
+        continue;
+      }
+
+      bits.write(prefix, codeSize);
+      if (nextCode == MAX_CODES) {
+        // The table is full. Start over.
+        bits.write(clearCode, codeSize);
+        Arrays.fill(hashKeys, -1);
+        nextCode = endCode + 1;
+        codeSize = minCodeSize + 1;
+      } else {
+        if (nextCode >= 1 << codeSize) {
+          codeSize++;
+        }
+        hashKeys[slot] = key;
+        hashCodes[slot] = nextCode++;
+      }
+      prefix = index;
+    }
+    bits.write(prefix, codeSize);
+    bits.write(endCode, codeSize);
+    bits.flush();
+  }
+
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+  }
+
+  /** Packs codes least significant bit first into sub-blocks of at most 255 bytes. */
+  private static final class BitWriter {
+    private final OutputStream out;
+    private final byte[] block = new byte[MAX_SUB_BLOCK];
+    private int blockSize;
+    private int buffer;
+    private int bufferBits;
+
+    BitWriter(OutputStream out) {
+      this.out = out;
+    }
+
+    void write(int code, int size) throws IOException {
+      buffer |= code << bufferBits;
+      bufferBits += size;
+      while (bufferBits >= 8) {
+        writeByte(buffer & 0xff);
+        buffer >>>= 8;
+        bufferBits -= 8;
+      }
+    }
+
+    void flush() throws IOException {
+      if (bufferBits > 0) {
+        writeByte(buffer & 0xff);
+        buffer = 0;
+        bufferBits = 0;
+      }
+      if (blockSize > 0) {
+        out.write(blockSize);
+        out.write(block, 0, blockSize);
+        blockSize = 0;
+      }
+    }
+
+    private void writeByte(int value) throws IOException {
+      block[blockSize++] = (byte) value;
+      if (blockSize == MAX_SUB_BLOCK) {
+        out.write(blockSize);
+        out.write(block, 0, blockSize);
+        blockSize = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.jakewharton.telecine;
+
+import android.support.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.jakewharton.telecine.ColorQuantizer.IndexedFrame;
+
+/**
+ * Streams frames from a {@link FrameSource} into an animated GIF. Frames are read and written in
+ * order on the calling thread while quantizing and compressing fan out to a {@link ForkJoinPool}.
+ * At most {@code maxInFlight} frames are held at once so memory stays bounded regardless of length.
+ */
+final class GifExportPipeline {
+  /** Supplies frames as ARGB pixels of a constant size. */
+  interface FrameSource {
+    int width();
+
+    int height();
+
+    /** The next frame, or null when there are no more. The array is owned by the pipeline. */
+    @Nullable int[] nextFrame() throws IOException;
+
+    /**
+     * How many frame delays the frame last returned by {@link #nextFrame} is shown for. Unchanged
+     * stretches become one longer frame rather than identical copies. At least 1.
+     */
+    int intervals();
+  }
+
+  /** The graphic control extension stores the delay in 16 bits. */
+  private static final int MAX_DELAY_CENTIS = 0xFFFF;
+
+  private final ForkJoinPool pool;
+  private final int maxInFlight;
+  private final ThreadLocal<ColorQuantizer> quantizers = new ThreadLocal<ColorQuantizer>() {
+    @Override protected ColorQuantizer initialValue() {
+      return new ColorQuantizer();
+    }
+  };
+
+  GifExportPipeline(ForkJoinPool pool, int maxInFlight) {
+    this.pool = pool;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Export every frame of {@code source}, each shown for {@code delayCentis} times its
+   * {@linkplain FrameSource#intervals intervals}. Returns the count.
+   */
+  int export(FrameSource source, OutputStream out, final int delayCentis) throws IOException {
+    final int width = source.width();
+    final int height = source.height();
+    GifEncoder encoder = new GifEncoder(out, width, height);
+    ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<>(maxInFlight);
+    int frames = 0;
+    try {
+      int[] pixels;
+      while ((pixels = source.nextFrame()) != null) {
+        final int[] framePixels = pixels;
+        final int frameDelayCentis =
+            (int) Math.min(MAX_DELAY_CENTIS, (long) delayCentis * source.intervals());
+        inFlight.add(pool.submit(new Callable<byte[]>() {
+          @Override public byte[] call() {
+            IndexedFrame frame = quantizers.get().quantize(framePixels, width, height);
+            return GifEncoder.encodeFrame(frame, frameDelayCentis);
+          }
+        }));
+        if (inFlight.size() == maxInFlight) {
+          encoder.writeFrame(inFlight.remove().join());
+          frames++;
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        encoder.writeFrame(inFlight.remove().join());
+        frames++;
+      }
+    } finally {
+      for (ForkJoinTask<byte[]> task : inFlight) {
+        task.cancel(false);
+      }
+    }
+    encoder.finish();
+    return frames;
+  }
+}
@@ -0,0 +1,75 @@
+package com.jakewharton.telecine;
+
+/**
+ * A histogram of non-negative values with power of two buckets. Recording a value does not
+ * allocate, so it is safe to use for every frame. Not thread safe.
+ */
+final class Histogram {
+  private final long[] buckets = new long[64];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets[64 - Long.numberOfLeadingZeros(value)]++;
+    count++;
+    sum += value;
+    if (value < min) {
+      min = value;
+    }
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  long count() {
+    return count;
+  }
+
+  long min() {
+    return count == 0 ? 0 : min;
+  }
+
+  long max() {
+    return max;
+  }
+
+  long mean() {
+    return count == 0 ? 0 : sum / count;
+  }
+
+  /**
+   * An upper bound for the value below which {@code fraction} of the recorded values fall. It is
+   * accurate to within a factor of two, and never above {@link #max()}.
+   */
+  long percentile(double fraction) {
+    if (count == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(fraction * count);
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= target && seen > 0) {
+        long upperBound = i == 0 ? 0 : (1L << i) - 1;
+        return Math.min(upperBound, max);
+      }
+    }
+    return max;
+  }
+
+  String toJson() {
+    return "{\"count\": " + count
+        + ", \"min\": " + min()
+        + ", \"mean\": " + mean()
+        + ", \"p50\": " + percentile(0.5)
+        + ", \"p90\": " + percentile(0.9)
+        + ", \"p99\": " + percentile(0.99)
+        + ", \"max\": " + max
+        + '}';
+  }
+}
@@ -0,0 +1,76 @@
+package com.jakewharton.telecine;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * Intervals in seconds after which an unchanged screen is encoded again. Zero keeps a constant
+ * frame rate.
+ */
+final class KeepAliveIntervalAdapter extends BaseAdapter {
+  public static int getSelectedPosition(int value) {
+    switch (value) {
+      case 0:
+        return 0;
+      case 1:
+        return 1;
+      case 2:
+        return 2;
+      case 5:
+        return 3;
+      default:
+        return 0;
+    }
+  }
+
+  private final Context context;
+  private final LayoutInflater inflater;
+
+  KeepAliveIntervalAdapter(Context context) {
+    this.context = context;
+    inflater = LayoutInflater.from(context);
+  }
+
+  @Override public int getCount() {
+    return 4;
+  }
+
+  @Override public Integer getItem(int position) {
+    switch (position) {
+      case 0:
+        return 0;
+      case 1:
+        return 1;
+      case 2:
+        return 2;
+      case 3:
+        return 5;
+      default:
+        throw new IllegalArgumentException("Unknown position: " + position);
+    }
+  }
+
+  @Override public long getItemId(int position) {
+    return position;
+  }
+
+  @Override public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+    TextView tv = (TextView) convertView;
+    if (tv == null) {
+      tv =
+          (TextView) inflater.inflate(android.R.layout.simple_spinner_dropdown_item, parent, false);
+    }
+
+    int seconds = getItem(position);
+    tv.setText(seconds == 0
+        ? context.getString(R.string.keep_alive_off)
+        : context.getString(R.string.keep_alive_seconds, seconds));
+
+    return tv;
+  }
+}
@@ -0,0 +1,11 @@
+package com.jakewharton.telecine;
+
+import java.lang.annotation.Retention;
+import javax.inject.Qualifier;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+@Qualifier
+@Retention(RUNTIME)
+@interface KeepAliveSeconds {
+}
@@ -0,0 +1,49 @@
+package com.jakewharton.telecine;
+
+import android.view.Surface;
+import java.io.IOException;
+
+import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+
+/** Times the lifecycle calls of any {@link RecordingEncoder} into {@link RecordingMetrics}. */
+final class MeasuredEncoder implements RecordingEncoder {
+  private final RecordingEncoder delegate;
+  private final RecordingMetrics metrics;
+
+  MeasuredEncoder(RecordingEncoder delegate, RecordingMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override public void prepare(RecordingInfo info) throws IOException {
+    long startNanos = System.nanoTime();
+    delegate.prepare(info);
+    metrics.prepareUs.record((System.nanoTime() - startNanos) / 1000);
+  }
+
+  @Override public Surface getInputSurface() {
+    return delegate.getInputSurface();
+  }
+
+  @Override public void start() {
+    long startNanos = System.nanoTime();
+    delegate.start();
+    metrics.startUs.record((System.nanoTime() - startNanos) / 1000);
+  }
+
+  @Override public void stop() {
+    long startNanos = System.nanoTime();
+    delegate.stop();
+    metrics.stopUs.record((System.nanoTime() - startNanos) / 1000);
+  }
+
+  @Override public boolean setBitRate(int bitRate) {
+    return delegate.setBitRate(bitRate);
+  }
+
+  @Override public void release() {
+    long startNanos = System.nanoTime();
+    delegate.release();
+    metrics.releaseUs.record((System.nanoTime() - startNanos) / 1000);
+  }
+}
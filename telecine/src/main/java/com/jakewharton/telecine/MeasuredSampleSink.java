@@ -0,0 +1,46 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import java.nio.ByteBuffer;
+
+import static android.media.MediaCodec.BUFFER_FLAG_KEY_FRAME;
+
+/** Records every sample into {@link RecordingMetrics} before passing it on. */
+final class MeasuredSampleSink implements SampleSink {
+  private final SampleSink delegate;
+  private final RecordingMetrics metrics;
+
+  MeasuredSampleSink(SampleSink delegate, RecordingMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override public void onFormatChanged(MediaFormat format) {
+    ByteBuffer csd = format.getByteBuffer("csd-0");
+    if (csd != null) {
+      String profile = CodecProfile.profileName(format.getString(MediaFormat.KEY_MIME), csd);
+      if (profile != null) {
+        metrics.onProfile(profile);
+      }
+    }
+    delegate.onFormatChanged(format);
+  }
+
+  @Override public void onSample(ByteBuffer buffer, MediaCodec.BufferInfo info) {
+    // Frames from a virtual display are stamped with the same clock as System.nanoTime().
+    long delayUs = System.nanoTime() / 1000 - info.presentationTimeUs;
+    metrics.onFrame(info.presentationTimeUs, info.size, (info.flags & BUFFER_FLAG_KEY_FRAME) != 0,
+        delayUs);
+    delegate.onSample(buffer, info);
+  }
+
+  @Override public void onEnd() {
+    metrics.onEnd();
+    delegate.onEnd();
+  }
+
+  @Override public void onAbort() {
+    delegate.onAbort();
+  }
+}
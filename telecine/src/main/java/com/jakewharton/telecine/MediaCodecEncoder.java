@@ -0,0 +1,255 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.Surface;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import timber.log.Timber;
+
+import static android.media.MediaCodec.BUFFER_FLAG_CODEC_CONFIG;
+import static android.media.MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+import static android.media.MediaCodec.BUFFER_FLAG_KEY_FRAME;
+import static android.media.MediaCodec.CONFIGURE_FLAG_ENCODE;
+import static android.media.MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface;
+import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+
+/**
+ * A {@link RecordingEncoder} which feeds an asynchronous {@link MediaCodec} from an input surface
+ * and drains its output into a {@link SampleSink} on a dedicated thread.
+ */
+final class MediaCodecEncoder implements RecordingEncoder {
+  private static final int I_FRAME_INTERVAL_SECONDS = 1;
+  private static final long REPEAT_FRAME_AFTER_US = TimeUnit.MILLISECONDS.toMicros(100);
+  /** Caps how often the input surface feeds the encoder. Not part of the public API. */
+  private static final String KEY_MAX_FPS_TO_ENCODER = "max-fps-to-encoder";
+  /** For inputs such as a decoder which render every frame and never leave the screen idle. */
+  static final long NO_REPEAT = -1;
+  private static final long END_OF_STREAM_TIMEOUT_MS = 5000;
+
+  private final SampleSink sink;
+  private final String mimeType;
+  private final long keepAliveUs;
+  private final HandlerThread drainThread = new HandlerThread("telecine-encoder");
+  private final CountDownLatch endOfStream = new CountDownLatch(1);
+
+  private MediaCodec codec;
+  private Surface inputSurface;
+  // Only touched on the drain thread.
+  private int frameCount;
+  private int keyFrameCount;
+  private volatile long startNanos;
+  /** Whether the sink was ended by {@link #stop}. Otherwise it is aborted on release. */
+  private boolean ended;
+
+  MediaCodecEncoder(SampleSink sink) {
+    this(sink, 0);
+  }
+
+  MediaCodecEncoder(SampleSink sink, long keepAliveUs) {
+    this(sink, MediaFormat.MIMETYPE_VIDEO_AVC, keepAliveUs);
+  }
+
+  /**
+   * @param keepAliveUs when positive, encode a frame only when the screen changes and repeat an
+   * unchanged one after this long. {@link #NO_REPEAT} never repeats a frame. Otherwise keep a
+   * constant frame rate.
+   */
+  MediaCodecEncoder(SampleSink sink, String mimeType, long keepAliveUs) {
+    this.sink = sink;
+    this.mimeType = mimeType;
+    this.keepAliveUs = keepAliveUs;
+  }
+
+  @Override public void prepare(final RecordingInfo info) throws IOException {
+    MediaFormat format = MediaFormat.createVideoFormat(mimeType, info.width, info.height);
+    format.setInteger(MediaFormat.KEY_COLOR_FORMAT, COLOR_FormatSurface);
+    format.setInteger(MediaFormat.KEY_BIT_RATE, info.bitRate);
+    format.setInteger(MediaFormat.KEY_BITRATE_MODE,
+        MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_VBR);
+    format.setInteger(MediaFormat.KEY_FRAME_RATE, info.frameRate);
+    format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+    // A static screen produces no frames. Repeat the last one so the output keeps a steady cadence,
+    // or only rarely for a variable frame rate.
+    if (keepAliveUs > 0) {
+      format.setLong(MediaFormat.KEY_REPEAT_PREVIOUS_FRAME_AFTER, keepAliveUs);
+      // Animations can update the display faster than the target rate. Drop the excess frames.
+      format.setFloat(KEY_MAX_FPS_TO_ENCODER, info.frameRate);
+    } else if (keepAliveUs != NO_REPEAT) {
+      format.setLong(MediaFormat.KEY_REPEAT_PREVIOUS_FRAME_AFTER, REPEAT_FRAME_AFTER_US);
+    }
+    Timber.d("Encoder format: %s", format);
+
+    drainThread.start();
+    // Callbacks of an asynchronous codec are delivered on the looper of the creating thread.
+    codec = createOnDrainThread();
+    codec.setCallback(new DrainCallback());
+    codec.configure(format, null, null, CONFIGURE_FLAG_ENCODE);
+    inputSurface = codec.createInputSurface();
+  }
+
+  private MediaCodec createOnDrainThread() throws IOException {
+    final MediaCodec[] result = new MediaCodec[1];
+    final IOException[] error = new IOException[1];
+    final CountDownLatch created = new CountDownLatch(1);
+    new Handler(drainThread.getLooper()).post(new Runnable() {
+      @Override public void run() {
+        try {
+          result[0] = MediaCodec.createEncoderByType(mimeType);
+        } catch (IOException e) {
+          error[0] = e;
+        } finally {
+          created.countDown();
+        }
+      }
+    });
+    try {
+      created.await();
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted creating encoder.", e);
+    }
+    if (error[0] != null) {
+      throw error[0];
+    }
+    return result[0];
+  }
+
+  @Override public Surface getInputSurface() {
+    return inputSurface;
+  }
+
+  @Override public void start() {
+    startNanos = System.nanoTime();
+    codec.start();
+  }
+
+  @Override public void stop() {
+    codec.signalEndOfInputStream();
+    try {
+      if (!endOfStream.await(END_OF_STREAM_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        Timber.w("Timed out waiting for encoder end of stream.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    codec.stop();
+    ended = true;
+    runOnDrainThread(new Runnable() {
+      @Override public void run() {
+        Timber.d("Encoded %s frames (%s key frames).", frameCount, keyFrameCount);
+        sink.onEnd();
+      }
+    });
+  }
+
+  @Override public boolean setBitRate(int bitRate) {
+    Bundle parameters = new Bundle();
+    parameters.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+    try {
+      codec.setParameters(parameters);
+    } catch (IllegalStateException e) {
+      Timber.w(e, "Unable to change bit rate.");
+      return false;
+    }
+    Timber.d("Bit rate changed to %s bps.", bitRate);
+    return true;
+  }
+
+  /** Safe to call after {@link #prepare} failed part way. */
+  @Override public void release() {
+    if (codec != null) {
+      codec.release();
+    }
+    if (inputSurface != null) {
+      inputSurface.release();
+    }
+    if (!ended) {
+      ended = true;
+      runOnDrainThread(new Runnable() {
+        @Override public void run() {
+          sink.onAbort();
+        }
+      });
+    }
+    drainThread.quitSafely();
+  }
+
+  /**
+   * Deliver to the sink on the drain thread to keep it single-threaded, and wait. Runs on the
+   * calling thread if the drain thread was never started.
+   */
+  private void runOnDrainThread(final Runnable runnable) {
+    Looper looper = drainThread.getLooper();
+    if (looper == null) {
+      runnable.run();
+      return;
+    }
+    final CountDownLatch done = new CountDownLatch(1);
+    new Handler(looper).post(new Runnable() {
+      @Override public void run() {
+        try {
+          runnable.run();
+        } finally {
+          done.countDown();
+        }
+      }
+    });
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private final class DrainCallback extends MediaCodec.Callback {
+    @Override public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+      // Input is provided through the surface.
+    }
+
+    @Override public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index,
+        @NonNull MediaCodec.BufferInfo info) {
+      if ((info.flags & BUFFER_FLAG_CODEC_CONFIG) != 0) {
+        info.size = 0; // Already delivered to the sink as part of the output format.
+      }
+      if (info.size > 0) {
+        ByteBuffer buffer = codec.getOutputBuffer(index);
+        if (buffer != null) {
+          buffer.position(info.offset);
+          buffer.limit(info.offset + info.size);
+          sink.onSample(buffer, info);
+          if (frameCount == 0) {
+            Timber.d("First frame encoded %sms after start.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+          }
+          frameCount++;
+          if ((info.flags & BUFFER_FLAG_KEY_FRAME) != 0) {
+            keyFrameCount++;
+          }
+        }
+      }
+      codec.releaseOutputBuffer(index, false);
+      if ((info.flags & BUFFER_FLAG_END_OF_STREAM) != 0) {
+        endOfStream.countDown();
+      }
+    }
+
+    @Override public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+      Timber.e(e, "Encoder error.");
+      endOfStream.countDown();
+    }
+
+    @Override public void onOutputFormatChanged(@NonNull MediaCodec codec,
+        @NonNull MediaFormat format) {
+      Timber.d("Encoder output format: %s", format);
+      sink.onFormatChanged(format);
+    }
+  }
+}
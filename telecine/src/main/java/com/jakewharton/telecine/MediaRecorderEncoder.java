@@ -0,0 +1,62 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaRecorder;
+import android.view.Surface;
+import java.io.IOException;
+
+import static android.media.MediaRecorder.OutputFormat.MPEG_4;
+import static android.media.MediaRecorder.VideoEncoder.H264;
+import static android.media.MediaRecorder.VideoSource.SURFACE;
+import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+
+/** A {@link RecordingEncoder} backed by the platform {@link MediaRecorder}. */
+final class MediaRecorderEncoder implements RecordingEncoder {
+  static final int AUDIO_BIT_RATE = 44100;
+
+  private final String outputFile;
+  private final boolean recordAudio;
+  private final MediaRecorder recorder = new MediaRecorder();
+
+  MediaRecorderEncoder(String outputFile, boolean recordAudio) {
+    this.outputFile = outputFile;
+    this.recordAudio = recordAudio;
+  }
+
+  @Override public void prepare(RecordingInfo info) throws IOException {
+    if (recordAudio) {
+      recorder.setAudioSource(MediaRecorder.AudioSource.DEFAULT);
+    }
+    recorder.setVideoSource(SURFACE);
+    recorder.setOutputFormat(MPEG_4); // Must be set before the frame rate.
+    if (recordAudio) {
+      recorder.setAudioEncodingBitRate(AUDIO_BIT_RATE);
+      recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+    }
+    recorder.setVideoFrameRate(info.frameRate);
+    recorder.setVideoEncoder(H264);
+    recorder.setVideoSize(info.width, info.height);
+    recorder.setVideoEncodingBitRate(info.bitRate);
+    recorder.setOutputFile(outputFile);
+    recorder.prepare();
+  }
+
+  @Override public Surface getInputSurface() {
+    return recorder.getSurface();
+  }
+
+  @Override public void start() {
+    recorder.start();
+  }
+
+  @Override public void stop() {
+    recorder.stop();
+  }
+
+  @Override public boolean setBitRate(int bitRate) {
+    return false; // Fixed once prepared.
+  }
+
+  @Override public void release() {
+    recorder.release();
+  }
+}
@@ -0,0 +1,113 @@
+package com.jakewharton.telecine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The header of a top-level box in an MP4 file. */
+final class Mp4Box {
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  /**
+   * Read the headers of all top-level boxes in {@code channel} without reading their contents.
+   * A truncated final box is reported with the size it declares.
+   */
+  static List<Mp4Box> scan(FileChannel channel) throws IOException {
+    List<Mp4Box> boxes = new ArrayList<>();
+    ByteBuffer header = ByteBuffer.allocate(16);
+    long fileSize = channel.size();
+    long offset = 0;
+    while (offset + 8 <= fileSize) {
+      header.clear().limit(8);
+      readFully(channel, header, offset);
+      header.flip();
+      long size = header.getInt() & 0xFFFFFFFFL;
+      String type = readType(header);
+      int headerSize = 8;
+      if (size == 1) {
+        if (offset + 16 > fileSize) {
+          break;
+        }
+        header.clear().limit(8);
+        readFully(channel, header, offset + 8);
+        header.flip();
+        size = header.getLong();
+        headerSize = 16;
+      } else if (size == 0) {
+        size = fileSize - offset; // Box extends to the end of the file.
+      }
+      if (size < headerSize) {
+        throw new IOException("Invalid size " + size + " for '" + type + "' at " + offset);
+      }
+      boxes.add(new Mp4Box(type, offset, size, headerSize));
+      offset += size;
+    }
+    return boxes;
+  }
+
+  static Mp4Box find(List<Mp4Box> boxes, String type) {
+    for (Mp4Box box : boxes) {
+      if (box.type.equals(type)) {
+        return box;
+      }
+    }
+    return null;
+  }
+
+  /** Write a {@code free} box header which occupies {@code size} bytes at {@code offset}. */
+  static void writeFreeHeader(FileChannel channel, long offset, long size) throws IOException {
+    if (size < 8 || size > 0xFFFFFFFFL) {
+      throw new IllegalArgumentException("Invalid free box size: " + size);
+    }
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt((int) size).put("free".getBytes(ASCII)).flip();
+    writeFully(channel, header, offset);
+  }
+
+  static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of file at " + position);
+      }
+      position += read;
+    }
+  }
+
+  static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static String readType(ByteBuffer buffer) {
+    byte[] type = new byte[4];
+    buffer.get(type);
+    return new String(type, ASCII);
+  }
+
+  final String type;
+  final long offset;
+  final long size;
+  final int headerSize;
+
+  Mp4Box(String type, long offset, long size, int headerSize) {
+    this.type = type;
+    this.offset = offset;
+    this.size = size;
+    this.headerSize = headerSize;
+  }
+
+  long end() {
+    return offset + size;
+  }
+
+  @Override public String toString() {
+    return "'" + type + "' @ " + offset + " (" + size + " bytes)";
+  }
+}
@@ -0,0 +1,45 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import timber.log.Timber;
+
+import static android.media.MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
+
+/** A {@link SampleSink} which writes every sample into a single MP4 file. */
+final class MuxerSampleSink implements SampleSink {
+  private final MediaMuxer muxer;
+  private int track = -1;
+
+  MuxerSampleSink(String outputFile) throws IOException {
+    muxer = new MediaMuxer(outputFile, MUXER_OUTPUT_MPEG_4);
+  }
+
+  @Override public void onFormatChanged(MediaFormat format) {
+    if (track != -1) {
+      throw new IllegalStateException("Output format changed after muxer was started.");
+    }
+    track = muxer.addTrack(format);
+    muxer.start();
+  }
+
+  @Override public void onSample(ByteBuffer buffer, MediaCodec.BufferInfo info) {
+    muxer.writeSampleData(track, buffer, info);
+  }
+
+  @Override public void onEnd() {
+    if (track != -1) {
+      muxer.stop();
+    } else {
+      Timber.w("Muxer received no samples.");
+    }
+    muxer.release();
+  }
+
+  @Override public void onAbort() {
+    muxer.release();
+  }
+}
@@ -44,10 +44,12 @@ final class OverlayView extends FrameLayout {
    * @param context
    * @param listener
    * @param showCountDown
+   * @param canPause 是否展示暂停按钮
    * @return
    */
-  static OverlayView create(Context context, Listener listener, boolean showCountDown) {
-    return new OverlayView(context, listener, showCountDown);
+  static OverlayView create(Context context, Listener listener, boolean showCountDown,
+      boolean canPause) {
+    return new OverlayView(context, listener, showCountDown, canPause);
   }
 
   /**
@@ -86,12 +88,24 @@ final class OverlayView extends FrameLayout {
     /** Called when cancel is clicked. This view is unusable once this callback is invoked. */
     void onCancel();
 
+    /**
+     * Called as soon as start is clicked, ahead of the countdown. Recording can be prepared so that
+     * {@link #onStart()} has as little work to do as possible.
+     */
+    void onPrepare();
+
     /**
      * Called when start is clicked and it is appropriate to start recording. This view will hide
      * itself completely before invoking this callback.
      */
     void onStart();
 
+    /** Called when pause is clicked while recording. */
+    void onPause();
+
+    /** Called when resume is clicked while paused. */
+    void onResume();
+
     /** Called when stop is clicked. This view is unusable once this callback is invoked. */
     void onStop();
   }
@@ -99,6 +113,8 @@ final class OverlayView extends FrameLayout {
   @Bind(R.id.record_overlay_buttons) View buttonsView;
   @Bind(R.id.record_overlay_cancel) View cancelView;
   @Bind(R.id.record_overlay_start) View startView;
+  @Bind(R.id.record_overlay_controls) View controlsView;
+  @Bind(R.id.record_overlay_pause) TextView pauseView;
   @Bind(R.id.record_overlay_stop) View stopView;
   @Bind(R.id.record_overlay_recording) TextView recordingView;
 
@@ -106,17 +122,22 @@ final class OverlayView extends FrameLayout {
 
   private final Listener listener;
   private final boolean showCountDown;
+  private final boolean canPause;
+  private boolean paused;
 
   /**
    * 构造函数
    * @param context
    * @param listener
    * @param showCountDown
+   * @param canPause
    */
-  private OverlayView(Context context, Listener listener, boolean showCountDown) {
+  private OverlayView(Context context, Listener listener, boolean showCountDown,
+      boolean canPause) {
     super(context);
     this.listener = listener;
     this.showCountDown = showCountDown;
+    this.canPause = canPause;
 
     //view的子类中自带inflate方法来wrap视图内容
     inflate(context, R.layout.overlay_view, this);
@@ -155,6 +176,8 @@ final class OverlayView extends FrameLayout {
   }
 
   @OnClick(R.id.record_overlay_start) void onStartClicked() {
+    listener.onPrepare();
+
     recordingView.setVisibility(VISIBLE);
     //获取到视图的中心位置
     int centerX = (int) (startView.getX() + (startView.getWidth() / 2));
@@ -184,7 +207,19 @@ final class OverlayView extends FrameLayout {
    */
   private void startRecording() {
     recordingView.setVisibility(INVISIBLE);
-    stopView.setVisibility(VISIBLE);
+    controlsView.setVisibility(VISIBLE);
+    pauseView.setVisibility(canPause ? VISIBLE : GONE);
+    pauseView.setOnClickListener(new OnClickListener() {
+      @Override public void onClick(@NonNull View v) {
+        paused = !paused;
+        pauseView.setText(paused ? R.string.resume : R.string.pause);
+        if (paused) {
+          listener.onPause();
+        } else {
+          listener.onResume();
+        }
+      }
+    });
     stopView.setOnClickListener(new OnClickListener() {
       @Override public void onClick(@NonNull View v) {
         listener.onStop();
@@ -0,0 +1,111 @@
+package com.jakewharton.telecine;
+
+import android.support.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steps the video bit rate down when the encoder falls behind or the device gets hot, and back up
+ * once both recover. Fed one observation every {@link #WINDOW_MS}.
+ * <p>
+ * The policy:
+ * <ul>
+ * <li>The encoder is <em>behind</em> when a frame in the window waited longer than
+ * {@link #BEHIND_INTERVALS} frame intervals between capture and output. A queue only builds when
+ * the encoder cannot keep up. The output cadence alone is not used because an idle screen also
+ * produces fewer frames.</li>
+ * <li>At or above {@link #CRITICAL_CELSIUS} the level steps down immediately.</li>
+ * <li>After {@link #STEP_DOWN_WINDOWS} consecutive windows which are behind or at or above
+ * {@link #HOT_CELSIUS}, the level steps down.</li>
+ * <li>After {@link #STEP_UP_WINDOWS} consecutive windows with no frame waiting longer than
+ * {@link #CAUGHT_UP_INTERVALS} intervals and below {@link #COOL_CELSIUS}, the level steps up.</li>
+ * <li>Any other window resets both counts, so the gap between the hot and cool thresholds keeps
+ * the level from flapping.</li>
+ * </ul>
+ * An unknown temperature is treated as cool. Not thread safe.
+ */
+final class QualityController {
+  enum Reason {
+    ENCODER_BEHIND,
+    HOT,
+    CRITICAL_TEMPERATURE,
+    RECOVERED
+  }
+
+  static final long WINDOW_MS = TimeUnit.SECONDS.toMillis(2);
+  /** Bit rate of each level as a fraction of the configured one. */
+  static final float[] BIT_RATE_FACTORS = { 1f, 0.75f, 0.5f, 0.35f };
+  static final int BEHIND_INTERVALS = 3;
+  static final float CAUGHT_UP_INTERVALS = 1.5f;
+  static final float CRITICAL_CELSIUS = 45;
+  static final float HOT_CELSIUS = 42;
+  static final float COOL_CELSIUS = 39;
+  static final int STEP_DOWN_WINDOWS = 2;
+  static final int STEP_UP_WINDOWS = 5;
+
+  private final int maxBitRate;
+  private final long frameIntervalUs;
+  private int level;
+  private int stressedWindows;
+  private int healthyWindows;
+
+  QualityController(int maxBitRate, int frameRate) {
+    this.maxBitRate = maxBitRate;
+    this.frameIntervalUs = 1000000L / frameRate;
+  }
+
+  /** Zero is full quality. Higher levels have lower bit rates. */
+  int level() {
+    return level;
+  }
+
+  int bitRate() {
+    return (int) (maxBitRate * BIT_RATE_FACTORS[level]);
+  }
+
+  /**
+   * Observe one window. Returns why the level changed, or null if it did not.
+   *
+   * @param frames frames output by the encoder in the window.
+   * @param maxEncoderDelayUs the longest any of those frames waited in the encoder.
+   * @param temperatureCelsius the device temperature, or NaN if unknown.
+   */
+  @Nullable Reason onWindow(int frames, long maxEncoderDelayUs, float temperatureCelsius) {
+    boolean canStepDown = level < BIT_RATE_FACTORS.length - 1;
+    if (temperatureCelsius >= CRITICAL_CELSIUS && canStepDown) {
+      return stepDown(Reason.CRITICAL_TEMPERATURE);
+    }
+
+    boolean behind = frames > 0 && maxEncoderDelayUs > frameIntervalUs * BEHIND_INTERVALS;
+    boolean hot = temperatureCelsius >= HOT_CELSIUS;
+    if (behind || hot) {
+      healthyWindows = 0;
+      stressedWindows = Math.min(stressedWindows + 1, STEP_DOWN_WINDOWS);
+      if (stressedWindows == STEP_DOWN_WINDOWS && canStepDown) {
+        return stepDown(behind ? Reason.ENCODER_BEHIND : Reason.HOT);
+      }
+      return null;
+    }
+    stressedWindows = 0;
+
+    boolean caughtUp = frames == 0 || maxEncoderDelayUs <= frameIntervalUs * CAUGHT_UP_INTERVALS;
+    boolean cool = !(temperatureCelsius >= COOL_CELSIUS);
+    if (!caughtUp || !cool) {
+      healthyWindows = 0;
+      return null;
+    }
+    healthyWindows = Math.min(healthyWindows + 1, STEP_UP_WINDOWS);
+    if (healthyWindows == STEP_UP_WINDOWS && level > 0) {
+      level--;
+      healthyWindows = 0;
+      return Reason.RECOVERED;
+    }
+    return null;
+  }
+
+  private Reason stepDown(Reason reason) {
+    level++;
+    stressedWindows = 0;
+    healthyWindows = 0;
+    return reason;
+  }
+}
@@ -0,0 +1,64 @@
+package com.jakewharton.telecine;
+
+/** An immutable snapshot of every setting which affects a recording. */
+final class RecordingConfig {
+  static final int VIDEO_CODEC_H264 = 0;
+  /** Falls back to H.264 where HEVC cannot be used. */
+  static final int VIDEO_CODEC_HEVC = 1;
+
+  final boolean showCountdown;
+  final int videoSizePercentage;
+  final boolean recordingNotification;
+  final boolean showTouches;
+  final boolean recordAudio;
+  final boolean useMediaCodec;
+  final boolean instantReplay;
+  final int segmentMinutes;
+  final boolean fragmentedOutput;
+  /**
+   * Seconds after which an unchanged screen is encoded again, or zero to keep a constant frame
+   * rate.
+   */
+  final int keepAliveSeconds;
+  final CropRegion cropRegion;
+  /** Create a smaller copy of each recording in the background for sharing. */
+  final boolean shareTranscode;
+  /** The preferred codec, {@link #VIDEO_CODEC_H264} or {@link #VIDEO_CODEC_HEVC}. */
+  final int videoCodec;
+
+  RecordingConfig(boolean showCountdown, int videoSizePercentage, boolean recordingNotification,
+      boolean showTouches, boolean recordAudio, boolean useMediaCodec, boolean instantReplay,
+      int segmentMinutes, boolean fragmentedOutput, int keepAliveSeconds, CropRegion cropRegion,
+      boolean shareTranscode, int videoCodec) {
+    this.showCountdown = showCountdown;
+    this.videoSizePercentage = videoSizePercentage;
+    this.recordingNotification = recordingNotification;
+    this.showTouches = showTouches;
+    this.recordAudio = recordAudio;
+    this.useMediaCodec = useMediaCodec;
+    this.instantReplay = instantReplay;
+    this.segmentMinutes = segmentMinutes;
+    this.fragmentedOutput = fragmentedOutput;
+    this.keepAliveSeconds = keepAliveSeconds;
+    this.cropRegion = cropRegion;
+    this.shareTranscode = shareTranscode;
+    this.videoCodec = videoCodec;
+  }
+
+  @Override public String toString() {
+    return "RecordingConfig{showCountdown=" + showCountdown
+        + ", videoSizePercentage=" + videoSizePercentage
+        + ", recordingNotification=" + recordingNotification
+        + ", showTouches=" + showTouches
+        + ", recordAudio=" + recordAudio
+        + ", useMediaCodec=" + useMediaCodec
+        + ", instantReplay=" + instantReplay
+        + ", segmentMinutes=" + segmentMinutes
+        + ", fragmentedOutput=" + fragmentedOutput
+        + ", keepAliveSeconds=" + keepAliveSeconds
+        + ", cropRegion=" + cropRegion
+        + ", shareTranscode=" + shareTranscode
+        + ", videoCodec=" + videoCodec
+        + '}';
+  }
+}
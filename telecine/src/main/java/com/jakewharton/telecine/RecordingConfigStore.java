@@ -0,0 +1,29 @@
+package com.jakewharton.telecine;
+
+import android.content.SharedPreferences;
+
+/**
+ * Holds the current {@link RecordingConfig}. The config is read from preferences once and replaced
+ * as a whole whenever a preference changes, so reading it never touches preferences.
+ */
+final class RecordingConfigStore implements SharedPreferences.OnSharedPreferenceChangeListener {
+  interface Loader {
+    RecordingConfig load();
+  }
+
+  private final Loader loader;
+  private volatile RecordingConfig config;
+
+  RecordingConfigStore(Loader loader) {
+    this.loader = loader;
+    this.config = loader.load();
+  }
+
+  RecordingConfig get() {
+    return config;
+  }
+
+  @Override public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+    config = loader.load();
+  }
+}
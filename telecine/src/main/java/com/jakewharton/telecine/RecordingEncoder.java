@@ -0,0 +1,25 @@
+package com.jakewharton.telecine;
+
+import android.view.Surface;
+import java.io.IOException;
+
+import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+
+/** An engine which encodes the frames rendered into its input {@link Surface}. */
+interface RecordingEncoder {
+  /** Configure the encoder for {@code info}. Must be called before any other method. */
+  void prepare(RecordingInfo info) throws IOException;
+
+  /** The surface into which frames should be rendered. Only valid after {@link #prepare}. */
+  Surface getInputSurface();
+
+  void start();
+
+  /** Stop encoding and flush all pending output. Blocks until the output is complete. */
+  void stop();
+
+  /** Change the target bit rate while encoding. Returns false if this encoder cannot. */
+  boolean setBitRate(int bitRate);
+
+  void release();
+}
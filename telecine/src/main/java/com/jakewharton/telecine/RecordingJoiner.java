@@ -0,0 +1,76 @@
+package com.jakewharton.telecine;
+
+import com.coremedia.iso.boxes.Container;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.builder.DefaultMp4Builder;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+import com.googlecode.mp4parser.authoring.tracks.AppendTrack;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import timber.log.Timber;
+
+/**
+ * Joins the pieces of a paused and resumed recording into a single MP4. Samples are copied as-is
+ * and each piece's timeline is appended to the previous one so the paused time disappears. Nothing
+ * is decoded or re-encoded.
+ */
+final class RecordingJoiner {
+  private RecordingJoiner() {
+    throw new AssertionError("No instances.");
+  }
+
+  /**
+   * Write the concatenation of {@code pieces} to {@code output}. Every piece must contain the same
+   * tracks in the same order with identical sample descriptions, which is the case for pieces
+   * recorded with the same encoder settings.
+   */
+  static void join(List<File> pieces, File output) throws IOException {
+    List<Movie> movies = new ArrayList<>(pieces.size());
+    try {
+      for (File piece : pieces) {
+        movies.add(MovieCreator.build(piece.getPath()));
+      }
+
+      int trackCount = movies.get(0).getTracks().size();
+      Movie joined = new Movie();
+      for (int i = 0; i < trackCount; i++) {
+        Track[] tracks = new Track[movies.size()];
+        for (int j = 0; j < tracks.length; j++) {
+          List<Track> pieceTracks = movies.get(j).getTracks();
+          if (pieceTracks.size() != trackCount) {
+            throw new IOException("Piece " + pieces.get(j) + " has " + pieceTracks.size()
+                + " tracks. Expected " + trackCount + ".");
+          }
+          tracks[j] = pieceTracks.get(i);
+        }
+        joined.addTrack(new AppendTrack(tracks));
+      }
+
+      Container container = new DefaultMp4Builder().build(joined);
+      try (RandomAccessFile raf = new RandomAccessFile(output, "rw")) {
+        raf.setLength(0);
+        FileChannel channel = raf.getChannel();
+        container.writeContainer(channel);
+        channel.force(false);
+      }
+    } catch (RuntimeException e) {
+      // AppendTrack rejects pieces whose sample descriptions differ.
+      throw new IOException("Unable to join " + pieces, e);
+    } finally {
+      for (Movie movie : movies) {
+        for (Track track : movie.getTracks()) {
+          try {
+            track.close();
+          } catch (IOException e) {
+            Timber.w(e, "Unable to close track.");
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.jakewharton.telecine;
+
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.boxes.HandlerBox;
+import com.coremedia.iso.boxes.MovieHeaderBox;
+import com.coremedia.iso.boxes.SampleSizeBox;
+import com.coremedia.iso.boxes.TrackBox;
+import com.coremedia.iso.boxes.TrackHeaderBox;
+import com.googlecode.mp4parser.MemoryDataSourceImpl;
+import com.googlecode.mp4parser.util.Path;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/** Metadata of a finished recording read from its {@code moov} box alone. */
+final class RecordingMetadata {
+  final long durationMs;
+  final int width;
+  final int height;
+  final long sizeBytes;
+  final long videoFrames;
+
+  RecordingMetadata(long durationMs, int width, int height, long sizeBytes, long videoFrames) {
+    this.durationMs = durationMs;
+    this.width = width;
+    this.height = height;
+    this.sizeBytes = sizeBytes;
+    this.videoFrames = videoFrames;
+  }
+
+  /**
+   * Read the metadata of {@code file}. The duration is zero for fragmented recordings since their
+   * index does not cover the fragments.
+   */
+  static RecordingMetadata read(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      List<Mp4Box> boxes = Mp4Box.scan(channel);
+      Mp4Box moov = Mp4Box.find(boxes, "moov");
+      if (moov == null || moov.end() > size) {
+        throw new IOException("Missing moov box: " + boxes);
+      }
+      if (moov.size > Integer.MAX_VALUE) {
+        throw new IOException("moov too large: " + moov);
+      }
+      ByteBuffer moovBytes = ByteBuffer.allocate((int) moov.size);
+      Mp4Box.readFully(channel, moovBytes, moov.offset);
+      moovBytes.flip();
+
+      IsoFile isoFile = new IsoFile(new MemoryDataSourceImpl(moovBytes));
+      try {
+        MovieHeaderBox mvhd = Path.getPath(isoFile, "moov/mvhd");
+        if (mvhd == null || mvhd.getTimescale() <= 0) {
+          throw new IOException("Missing movie header.");
+        }
+        long durationMs = mvhd.getDuration() * 1000 / mvhd.getTimescale();
+
+        int width = 0;
+        int height = 0;
+        long videoFrames = 0;
+        for (TrackBox trak : isoFile.getMovieBox().getBoxes(TrackBox.class)) {
+          HandlerBox hdlr = Path.getPath(trak, "mdia/hdlr");
+          TrackHeaderBox tkhd = trak.getTrackHeaderBox();
+          if (hdlr != null && "vide".equals(hdlr.getHandlerType()) && tkhd != null) {
+            width = (int) tkhd.getWidth();
+            height = (int) tkhd.getHeight();
+            SampleSizeBox stsz = Path.getPath(trak, "mdia/minf/stbl/stsz");
+            if (stsz != null) {
+              videoFrames = stsz.getSampleCount();
+            }
+            break;
+          }
+        }
+        return new RecordingMetadata(durationMs, width, height, size, videoFrames);
+      } finally {
+        isoFile.close();
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return width + "x" + height + ", " + videoFrames + " frames, " + durationMs + "ms, "
+        + sizeBytes + " bytes";
+  }
+}
@@ -0,0 +1,274 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and histograms describing one recording session. Per-frame methods do not allocate.
+ * Frame methods are called on the encoder's drain thread and timing methods on the thread driving
+ * the encoder. Read the results only once the encoder has stopped, except for {@link #takeWindow}.
+ */
+final class RecordingMetrics {
+  /** Frames output since the previous call to {@link #takeWindow}. */
+  static final class Window {
+    final int frames;
+    final long maxEncoderDelayUs;
+
+    Window(int frames, long maxEncoderDelayUs) {
+      this.frames = frames;
+      this.maxEncoderDelayUs = maxEncoderDelayUs;
+    }
+  }
+
+  /** A change of quality made while recording. */
+  static final class Adjustment {
+    final long timeUs;
+    final String reason;
+    final int level;
+    final int bitRate;
+    final int frames;
+    final long maxEncoderDelayUs;
+    final float temperatureCelsius;
+
+    Adjustment(long timeUs, String reason, int level, int bitRate, int frames,
+        long maxEncoderDelayUs, float temperatureCelsius) {
+      this.timeUs = timeUs;
+      this.reason = reason;
+      this.level = level;
+      this.bitRate = bitRate;
+      this.frames = frames;
+      this.maxEncoderDelayUs = maxEncoderDelayUs;
+      this.temperatureCelsius = temperatureCelsius;
+    }
+
+    String toJson() {
+      return "{\"timeUs\": " + timeUs
+          + ", \"reason\": \"" + reason + '"'
+          + ", \"level\": " + level
+          + ", \"bitRate\": " + bitRate
+          + ", \"frames\": " + frames
+          + ", \"maxEncoderDelayUs\": " + maxEncoderDelayUs
+          + ", \"temperatureCelsius\": "
+          + (Float.isNaN(temperatureCelsius) ? "null" : String.valueOf(temperatureCelsius))
+          + '}';
+    }
+  }
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final int targetFrameRate;
+  private final long targetIntervalUs;
+  private final boolean variableFrameRate;
+
+  final Histogram frameIntervalUs = new Histogram();
+  /** Time from a frame's capture to its encoded output, which grows with the encoder's queue. */
+  final Histogram encoderDelayUs = new Histogram();
+  final Histogram prepareUs = new Histogram();
+  final Histogram startUs = new Histogram();
+  final Histogram stopUs = new Histogram();
+  final Histogram releaseUs = new Histogram();
+
+  private long frames;
+  private long keyFrames;
+  private long bytes;
+  private long droppedFrames;
+  private long skippedFrames;
+  private long durationUs;
+  private long runStartUs = -1;
+  private long lastPresentationTimeUs;
+
+  // Reset by the quality controller while recording.
+  private final AtomicInteger windowFrames = new AtomicInteger();
+  private final AtomicLong windowMaxEncoderDelayUs = new AtomicLong();
+  /** Guarded by itself. */
+  private final List<Adjustment> adjustments = new ArrayList<>();
+  private volatile String codec;
+  /** Null until the encoder reports it, and never for encoders which do not. */
+  private volatile String profile;
+
+  RecordingMetrics(int targetFrameRate) {
+    this(targetFrameRate, false);
+  }
+
+  /**
+   * @param variableFrameRate whether the encoder skips unchanged frames. Gaps between frames are
+   * then counted as skipped instead of dropped.
+   */
+  RecordingMetrics(int targetFrameRate, boolean variableFrameRate) {
+    this.targetFrameRate = targetFrameRate;
+    this.targetIntervalUs = 1000000L / targetFrameRate;
+    this.variableFrameRate = variableFrameRate;
+  }
+
+  void onFrame(long presentationTimeUs, int size, boolean keyFrame, long encoderDelayUs) {
+    frames++;
+    bytes += size;
+    if (keyFrame) {
+      keyFrames++;
+    }
+    this.encoderDelayUs.record(encoderDelayUs);
+    windowFrames.incrementAndGet();
+    long windowMax = windowMaxEncoderDelayUs.get();
+    while (encoderDelayUs > windowMax
+        && !windowMaxEncoderDelayUs.compareAndSet(windowMax, encoderDelayUs)) {
+      windowMax = windowMaxEncoderDelayUs.get();
+    }
+    if (runStartUs < 0) {
+      runStartUs = presentationTimeUs;
+    } else {
+      long intervalUs = presentationTimeUs - lastPresentationTimeUs;
+      frameIntervalUs.record(intervalUs);
+      // Anything longer than one and a half intervals means frames were missed.
+      if (intervalUs > targetIntervalUs * 3 / 2) {
+        long missed = (intervalUs + targetIntervalUs / 2) / targetIntervalUs - 1;
+        if (variableFrameRate) {
+          skippedFrames += missed;
+        } else {
+          droppedFrames += missed;
+        }
+      }
+    }
+    lastPresentationTimeUs = presentationTimeUs;
+  }
+
+  /** Called when an encoder stops so the time until the next one starts is not counted. */
+  void onEnd() {
+    if (runStartUs >= 0) {
+      durationUs += lastPresentationTimeUs - runStartUs + targetIntervalUs;
+      runStartUs = -1;
+    }
+  }
+
+  /**
+   * Fill in frame and byte counts from the finished file for encoders which do not report
+   * individual frames.
+   */
+  void onFile(RecordingMetadata metadata) {
+    if (frames == 0) {
+      frames = metadata.videoFrames;
+      bytes = metadata.sizeBytes;
+      durationUs = metadata.durationMs * 1000;
+    }
+  }
+
+  /** The encoder's codec, such as {@code video/avc}. */
+  void onCodec(String mimeType) {
+    codec = mimeType;
+  }
+
+  void onProfile(String profile) {
+    this.profile = profile;
+  }
+
+  /** The codec and profile for display, such as {@code H.264 High}. */
+  String codecDescription() {
+    String codec = this.codec;
+    if (codec == null) {
+      return "unknown codec";
+    }
+    String profile = this.profile;
+    String name = CodecProfile.codecName(codec);
+    return profile != null ? name + " " + profile : name;
+  }
+
+  /** Frames since the previous window. Safe to call from any thread while recording. */
+  Window takeWindow() {
+    return new Window(windowFrames.getAndSet(0), windowMaxEncoderDelayUs.getAndSet(0));
+  }
+
+  void onAdjustment(Adjustment adjustment) {
+    synchronized (adjustments) {
+      adjustments.add(adjustment);
+    }
+  }
+
+  int adjustments() {
+    synchronized (adjustments) {
+      return adjustments.size();
+    }
+  }
+
+  long frames() {
+    return frames;
+  }
+
+  long droppedFrames() {
+    return droppedFrames;
+  }
+
+  /** Frames which were not encoded because the screen did not change. */
+  long skippedFrames() {
+    return skippedFrames;
+  }
+
+  float actualFrameRate() {
+    return durationUs == 0 ? 0 : frames * 1000000f / durationUs;
+  }
+
+  long bytesPerSecond() {
+    return durationUs == 0 ? 0 : bytes * 1000000 / durationUs;
+  }
+
+  String toJson() {
+    StringBuilder adjustmentsJson = new StringBuilder("[");
+    synchronized (adjustments) {
+      for (int i = 0; i < adjustments.size(); i++) {
+        adjustmentsJson.append(i == 0 ? "\n    " : ",\n    ").append(adjustments.get(i).toJson());
+      }
+      if (!adjustments.isEmpty()) {
+        adjustmentsJson.append("\n  ");
+      }
+    }
+    adjustmentsJson.append(']');
+    return "{\n"
+        + "  \"codec\": " + quote(codec) + ",\n"
+        + "  \"profile\": " + quote(profile) + ",\n"
+        + "  \"frames\": " + frames + ",\n"
+        + "  \"keyFrames\": " + keyFrames + ",\n"
+        + "  \"droppedFrames\": " + droppedFrames + ",\n"
+        + "  \"skippedFrames\": " + skippedFrames + ",\n"
+        + "  \"variableFrameRate\": " + variableFrameRate + ",\n"
+        + "  \"durationUs\": " + durationUs + ",\n"
+        + "  \"targetFps\": " + targetFrameRate + ",\n"
+        + "  \"actualFps\": " + actualFrameRate() + ",\n"
+        + "  \"bytes\": " + bytes + ",\n"
+        + "  \"bytesPerSecond\": " + bytesPerSecond() + ",\n"
+        + "  \"frameIntervalUs\": " + frameIntervalUs.toJson() + ",\n"
+        + "  \"encoderDelayUs\": " + encoderDelayUs.toJson() + ",\n"
+        + "  \"prepareUs\": " + prepareUs.toJson() + ",\n"
+        + "  \"startUs\": " + startUs.toJson() + ",\n"
+        + "  \"stopUs\": " + stopUs.toJson() + ",\n"
+        + "  \"releaseUs\": " + releaseUs.toJson() + ",\n"
+        + "  \"adjustments\": " + adjustmentsJson + "\n"
+        + "}\n";
+  }
+
+  private static String quote(String value) {
+    return value == null ? "null" : '"' + value + '"';
+  }
+
+  void write(File file) throws IOException {
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8)) {
+      writer.write(toJson());
+    }
+  }
+
+  @Override public String toString() {
+    return codecDescription() + ", " + frames + " frames (" + droppedFrames + " dropped, "
+        + skippedFrames + " skipped) at "
+        + actualFrameRate() + "/" + targetFrameRate + " fps"
+        + (variableFrameRate ? " (variable)" : "") + ", " + bytesPerSecond()
+        + " B/s, encoder delay p50 "
+        + encoderDelayUs.percentile(0.5) + "us p99 " + encoderDelayUs.percentile(0.99)
+        + "us, prepare " + prepareUs.max() + "us, stop " + stopUs.max() + "us, release "
+        + releaseUs.max() + "us, " + adjustments() + " adjustments";
+  }
+}
@@ -0,0 +1,150 @@
+package com.jakewharton.telecine;
+
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import com.coremedia.iso.IsoFile;
+import com.googlecode.mp4parser.MemoryDataSourceImpl;
+import com.googlecode.mp4parser.util.Path;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import timber.log.Timber;
+
+/**
+ * Repairs recordings which were interrupted before they were completely written. Only files with
+ * a marker left by {@link FragmentedSampleSink} are examined so the scan stays cheap.
+ */
+final class RecordingRecovery {
+  private static final String MARKER_PREFIX = ".";
+  private static final String MARKER_SUFFIX = ".recording";
+
+  enum Result {
+    /** The file was already complete. */
+    INTACT,
+    /** A partially-written trailing fragment was removed. */
+    REPAIRED,
+    /** The file has no usable index and cannot be played. */
+    UNRECOVERABLE
+  }
+
+  private RecordingRecovery() {
+    throw new AssertionError("No instances.");
+  }
+
+  static File markerFor(File recording) {
+    return new File(recording.getParentFile(), MARKER_PREFIX + recording.getName() + MARKER_SUFFIX);
+  }
+
+  /** Find and repair interrupted recordings in {@code directory} without blocking the caller. */
+  static void recoverInBackground(final Context context, final File directory) {
+    new AsyncTask<Void, Void, Void>() {
+      @Override protected Void doInBackground(@NonNull Void... none) {
+        List<String> repaired = recoverAll(directory);
+        if (!repaired.isEmpty()) {
+          MediaScannerConnection.scanFile(context,
+              repaired.toArray(new String[repaired.size()]), null, null);
+        }
+        return null;
+      }
+    }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+  }
+
+  /** Returns the paths of the recordings which were repaired. */
+  static List<String> recoverAll(File directory) {
+    List<String> repaired = new ArrayList<>();
+    File[] markers = directory.listFiles(new FilenameFilter() {
+      @Override public boolean accept(File dir, String name) {
+        return name.startsWith(MARKER_PREFIX) && name.endsWith(MARKER_SUFFIX);
+      }
+    });
+    if (markers == null) {
+      return repaired;
+    }
+    for (File marker : markers) {
+      String name = marker.getName();
+      File recording = new File(directory,
+          name.substring(MARKER_PREFIX.length(), name.length() - MARKER_SUFFIX.length()));
+      if (recording.exists()) {
+        try {
+          Result result = recover(recording);
+          Timber.i("Recovery of '%s': %s", recording, result);
+          if (result == Result.REPAIRED) {
+            repaired.add(recording.getPath());
+          }
+        } catch (IOException e) {
+          Timber.e(e, "Unable to recover '%s'.", recording);
+        }
+      }
+      if (!marker.delete()) {
+        Timber.w("Unable to delete recording marker '%s'.", marker);
+      }
+    }
+    return repaired;
+  }
+
+  /**
+   * Truncate a fragmented MP4 after its last complete fragment. Only box headers and the
+   * {@code moov} box are read, so the cost does not depend on the length of the recording.
+   */
+  static Result recover(File recording) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(recording, "rw")) {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      List<Mp4Box> boxes = Mp4Box.scan(channel);
+      Mp4Box moov = Mp4Box.find(boxes, "moov");
+      if (moov == null || moov.end() > size) {
+        return Result.UNRECOVERABLE;
+      }
+      if (!isFragmented(channel, moov)) {
+        // A regular MP4 is only complete once its index has been written, which it has.
+        return Result.INTACT;
+      }
+
+      long validEnd = moov.end();
+      Mp4Box pendingMoof = null;
+      for (Mp4Box box : boxes) {
+        if (box.offset < moov.end()) {
+          continue;
+        }
+        if (box.end() > size) {
+          break; // Truncated while being written.
+        }
+        if ("moof".equals(box.type)) {
+          pendingMoof = box;
+        } else if ("mdat".equals(box.type) && pendingMoof != null) {
+          validEnd = box.end();
+          pendingMoof = null;
+        }
+      }
+      if (validEnd == size) {
+        return Result.INTACT;
+      }
+      Timber.d("Truncating '%s' from %s to %s bytes.", recording, size, validEnd);
+      channel.truncate(validEnd);
+      channel.force(false);
+      return Result.REPAIRED;
+    }
+  }
+
+  private static boolean isFragmented(FileChannel channel, Mp4Box moov) throws IOException {
+    if (moov.size > Integer.MAX_VALUE) {
+      throw new IOException("moov too large: " + moov);
+    }
+    ByteBuffer moovBytes = ByteBuffer.allocate((int) moov.size);
+    Mp4Box.readFully(channel, moovBytes, moov.offset);
+    moovBytes.flip();
+    IsoFile isoFile = new IsoFile(new MemoryDataSourceImpl(moovBytes));
+    try {
+      return Path.getPath(isoFile, "moov/mvex") != null;
+    } finally {
+      isoFile.close();
+    }
+  }
+}
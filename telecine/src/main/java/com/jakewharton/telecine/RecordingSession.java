@@ -4,28 +4,34 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
+import android.content.ContentValues;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Configuration;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.hardware.display.VirtualDisplay;
 import android.media.CamcorderProfile;
-import android.media.MediaMetadataRetriever;
-import android.media.MediaRecorder;
+import android.media.MediaFormat;
 import android.media.MediaScannerConnection;
 import android.media.projection.MediaProjection;
 import android.media.projection.MediaProjectionManager;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.BatteryManager;
+import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.StatFs;
+import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.DisplayMetrics;
-import android.view.Surface;
 import android.view.WindowManager;
+import android.widget.Toast;
 
 import com.google.android.gms.analytics.HitBuilders;
 
@@ -33,11 +39,17 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
-import javax.inject.Provider;
+import javax.inject.Inject;
 
 import timber.log.Timber;
 
@@ -45,13 +57,9 @@ import static android.app.PendingIntent.FLAG_CANCEL_CURRENT;
 import static android.content.Context.MEDIA_PROJECTION_SERVICE;
 import static android.content.Context.NOTIFICATION_SERVICE;
 import static android.content.Context.WINDOW_SERVICE;
-import static android.content.Intent.ACTION_SEND;
 import static android.content.Intent.ACTION_VIEW;
 import static android.content.res.Configuration.ORIENTATION_LANDSCAPE;
 import static android.hardware.display.DisplayManager.VIRTUAL_DISPLAY_FLAG_PRESENTATION;
-import static android.media.MediaRecorder.OutputFormat.MPEG_4;
-import static android.media.MediaRecorder.VideoEncoder.H264;
-import static android.media.MediaRecorder.VideoSource.SURFACE;
 import static android.os.Environment.DIRECTORY_MOVIES;
 
 /**
@@ -62,6 +70,28 @@ final class RecordingSession {
 
     private static final String DISPLAY_NAME = "telecine";
     private static final String MIME_TYPE = "video/mp4";
+    /**
+     * Encoded bits spent on each pixel of each frame. Chosen so that a 1080p recording at 30fps
+     * lands on the 8 Mbps which was previously used for every recording.
+     */
+    static final float BITS_PER_PIXEL = 0.13f;
+    /** HEVC reaches the same quality with about 40% fewer bits than H.264. */
+    static final float HEVC_BITS_PER_PIXEL = BITS_PER_PIXEL * 0.6f;
+    /** MediaMuxer only writes HEVC from Android 7.0. */
+    private static final int HEVC_MUXER_SDK = 24;
+    /** YUV 4:2:0 frames need even dimensions whatever the encoder reports. */
+    private static final int MIN_ALIGNMENT = 2;
+    /** Used when neither the encoder nor a camera profile has a frame rate. */
+    private static final int DEFAULT_FRAME_RATE = 30;
+    /** Length of video kept by instant replay. */
+    static final int REPLAY_SECONDS = 30;
+    /** Extra encoded time the replay buffer holds so a key frame precedes the replay window. */
+    private static final int REPLAY_MARGIN_SECONDS = 5;
+    private static final int MAX_REPLAY_BUFFER_BYTES = 64 * 1024 * 1024;
+    /** Covers the overlay leaving the screen at the start of a recording. */
+    static final long TRIM_START_US = TimeUnit.SECONDS.toMicros(1);
+    /** Covers the tap on stop at the end of a recording. */
+    static final long TRIM_END_US = TimeUnit.SECONDS.toMicros(1);
 
     interface Listener {
         /**
@@ -89,8 +119,10 @@ final class RecordingSession {
     private final Intent data;
 
     private final Analytics analytics;
-    private final Provider<Boolean> showCountDown;
-    private final Provider<Integer> videoSizePercentage;
+    private final ThumbnailLoader thumbnailLoader;
+    private final ShareTranscoder shareTranscoder;
+    private final EncoderCapabilities encoderCapabilities;
+    private final RecordingConfig config;
 
     private final File outputRoot;
     //输出文件的命名格式
@@ -104,31 +136,63 @@ final class RecordingSession {
     private final MediaProjectionManager projectionManager;
 
     private OverlayView overlayView;
-    //用于录制声音和视频
-    private MediaRecorder recorder;
+    //用于录制声音和视频的编码器
+    private RecordingEncoder encoder;
     //获取 录屏或者声音的token
     private MediaProjection projection;
     //捕捉 屏幕内容渲染到提供了 createVirtualDisplay 的surface view
     private VirtualDisplay display;
     private String outputFile;
+    private RecordingInfo recordingInfo;
+    /** 本次录制的视频编码, HEVC 不可用时回退到 H.264. */
+    private String videoMimeType;
+    /** 暂停后恢复录制时每一段的输出文件, 第一段就是 {@link #outputFile}. */
+    private final List<String> pieceFiles = new ArrayList<>();
     private boolean running;
+    private boolean paused;
+    /** 点击开始后在后台准备编码器和投影, 倒计时结束时只需要开始编码. */
+    private FutureTask<Void> preparation;
+    /** 暂停期间在后台准备的下一段编码器和它的输出文件, 恢复时只需要开始编码. */
+    private FutureTask<RecordingEncoder> nextPiece;
+    private String nextPieceFile;
+    private RecordingMetrics metrics;
+    private long startClickedNanos;
     private long recordingStartNanos;
-    private boolean recordAudio;
+    private long recordingStopNanos;
+    private ReplaySampleSink replaySink;
+    private SegmentingSampleSink segmentingSink;
+    /** 按码率预估剩余空间还能录制多久, 录制期间定时检查. */
+    private StorageBudget storageBudget;
+    private final Runnable storageCheck = new Runnable() {
+        @Override
+        public void run() {
+            checkStorage();
+        }
+    };
+    /** 编码器跟不上或者设备过热时降低码率. MediaRecorder 引擎不能调整, 为 null. */
+    private QualityController qualityController;
+    private final Runnable qualityCheck = new Runnable() {
+        @Override
+        public void run() {
+            checkQuality();
+        }
+    };
 
     RecordingSession(Context context, Listener listener, int resultCode, Intent data,
-                     Analytics analytics, Provider<Boolean> showCountDown, Provider<Integer> videoSizePercentage, Boolean recordAudio) {
+                     Analytics analytics, RecordingConfig config, ThumbnailLoader thumbnailLoader,
+                     ShareTranscoder shareTranscoder, EncoderCapabilities encoderCapabilities) {
         this.context = context;
         this.listener = listener;
         this.resultCode = resultCode;
         this.data = data;
         this.analytics = analytics;
-        this.recordAudio = recordAudio;
+        this.thumbnailLoader = thumbnailLoader;
+        this.shareTranscoder = shareTranscoder;
+        this.encoderCapabilities = encoderCapabilities;
 
-        this.showCountDown = showCountDown;
-        this.videoSizePercentage = videoSizePercentage;
+        this.config = config;
         //文件保存的路径
-        File picturesDir = Environment.getExternalStoragePublicDirectory(DIRECTORY_MOVIES);
-        outputRoot = new File(picturesDir, "Telecine");
+        outputRoot = getOutputRoot();
 
         //通知管理
         notificationManager = (NotificationManager) context.getSystemService(NOTIFICATION_SERVICE);
@@ -151,18 +215,35 @@ final class RecordingSession {
                 cancelOverlay();
             }
 
+            @Override
+            public void onPrepare() {
+                prepareRecording();
+            }
+
             @Override
             public void onStart() {
                 //动画执行完成开始录制
                 startRecording();
             }
 
+            @Override
+            public void onPause() {
+                pauseRecording();
+            }
+
+            @Override
+            public void onResume() {
+                resumeRecording();
+            }
+
             @Override
             public void onStop() {
                 stopRecording();
             }
         };
-        overlayView = OverlayView.create(context, overlayListener, showCountDown.get());
+        // Instant replay and segments manage their own files, so pieces cannot be joined.
+        boolean canPause = !config.instantReplay && config.segmentMinutes == 0;
+        overlayView = OverlayView.create(context, overlayListener, config.showCountdown, canPause);
         windowManager.addView(overlayView, OverlayView.createLayoutParams(context));
 
         analytics.send(new HitBuilders.EventBuilder() //
@@ -217,35 +298,100 @@ final class RecordingSession {
         boolean isLandscape = configuration.orientation == ORIENTATION_LANDSCAPE;
         Timber.i("Display landscape: %s", isLandscape);
 
-        // Get the best camera profile available. We assume MediaRecorder supports the highest.
-        //获取录像机的最高d帧率 没有就默认是30
-        CamcorderProfile camcorderProfile = CamcorderProfile.get(CamcorderProfile.QUALITY_HIGH);
-        //检查是否正确获取到了profile
-        int cameraWidth = camcorderProfile != null ? camcorderProfile.videoFrameWidth : -1;
-        int cameraHeight = camcorderProfile != null ? camcorderProfile.videoFrameHeight : -1;
-        //通过 CamcorderProfile获取 camera的帧率,默认为30
-        int cameraFrameRate = camcorderProfile != null ? camcorderProfile.videoFrameRate : 30;
-        Timber.i("Camera size: %s x %s framerate: %s", cameraWidth, cameraHeight, cameraFrameRate);
-
-        int sizePercentage = videoSizePercentage.get();
+        // 编码器能力在第一次使用时从缓存文件加载, 通常在启动服务时已经在后台完成.
+        EncoderCapabilities.Encoder capabilities = encoderCapabilities.get(videoMimeType);
+        EncoderLimits encoderLimits =
+                capabilities != null ? capabilities.limits : EncoderLimits.NONE;
+        Timber.i("Encoder limits: %s", encoderLimits);
+
+        int cameraWidth = -1;
+        int cameraHeight = -1;
+        int cameraFrameRate = DEFAULT_FRAME_RATE;
+        if (!encoderLimits.hasMaxSize()) {
+            // The encoder did not report its largest size. Fall back to the best camera profile
+            // available, assuming MediaRecorder supports the highest.
+            CamcorderProfile camcorderProfile = CamcorderProfile.get(CamcorderProfile.QUALITY_HIGH);
+            if (camcorderProfile != null) {
+                cameraWidth = camcorderProfile.videoFrameWidth;
+                cameraHeight = camcorderProfile.videoFrameHeight;
+                cameraFrameRate = camcorderProfile.videoFrameRate;
+            }
+            Timber.i("Camera size: %s x %s framerate: %s", cameraWidth, cameraHeight,
+                    cameraFrameRate);
+        }
+
+        int sizePercentage = config.videoSizePercentage;
         Timber.i("Size percentage: %s", sizePercentage);
 
+        CropRegion crop = config.cropRegion;
+        Timber.i("Crop region: %s", crop);
+
+        float bitsPerPixel = MediaFormat.MIMETYPE_VIDEO_HEVC.equals(videoMimeType)
+                ? HEVC_BITS_PER_PIXEL
+                : BITS_PER_PIXEL;
+
         return calculateRecordingInfo(displayWidth, displayHeight, displayDensity, isLandscape,
-                cameraWidth, cameraHeight, cameraFrameRate, sizePercentage);
+                cameraWidth, cameraHeight, cameraFrameRate, sizePercentage, encoderLimits, crop,
+                bitsPerPixel);
     }
 
-    private void startRecording() {
-        Timber.d("Starting screen recording...");
+    /** 录屏文件保存的目录. */
+    static File getOutputRoot() {
+        File picturesDir = Environment.getExternalStoragePublicDirectory(DIRECTORY_MOVIES);
+        return new File(picturesDir, "Telecine");
+    }
+
+    /**
+     * 在倒计时期间后台准备输出文件, 编码器, 投影和 VirtualDisplay.
+     */
+    private void prepareRecording() {
+        startClickedNanos = System.nanoTime();
+        preparation = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                long startNanos = System.nanoTime();
+                prepareResources();
+                Timber.d("Recording prepared in %sms.",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                return null;
+            }
+        });
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(preparation);
+    }
 
-        //创建路径下的文件夹
-        if (!outputRoot.mkdirs()) { //-- -- outputRoot一系列的操作可以再 Camera的api demo中找到
+    /**
+     * 等待后台准备完成. 通常在倒计时结束前就已经完成了.
+     */
+    private void awaitPreparation() {
+        try {
+            preparation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while preparing recording.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to prepare recording.", e.getCause());
+        }
+    }
+
+    private void prepareResources() throws IOException {
+        //创建路径下的文件夹 -- outputRoot一系列的操作可以再 Camera的api demo中找到
+        if (!outputRoot.isDirectory() && !outputRoot.mkdirs()) {
+            // Storage is unusable. Starting is refused once the countdown ends.
             Timber.e("Unable to create output directory '%s'.", outputRoot.getAbsolutePath());
-            // We're probably about to crash, but at least the log will indicate as to why.
         }
 
-        RecordingInfo recordingInfo = getRecordingInfo();
-        Timber.d("Recording: %s x %s @ %s", recordingInfo.width, recordingInfo.height,
-                recordingInfo.density);
+        boolean hevcSupported = Build.VERSION.SDK_INT >= HEVC_MUXER_SDK && !usesMediaRecorder()
+                && !config.fragmentedOutput;
+        videoMimeType = chooseVideoMimeType(config.videoCodec, hevcSupported,
+                encoderCapabilities.get(MediaFormat.MIMETYPE_VIDEO_HEVC));
+        recordingInfo = getRecordingInfo();
+        Timber.d("Recording: %s x %s @ %s, %s bps, %s", recordingInfo.width, recordingInfo.height,
+                recordingInfo.density, recordingInfo.bitRate, videoMimeType);
+        storageBudget = createStorageBudget(recordingInfo);
+        Timber.d("Storage: %s", storageBudget);
+        qualityController = usesMediaRecorder()
+                ? null
+                : new QualityController(recordingInfo.bitRate, recordingInfo.frameRate);
 
         /**
          * 正式开始录屏操作
@@ -257,53 +403,68 @@ final class RecordingSession {
          Intent intent = manager.createScreenCaptureIntent();
          activity.startActivityForResult(intent, CREATE_SCREEN_CAPTURE);
          */
-        recorder = new MediaRecorder();
-        if(recordAudio){
-            recorder.setAudioSource(MediaRecorder.AudioSource.DEFAULT);
-        }
-        recorder.setVideoSource(SURFACE);//Camera2中新的api
-//    recorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);//Camera 中老版本的api
-        recorder.setOutputFormat(MPEG_4);//setVideoFrameRate 必须在outputFormat后调用
-        if(recordAudio){
-            recorder.setAudioEncodingBitRate(44100);
-            recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-        }
-        recorder.setVideoFrameRate(recordingInfo.frameRate);
-        recorder.setVideoEncoder(H264);//H264利于在网络实时传播的编码
-        recorder.setVideoSize(recordingInfo.width, recordingInfo.height);
-        recorder.setVideoEncodingBitRate(8 * 1000 * 1000);
-
         String outputName = fileFormat.format(new Date());
         //文件名+时间的格式输出
         outputFile = new File(outputRoot, outputName).getAbsolutePath();
         Timber.i("Output file '%s'.", outputFile);
-        recorder.setOutputFile(outputFile);
+        pieceFiles.clear();
+        pieceFiles.add(outputFile);
 
-        try {
-            recorder.prepare();
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to prepare MediaRecorder.", e);
-        }
+        metrics = new RecordingMetrics(recordingInfo.frameRate, isVariableFrameRate());
+        metrics.onCodec(videoMimeType);
+        encoder = new MeasuredEncoder(createEncoder(outputFile, recordingInfo), metrics);
+        encoder.prepare(recordingInfo);
 
         projection = projectionManager.getMediaProjection(resultCode, data);
 
-        //通过recorder获取到 surface
-        Surface surface = recorder.getSurface();//Camera2中recorder.setVideoSource(SURFACE);
-        //通过projection(投影)获取到 virtualDisplay,在将virtualDisplay的内容渲染到surface上
+        //通过projection(投影)获取到 virtualDisplay, 开始录制时再将virtualDisplay的内容渲染到编码器的surface上
         //VIRTUAL_DISPLAY_FLAG_PRESENTATION 是一个Flag 具体看DisplayManager
         display =
-                projection.createVirtualDisplay(DISPLAY_NAME, recordingInfo.width, recordingInfo.height,
-                        recordingInfo.density, VIRTUAL_DISPLAY_FLAG_PRESENTATION, surface, null, null);
+                projection.createVirtualDisplay(DISPLAY_NAME, recordingInfo.displayWidth,
+                        recordingInfo.displayHeight, recordingInfo.density,
+                        VIRTUAL_DISPLAY_FLAG_PRESENTATION, null, null, null);
+    }
 
-        //开始渲染
-        recorder.start();
+    private void startRecording() {
+        Timber.d("Starting screen recording...");
+        long awaitStartNanos = System.nanoTime();
+        awaitPreparation();
+        long availableBytes = getAvailableBytes();
+        if (!storageBudget.canStart(availableBytes)) {
+            Timber.w("Only %s bytes free. Not starting.", availableBytes);
+            releasePreparation();
+            //noinspection ResultOfMethodCallIgnored
+            new File(outputFile).delete();
+            Toast.makeText(context, R.string.storage_full_not_started, Toast.LENGTH_LONG).show();
+            sendStorageFull();
+            hideOverlay();
+            listener.onEnd();
+            return;
+        }
+        preparation = null;
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - awaitStartNanos);
+
+        //开始渲染. 编码器先启动, 避免 surface 在启动前收到帧.
+        encoder.start();
+        display.setSurface(encoder.getInputSurface());
         running = true;
         //记录渲染的开始时间
         recordingStartNanos = System.nanoTime();
         //设置回调，表示已经开始录制
         listener.onStart();
+        mainThread.postDelayed(storageCheck, storageBudget.nextCheckDelayMs(availableBytes));
+        if (qualityController != null) {
+            mainThread.postDelayed(qualityCheck, QualityController.WINDOW_MS);
+        }
 
-        Timber.d("Screen recording started.");
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(recordingStartNanos - startClickedNanos);
+        Timber.d("Screen recording started %sms after start was clicked (waited %sms).",
+                latencyMs, waitedMs);
+        analytics.send(new HitBuilders.TimingBuilder() //
+                .setCategory(Analytics.CATEGORY_RECORDING)
+                .setValue(latencyMs)
+                .setVariable(Analytics.VARIABLE_START_LATENCY)
+                .build());
 
         analytics.send(new HitBuilders.EventBuilder() //
                 .setCategory(Analytics.CATEGORY_RECORDING)
@@ -311,6 +472,329 @@ final class RecordingSession {
                 .build());
     }
 
+    /**
+     * 暂停录制: 结束当前这一段, 并断开 VirtualDisplay 与编码器的连接, 暂停期间不再渲染和编码.
+     */
+    private void pauseRecording() {
+        if (!running || paused) {
+            throw new IllegalStateException("Not recording.");
+        }
+        paused = true;
+
+        display.setSurface(null);
+        encoder.stop();
+        encoder.release();
+        encoder = null;
+
+        Timber.d("Screen recording paused after %s pieces.", pieceFiles.size());
+        prepareNextPiece();
+    }
+
+    /**
+     * 和开始录制一样在后台准备下一段的编码器, 不阻塞主线程.
+     */
+    private void prepareNextPiece() {
+        final String pieceFile = outputFile + ".part" + pieceFiles.size();
+        nextPieceFile = pieceFile;
+        nextPiece = new FutureTask<>(new Callable<RecordingEncoder>() {
+            @Override
+            public RecordingEncoder call() throws IOException {
+                RecordingEncoder encoder =
+                        new MeasuredEncoder(createEncoder(pieceFile, recordingInfo), metrics);
+                try {
+                    encoder.prepare(recordingInfo);
+                } catch (IOException | RuntimeException e) {
+                    encoder.release();
+                    throw e;
+                }
+                return encoder;
+            }
+        });
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(nextPiece);
+    }
+
+    /**
+     * 等待下一段准备完成. 通常在暂停期间就已经完成了.
+     */
+    private RecordingEncoder awaitNextPiece() {
+        try {
+            return nextPiece.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while preparing encoder.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to prepare encoder.", e.getCause());
+        }
+    }
+
+    /**
+     * 暂停时停止录制, 释放准备好但没有用到的下一段.
+     */
+    private void releaseNextPiece() {
+        try {
+            awaitNextPiece().release();
+        } catch (RuntimeException e) {
+            Timber.e(e, "Preparing the next piece failed.");
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(nextPieceFile).delete();
+        nextPiece = null;
+        nextPieceFile = null;
+    }
+
+    /**
+     * 恢复录制: 用新的编码器写入下一段文件, 停止时再合并所有的段.
+     */
+    private void resumeRecording() {
+        if (!running || !paused) {
+            throw new IllegalStateException("Not paused.");
+        }
+
+        Timber.d("Resuming screen recording into '%s'.", nextPieceFile);
+        try {
+            encoder = awaitNextPiece();
+        } catch (RuntimeException e) {
+            // 下一段准备失败时正常停止, 已经录制的段仍然合并保存.
+            Timber.e(e, "Unable to resume. Stopping with %s pieces.", pieceFiles.size());
+            Toast.makeText(context, R.string.resume_failed, Toast.LENGTH_LONG).show();
+            stopRecording();
+            return;
+        }
+        // 和 startRecording 一样, 编码器先启动, 避免 surface 在启动前收到帧.
+        encoder.start();
+        display.setSurface(encoder.getInputSurface());
+        if (getVideoBitRate() < recordingInfo.bitRate) {
+            // Keep the lower bit rate chosen before pausing.
+            encoder.setBitRate(getVideoBitRate());
+        }
+        // Frames from before the pause say nothing about the new encoder.
+        metrics.takeWindow();
+        pieceFiles.add(nextPieceFile);
+        nextPiece = null;
+        nextPieceFile = null;
+        paused = false;
+    }
+
+    /**
+     * 检查剩余空间: 快满时先降低码率, 不够完成文件之前停止录制.
+     */
+    private void checkStorage() {
+        if (!running) {
+            return;
+        }
+        long availableBytes = getAvailableBytes();
+        switch (storageBudget.check(availableBytes)) {
+            case STOP:
+                Timber.w("Only %s bytes free. Stopping.", availableBytes);
+                Toast.makeText(context, R.string.storage_full_stopped, Toast.LENGTH_LONG).show();
+                sendStorageFull();
+                stopRecording();
+                return;
+            case STEP_DOWN:
+                if (paused) {
+                    break; // Nothing is written while paused.
+                }
+                int bitRate = storageBudget.steppedDownBitRate();
+                Timber.w("Only %s bytes free. Lowering bit rate to %s.", availableBytes, bitRate);
+                StorageBudget previous = storageBudget;
+                storageBudget = storageBudget.withVideoBitRate(bitRate);
+                if (!encoder.setBitRate(getVideoBitRate())) {
+                    storageBudget = previous.withAdjustable(false);
+                }
+                break;
+            case CONTINUE:
+                break;
+        }
+        mainThread.postDelayed(storageCheck, storageBudget.nextCheckDelayMs(availableBytes));
+    }
+
+    /**
+     * 每个窗口把编码器延迟和设备温度交给 {@link QualityController}, 每次调整都记录到 metrics.
+     */
+    private void checkQuality() {
+        if (!running) {
+            return;
+        }
+        if (!paused) {
+            RecordingMetrics.Window window = metrics.takeWindow();
+            float temperature = getBatteryTemperature();
+            QualityController.Reason reason = qualityController.onWindow(window.frames,
+                    window.maxEncoderDelayUs, temperature);
+            if (reason != null) {
+                int bitRate = getVideoBitRate();
+                Timber.w("Quality level %s (%s bps) because %s: %s frames, %sus delay, %s°C.",
+                        qualityController.level(), bitRate, reason, window.frames,
+                        window.maxEncoderDelayUs, temperature);
+                encoder.setBitRate(bitRate);
+                long timeUs =
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - recordingStartNanos);
+                metrics.onAdjustment(new RecordingMetrics.Adjustment(timeUs, reason.toString(),
+                        qualityController.level(), bitRate, window.frames,
+                        window.maxEncoderDelayUs, temperature));
+            }
+        }
+        mainThread.postDelayed(qualityCheck, QualityController.WINDOW_MS);
+    }
+
+    /**
+     * 当前的视频码率: 存储空间和 {@link QualityController} 两者中较低的一个.
+     */
+    private int getVideoBitRate() {
+        int bitRate = recordingInfo.bitRate;
+        if (storageBudget.videoBitRate > 0) {
+            // 即时回放的预算不按码率计算, 为 0.
+            bitRate = Math.min(bitRate, storageBudget.videoBitRate);
+        }
+        if (qualityController != null) {
+            bitRate = Math.min(bitRate, qualityController.bitRate());
+        }
+        return bitRate;
+    }
+
+    /**
+     * 电池温度是这些系统版本上唯一公开的温度. 未知时返回 NaN.
+     */
+    private float getBatteryTemperature() {
+        Intent battery =
+                context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null || !battery.hasExtra(BatteryManager.EXTRA_TEMPERATURE)) {
+            return Float.NaN;
+        }
+        return battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0) / 10f;
+    }
+
+    private long getAvailableBytes() {
+        try {
+            return new StatFs(outputRoot.getPath()).getAvailableBytes();
+        } catch (IllegalArgumentException e) {
+            Timber.e(e, "Unable to query free space of '%s'.", outputRoot);
+            return 0;
+        }
+    }
+
+    private void sendStorageFull() {
+        analytics.send(new HitBuilders.EventBuilder() //
+                .setCategory(Analytics.CATEGORY_RECORDING)
+                .setAction(Analytics.ACTION_STORAGE_FULL)
+                .build());
+    }
+
+    /**
+     * 即时回放只在停止时一次写入缓冲区; 其他方式边录边写.
+     */
+    private StorageBudget createStorageBudget(RecordingInfo recordingInfo) {
+        if (config.instantReplay) {
+            return new StorageBudget(0, 0, calculateReplayBufferBytes(recordingInfo.bitRate),
+                    false);
+        }
+        boolean mediaRecorder = usesMediaRecorder();
+        int audioBitRate =
+                mediaRecorder && config.recordAudio ? MediaRecorderEncoder.AUDIO_BIT_RATE : 0;
+        return new StorageBudget(recordingInfo.bitRate, audioBitRate, 0, !mediaRecorder);
+    }
+
+    /**
+     * 选择视频编码. 优先 HEVC 时只使用硬件编码器, 软件编码跟不上屏幕录制.
+     *
+     * @param hevcSupported 编码引擎和输出格式是否能写 HEVC
+     * @param hevcEncoder   设备的 HEVC 编码器, 没有则为 null
+     */
+    static String chooseVideoMimeType(int videoCodec, boolean hevcSupported,
+            @Nullable EncoderCapabilities.Encoder hevcEncoder) {
+        if (videoCodec != RecordingConfig.VIDEO_CODEC_HEVC) {
+            return MediaFormat.MIMETYPE_VIDEO_AVC;
+        }
+        if (!hevcSupported) {
+            Timber.w("HEVC is not supported with these settings. Using H.264.");
+            return MediaFormat.MIMETYPE_VIDEO_AVC;
+        }
+        if (hevcEncoder == null || !hevcEncoder.hardware) {
+            Timber.w("No hardware HEVC encoder. Using H.264.");
+            return MediaFormat.MIMETYPE_VIDEO_AVC;
+        }
+        return MediaFormat.MIMETYPE_VIDEO_HEVC;
+    }
+
+    /**
+     * 与 {@link #createOutputEncoder} 的选择一致: 是否使用 MediaRecorder 引擎.
+     */
+    private boolean usesMediaRecorder() {
+        return !config.instantReplay && config.segmentMinutes == 0 && !config.fragmentedOutput
+                && (!config.useMediaCodec || config.recordAudio);
+    }
+
+    /**
+     * 是否只在屏幕内容变化时编码 (可变帧率). 只有 MediaCodec 引擎支持.
+     */
+    private boolean isVariableFrameRate() {
+        return config.keepAliveSeconds > 0 && !usesMediaRecorder();
+    }
+
+    /**
+     * 创建编码器. 设置了裁剪区域时, 先把屏幕渲染到纹理再只把区域画到编码器上.
+     */
+    private RecordingEncoder createEncoder(String outputFile, RecordingInfo recordingInfo)
+            throws IOException {
+        RecordingEncoder encoder = createOutputEncoder(outputFile, recordingInfo);
+        if (recordingInfo.isCropped()) {
+            return new CroppingEncoder(encoder);
+        }
+        return encoder;
+    }
+
+    /**
+     * 选择编码引擎. MediaCodec 引擎只编码视频, 录制声音时使用 MediaRecorder.
+     */
+    private RecordingEncoder createOutputEncoder(String outputFile, RecordingInfo recordingInfo)
+            throws IOException {
+        long keepAliveUs = TimeUnit.SECONDS.toMicros(config.keepAliveSeconds);
+        if (config.instantReplay) {
+            if (config.recordAudio) {
+                Timber.w("Instant replay does not support audio. Recording video only.");
+            }
+            int capacityBytes = calculateReplayBufferBytes(recordingInfo.bitRate);
+            int maxSamples = recordingInfo.frameRate * (REPLAY_SECONDS + REPLAY_MARGIN_SECONDS);
+            Timber.d("Using instant replay with a %s byte buffer.", capacityBytes);
+            replaySink = new ReplaySampleSink(new SampleRingBuffer(capacityBytes, maxSamples));
+            return new MediaCodecEncoder(new MeasuredSampleSink(replaySink, metrics),
+                    videoMimeType, keepAliveUs);
+        }
+        if (config.segmentMinutes > 0) {
+            if (config.recordAudio) {
+                Timber.w("Segmented recording does not support audio. Recording video only.");
+            }
+            SegmentPolicy policy = new SegmentPolicy(TimeUnit.MINUTES.toMicros(config.segmentMinutes),
+                    SegmentPolicy.DEFAULT_MAX_BYTES);
+            Timber.d("Using %s minute segments.", config.segmentMinutes);
+            segmentingSink = new SegmentingSampleSink(outputFile, policy);
+            return new MediaCodecEncoder(new MeasuredSampleSink(segmentingSink, metrics),
+                    videoMimeType, keepAliveUs);
+        }
+        if (config.fragmentedOutput) {
+            if (config.recordAudio) {
+                Timber.w("Crash-safe recording does not support audio. Recording video only.");
+            }
+            Timber.d("Using fragmented MP4 output.");
+            return new MediaCodecEncoder(
+                    new MeasuredSampleSink(new FragmentedSampleSink(outputFile), metrics),
+                    keepAliveUs);
+        }
+        if (config.useMediaCodec) {
+            if (!config.recordAudio) {
+                Timber.d("Using MediaCodec encoder.");
+                return new MediaCodecEncoder(
+                        new MeasuredSampleSink(new MuxerSampleSink(outputFile), metrics),
+                        videoMimeType, keepAliveUs);
+            }
+            Timber.w("MediaCodec encoder does not support audio. Falling back to MediaRecorder.");
+        }
+        if (keepAliveUs > 0) {
+            Timber.w("MediaRecorder does not support a variable frame rate. Using a constant rate.");
+        }
+        Timber.d("Using MediaRecorder encoder.");
+        return new MediaRecorderEncoder(outputFile, config.recordAudio);
+    }
+
     private void stopRecording() {
         Timber.d("Stopping screen recording...");
 
@@ -318,6 +802,8 @@ final class RecordingSession {
             throw new IllegalStateException("Not running.");
         }
         running = false;
+        mainThread.removeCallbacks(storageCheck);
+        mainThread.removeCallbacks(qualityCheck);
 
         hideOverlay();
 
@@ -325,15 +811,24 @@ final class RecordingSession {
         //停止投影，刷新 recorder的数据
         projection.stop();
 
-        // Stop the recorder which writes the contents to the file.
+        // Stop the encoder which writes the contents to the file. It is already stopped if paused.
         //停止录制，将内容写入文件
-        recorder.stop();
+        if (encoder != null) {
+            encoder.stop();
+        }
 
-        long recordingStopNanos = System.nanoTime(); //返回结束的时候的纳秒时间 通常用来计算某个过程的时间段  而System.currentTimeMillis 是计算从1970开始到现在的时间段
+        recordingStopNanos = System.nanoTime(); //返回结束的时候的纳秒时间 通常用来计算某个过程的时间段  而System.currentTimeMillis 是计算从1970开始到现在的时间段
 
-        //release recorder 和 VirtualDisplay
-        recorder.release();
+        //release encoder 和 VirtualDisplay
+        if (encoder != null) {
+            encoder.release();
+            encoder = null;
+        }
+        if (nextPiece != null) {
+            releaseNextPiece();
+        }
         display.release();
+        paused = false;
 
         analytics.send(new HitBuilders.EventBuilder() //
                 .setCategory(Analytics.CATEGORY_RECORDING)
@@ -347,24 +842,242 @@ final class RecordingSession {
 
         listener.onStop();
 
-        Timber.d("Screen recording stopped. Notifying media scanner of new video.");
+        Timber.d("Screen recording stopped. Moving index to the start of the video.");
+
+        final String outputFile = this.outputFile;
+        final ContentResolver contentResolver = context.getContentResolver();
+        final ReplaySampleSink replaySink = this.replaySink;
+        final SegmentingSampleSink segmentingSink = this.segmentingSink;
+        final RecordingMetrics metrics = this.metrics;
+        final List<String> pieceFiles = new ArrayList<>(this.pieceFiles);
+        new AsyncTask<Void, Void, String[]>() {
+            /** Rows inserted directly for each output file, null where the scanner is needed. */
+            private Uri[] uris;
+
+            @Override
+            protected String[] doInBackground(@NonNull Void... none) {
+                if (replaySink != null) {
+                    try {
+                        if (!replaySink.save(outputFile,
+                                TimeUnit.SECONDS.toMicros(REPLAY_SECONDS))) {
+                            return new String[0];
+                        }
+                    } catch (IOException e) {
+                        Timber.e(e, "Unable to save instant replay.");
+                        return new String[0];
+                    }
+                }
+
+                List<String> outputFiles;
+                if (segmentingSink != null) {
+                    outputFiles = segmentingSink.outputFiles();
+                } else if (pieceFiles.size() > 1) {
+                    outputFiles = joinPieces(outputFile, pieceFiles);
+                } else {
+                    outputFiles = Collections.singletonList(outputFile);
+                }
+                for (String file : outputFiles) {
+                    long startNanos = System.nanoTime();
+                    try {
+                        if (FastStart.process(new File(file))) {
+                            Timber.d("Fast-start rewrite took %sms.",
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                        }
+                    } catch (IOException e) {
+                        // The original file is left untouched and is still playable.
+                        Timber.e(e, "Unable to move index to the start of the video.");
+                    }
+                }
+
+                uris = new Uri[outputFiles.size()];
+                for (int i = 0; i < uris.length; i++) {
+                    File file = new File(outputFiles.get(i));
+                    RecordingMetadata metadata = readMetadata(file);
+                    if (metadata != null) {
+                        if (i == 0) {
+                            metrics.onFile(metadata);
+                        }
+                        uris[i] = insertRecording(contentResolver, file, metadata);
+                    }
+                }
+                writeMetrics(metrics, outputFile);
+                return outputFiles.toArray(new String[outputFiles.size()]);
+            }
+
+            @Override
+            protected void onPostExecute(String[] outputFiles) {
+                if (outputFiles.length == 0) {
+                    listener.onEnd();
+                    return;
+                }
+                List<String> unscanned = new ArrayList<>();
+                for (int i = 0; i < outputFiles.length; i++) {
+                    if (uris[i] == null) {
+                        unscanned.add(outputFiles[i]);
+                    }
+                }
+                if (uris[0] != null) {
+                    Timber.d("Inserted %s of %s video(s) into the media store.",
+                            outputFiles.length - unscanned.size(), outputFiles.length);
+                    showNotification(uris[0], null);
+                    startShareTranscode(outputFiles[0]);
+                    if (!unscanned.isEmpty()) {
+                        MediaScannerConnection.scanFile(context,
+                                unscanned.toArray(new String[unscanned.size()]), null, null);
+                    }
+                } else {
+                    scanRecording(unscanned.toArray(new String[unscanned.size()]));
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 合并暂停前后录制的各段文件. 合并失败时每一段作为单独的录像保留.
+     */
+    private static List<String> joinPieces(String outputFile, List<String> pieceFiles) {
+        List<File> pieces = new ArrayList<>(pieceFiles.size());
+        for (String pieceFile : pieceFiles) {
+            pieces.add(new File(pieceFile));
+        }
+
+        long startNanos = System.nanoTime();
+        File joined = new File(outputFile + ".joined");
+        try {
+            RecordingJoiner.join(pieces, joined);
+            if (!joined.renameTo(pieces.get(0))) {
+                throw new IOException("Unable to rename " + joined);
+            }
+            for (int i = 1; i < pieces.size(); i++) {
+                if (!pieces.get(i).delete()) {
+                    Timber.w("Unable to delete piece '%s'.", pieces.get(i));
+                }
+            }
+            Timber.d("Joining %s pieces took %sms.", pieces.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            return Collections.singletonList(outputFile);
+        } catch (IOException e) {
+            Timber.e(e, "Unable to join recording pieces. Keeping them as separate videos.");
+            //noinspection ResultOfMethodCallIgnored
+            joined.delete();
+        }
+
+        List<String> outputFiles = new ArrayList<>(pieces.size());
+        outputFiles.add(outputFile);
+        String prefix = outputFile.substring(0, outputFile.length() - ".mp4".length());
+        for (int i = 1; i < pieces.size(); i++) {
+            File renamed = new File(String.format(Locale.US, "%s_%d.mp4", prefix, i + 1));
+            if (pieces.get(i).renameTo(renamed)) {
+                outputFiles.add(renamed.getPath());
+            }
+        }
+        return outputFiles;
+    }
+
+    /**
+     * 根据码率计算回放缓冲区的大小
+     */
+    static int calculateReplayBufferBytes(int bitRate) {
+        long bytes = (long) bitRate / 8 * (REPLAY_SECONDS + REPLAY_MARGIN_SECONDS);
+        return (int) Math.min(bytes, MAX_REPLAY_BUFFER_BYTES);
+    }
+
+    @Nullable
+    private static RecordingMetadata readMetadata(File file) {
+        try {
+            return RecordingMetadata.read(file);
+        } catch (IOException e) {
+            Timber.w(e, "Unable to read metadata of '%s'.", file);
+            return null;
+        }
+    }
+
+    /**
+     * 输出本次录制的统计信息, 并写入录像旁边的 JSON 文件.
+     */
+    private static void writeMetrics(RecordingMetrics metrics, String outputFile) {
+        Timber.i("Recording metrics: %s", metrics);
+        String prefix = outputFile.endsWith(".mp4")
+                ? outputFile.substring(0, outputFile.length() - ".mp4".length())
+                : outputFile;
+        File file = new File(prefix + ".metrics.json");
+        try {
+            metrics.write(file);
+        } catch (IOException e) {
+            Timber.w(e, "Unable to write metrics to '%s'.", file);
+        }
+    }
+
+    /**
+     * 用已知的元数据直接插入媒体库, 避免媒体扫描重新解析整个文件.
+     * 元数据不完整或插入失败时返回 null, 由媒体扫描处理.
+     */
+    @Nullable
+    private static Uri insertRecording(ContentResolver contentResolver, File file,
+            RecordingMetadata metadata) {
+        if (metadata.durationMs <= 0 || metadata.width <= 0 || metadata.height <= 0) {
+            Timber.d("Incomplete metadata for '%s': %s", file, metadata);
+            return null;
+        }
+
+        String name = file.getName();
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Video.Media.DATA, file.getAbsolutePath());
+        values.put(MediaStore.Video.Media.DISPLAY_NAME, name);
+        values.put(MediaStore.Video.Media.TITLE, name.substring(0, name.lastIndexOf('.')));
+        values.put(MediaStore.Video.Media.MIME_TYPE, MIME_TYPE);
+        values.put(MediaStore.Video.Media.SIZE, metadata.sizeBytes);
+        values.put(MediaStore.Video.Media.DURATION, metadata.durationMs);
+        values.put(MediaStore.Video.Media.WIDTH, metadata.width);
+        values.put(MediaStore.Video.Media.HEIGHT, metadata.height);
+        values.put(MediaStore.Video.Media.RESOLUTION, metadata.width + "x" + metadata.height);
+        values.put(MediaStore.Video.Media.DATE_TAKEN, now);
+        values.put(MediaStore.Video.Media.DATE_ADDED, now / 1000);
+        values.put(MediaStore.Video.Media.DATE_MODIFIED, file.lastModified() / 1000);
+        try {
+            return contentResolver.insert(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values);
+        } catch (RuntimeException e) {
+            Timber.w(e, "Unable to insert '%s' into the media store.", file);
+            return null;
+        }
+    }
+
+    /**
+     * 扫描所有输出文件, 通知栏展示第一个文件
+     */
+    private void scanRecording(final String[] outputFiles) {
+        Timber.d("Notifying media scanner of %s new video(s).", outputFiles.length);
 
         //扫描视频文件---api中的工具类
-        MediaScannerConnection.scanFile(context, new String[]{outputFile}, null,
+        MediaScannerConnection.scanFile(context, outputFiles, null,
                 new MediaScannerConnection.OnScanCompletedListener() {
                     @Override
                     public void onScanCompleted(String path, final Uri uri) {
-                        Timber.d("Media scanner completed.");
+                        Timber.d("Media scanner completed for '%s'.", path);
+                        if (!outputFiles[0].equals(path)) {
+                            return;
+                        }
                         mainThread.post(new Runnable() {
                             @Override
                             public void run() {
                                 showNotification(uri, null);
+                                startShareTranscode(outputFiles[0]);
                             }
                         });
                     }
                 });
     }
 
+    /**
+     * 通知展示后立即在后台准备一个更小的分享版本, 点击分享时如果已经完成就分享它
+     */
+    private void startShareTranscode(String outputFile) {
+        if (config.shareTranscode) {
+            shareTranscoder.submit(new File(outputFile));
+        }
+    }
+
     /**
      * 消息通知
      *
@@ -372,19 +1085,26 @@ final class RecordingSession {
      * @param bitmap
      */
     private void showNotification(final Uri uri, Bitmap bitmap) {
+        if (bitmap == null) {
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recordingStopNanos);
+            Timber.i("Stop to notification took %sms.", latencyMs);
+            analytics.send(new HitBuilders.TimingBuilder() //
+                    .setCategory(Analytics.CATEGORY_RECORDING)
+                    .setValue(latencyMs)
+                    .setVariable(Analytics.VARIABLE_NOTIFICATION_LATENCY)
+                    .build());
+        }
+
         //android.intent.action.VIEW 更具用户传递的内容打开对应的activity --- 用于在Notification中观看效果 ！！
         Intent viewIntent = new Intent(ACTION_VIEW, uri);
         PendingIntent pendingViewIntent =
                 PendingIntent.getActivity(context, 0, viewIntent, FLAG_CANCEL_CURRENT);
 
 
-        //分享uri intent  -- Intent.EXTRA_STREAM
-        Intent shareIntent = new Intent(ACTION_SEND);
-        //分享的类型
-        shareIntent.setType(MIME_TYPE);
-        shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
-        //Intent.createChooser 为改intent匹配默认的打开方式..供用户选择 -- 返回用户选择的打开方式
-        shareIntent = Intent.createChooser(shareIntent, null);
+        //分享时才决定分享的内容, 这样更小的分享版本完成后就可以被选中
+        Intent shareIntent = new Intent(context, ShareRecordingActivity.class);
+        shareIntent.setData(uri);
+        shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         PendingIntent pendingShareIntent =
                 PendingIntent.getActivity(context, 0, shareIntent, FLAG_CANCEL_CURRENT);
 
@@ -395,11 +1115,18 @@ final class RecordingSession {
         PendingIntent pendingDeleteIntent =
                 PendingIntent.getBroadcast(context, 0, deleteIntent, FLAG_CANCEL_CURRENT);
 
+        //获取到剪辑操作的广播
+        Intent trimIntent = new Intent(context, TrimRecordingBroadcastReceiver.class);
+        trimIntent.setData(uri);
+        PendingIntent pendingTrimIntent =
+                PendingIntent.getBroadcast(context, 0, trimIntent, FLAG_CANCEL_CURRENT);
+
         //通过context直接获取到 string，color等 不用 getResource().getString.....等
         CharSequence title = context.getText(R.string.notification_captured_title);
         CharSequence subtitle = context.getText(R.string.notification_captured_subtitle);
         CharSequence share = context.getText(R.string.notification_captured_share);
         CharSequence delete = context.getText(R.string.notification_captured_delete);
+        CharSequence trim = context.getText(R.string.notification_captured_trim);
         //构建通知
         Notification.Builder builder = new Notification.Builder(context) //
                 .setContentTitle(title)
@@ -411,10 +1138,15 @@ final class RecordingSession {
                 .setContentIntent(pendingViewIntent) //内容区域点击跳转的intent
                 .setAutoCancel(true) //用户点击后就自动消息
                 .addAction(R.drawable.ic_share_white_24dp, share, pendingShareIntent)
+                .addAction(R.drawable.ic_content_cut_white_24dp, trim, pendingTrimIntent)
                 .addAction(R.drawable.ic_delete_white_24dp, delete, pendingDeleteIntent);
 
+        Bitmap largeIcon = null;
         if (bitmap != null) {
-            builder.setLargeIcon(createSquareBitmap(bitmap))
+            int largeIconSize = context.getResources()
+                    .getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+            largeIcon = thumbnailLoader.createSquareBitmap(bitmap, largeIconSize);
+            builder.setLargeIcon(largeIcon)
                     .setStyle(new Notification.BigPictureStyle() //
                             .setBigContentTitle(title) //
                             .setSummaryText(subtitle) //
@@ -423,21 +1155,23 @@ final class RecordingSession {
 
         notificationManager.notify(NOTIFICATION_ID, builder.build());
 
+        if (largeIcon != null) {
+            // The notification holds a copy so the icon can be reused.
+            thumbnailLoader.release(largeIcon);
+        }
+
         if (bitmap != null) {
             listener.onEnd();
             return;
         }
 
         /**
-         * 异步通过uri 获取到视频当前帧 返回成bitmap
+         * 异步通过uri 获取到通知大小的缩略图
          */
         new AsyncTask<Void, Void, Bitmap>() {
             @Override
             protected Bitmap doInBackground(@NonNull Void... none) {
-                //MediaMetadataRetriever 获取视频相关的frame and meta data
-                MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-                retriever.setDataSource(context, uri);
-                return retriever.getFrameAtTime();
+                return thumbnailLoader.load(uri);
             }
 
             @Override
@@ -451,6 +1185,23 @@ final class RecordingSession {
         }.execute();
     }
 
+    static RecordingInfo calculateRecordingInfo(int displayWidth, int displayHeight,
+                                                int displayDensity, boolean isLandscapeDevice, int cameraWidth, int cameraHeight,
+                                                int cameraFrameRate, int sizePercentage, EncoderLimits encoderLimits) {
+        return calculateRecordingInfo(displayWidth, displayHeight, displayDensity, isLandscapeDevice,
+                cameraWidth, cameraHeight, cameraFrameRate, sizePercentage, encoderLimits,
+                CropRegion.FULL);
+    }
+
+    static RecordingInfo calculateRecordingInfo(int displayWidth, int displayHeight,
+                                                int displayDensity, boolean isLandscapeDevice, int cameraWidth, int cameraHeight,
+                                                int cameraFrameRate, int sizePercentage, EncoderLimits encoderLimits,
+                                                CropRegion crop) {
+        return calculateRecordingInfo(displayWidth, displayHeight, displayDensity, isLandscapeDevice,
+                cameraWidth, cameraHeight, cameraFrameRate, sizePercentage, encoderLimits, crop,
+                BITS_PER_PIXEL);
+    }
+
     /**
      * 通过配置计算最终录制的profile
      *
@@ -462,18 +1213,36 @@ final class RecordingSession {
      * @param cameraHeight      camera高度
      * @param cameraFrameRate   camera帧率
      * @param sizePercentage    视频最终缩小的比例
+     * @param encoderLimits     编码器支持的范围. 已知最大尺寸时代替 camera 尺寸, 帧率也不超过它
+     * @param crop              只录制的屏幕区域, 编码尺寸只包含这个区域
+     * @param bitsPerPixel      码率的质量因子, 与编码格式有关
      * @return
      */
     static RecordingInfo calculateRecordingInfo(int displayWidth, int displayHeight,
                                                 int displayDensity, boolean isLandscapeDevice, int cameraWidth, int cameraHeight,
-                                                int cameraFrameRate, int sizePercentage) {
+                                                int cameraFrameRate, int sizePercentage, EncoderLimits encoderLimits,
+                                                CropRegion crop, float bitsPerPixel) {
+        if (encoderLimits.hasMaxSize()) {
+            // What the encoder reports is exact, the camera profile was only ever a proxy for it.
+            cameraWidth = encoderLimits.maxWidth;
+            cameraHeight = encoderLimits.maxHeight;
+        }
+        cameraFrameRate = encoderLimits.clampFrameRate(cameraFrameRate);
+
         // Scale the display size before any maximum size calculations.
         displayWidth = displayWidth * sizePercentage / 100;
         displayHeight = displayHeight * sizePercentage / 100;
 
+        if (!crop.isFull()) {
+            return calculateCroppedRecordingInfo(displayWidth, displayHeight, displayDensity,
+                    isLandscapeDevice, cameraWidth, cameraHeight, cameraFrameRate, encoderLimits, crop,
+                    bitsPerPixel);
+        }
+
         if (cameraWidth == -1 && cameraHeight == -1) {
             // No cameras. Fall back to the display size.
-            return new RecordingInfo(displayWidth, displayHeight, cameraFrameRate, displayDensity);
+            return createRecordingInfo(displayWidth, displayHeight, cameraFrameRate, displayDensity,
+                    encoderLimits, bitsPerPixel);
         }
 
         //横竖屏情况的录屏 将 宽高值交换
@@ -481,7 +1250,8 @@ final class RecordingSession {
         int frameHeight = isLandscapeDevice ? cameraHeight : cameraWidth;
         if (frameWidth >= displayWidth && frameHeight >= displayHeight) {
             // Frame can hold the entire display. Use exact values.
-            return new RecordingInfo(displayWidth, displayHeight, cameraFrameRate, displayDensity);
+            return createRecordingInfo(displayWidth, displayHeight, cameraFrameRate, displayDensity,
+                    encoderLimits, bitsPerPixel);
         }
 
         // Calculate new width or height to preserve aspect ratio.
@@ -490,7 +1260,94 @@ final class RecordingSession {
         } else {
             frameHeight = displayHeight * frameWidth / displayWidth;
         }
-        return new RecordingInfo(frameWidth, frameHeight, cameraFrameRate, displayDensity);
+        return createRecordingInfo(frameWidth, frameHeight, cameraFrameRate, displayDensity,
+                encoderLimits, bitsPerPixel);
+    }
+
+    /**
+     * 裁剪区域的录制尺寸: 区域按原始像素编码, 只有超出 camera 尺寸时才等比缩小.
+     * VirtualDisplay 按同样的比例渲染整个屏幕, 裁剪后的像素与编码尺寸一一对应.
+     */
+    private static RecordingInfo calculateCroppedRecordingInfo(int displayWidth, int displayHeight,
+            int displayDensity, boolean isLandscapeDevice, int cameraWidth, int cameraHeight,
+            int cameraFrameRate, EncoderLimits encoderLimits, CropRegion crop, float bitsPerPixel) {
+        // Encoders want even dimensions.
+        int width = Math.max(2, Math.round(displayWidth * crop.width()) & ~1);
+        int height = Math.max(2, Math.round(displayHeight * crop.height()) & ~1);
+
+        if (cameraWidth != -1 || cameraHeight != -1) {
+            int frameWidth = isLandscapeDevice ? cameraWidth : cameraHeight;
+            int frameHeight = isLandscapeDevice ? cameraHeight : cameraWidth;
+            if (width > frameWidth || height > frameHeight) {
+                float scale = Math.min((float) frameWidth / width, (float) frameHeight / height);
+                width = Math.max(2, (int) (width * scale) & ~1);
+                height = Math.max(2, (int) (height * scale) & ~1);
+            }
+        }
+        int[] aligned = alignSize(width, height, encoderLimits);
+        width = aligned[0];
+        height = aligned[1];
+
+        // VirtualDisplay 按对齐后的尺寸缩放, 裁剪区域仍然正好填满编码尺寸.
+        int surfaceWidth = Math.round(width / crop.width());
+        int surfaceHeight = Math.round(height / crop.height());
+        int bitRate = calculateBitRate(width, height, cameraFrameRate, bitsPerPixel, encoderLimits);
+        return new RecordingInfo(width, height, cameraFrameRate, displayDensity, bitRate,
+                surfaceWidth, surfaceHeight, crop);
+    }
+
+    private static RecordingInfo createRecordingInfo(int width, int height, int frameRate,
+                                                     int density, EncoderLimits encoderLimits,
+                                                     float bitsPerPixel) {
+        // VirtualDisplay 使用同样的对齐尺寸, 屏幕内容按比例缩放进去.
+        int[] aligned = alignSize(width, height, encoderLimits);
+        width = aligned[0];
+        height = aligned[1];
+        int bitRate = calculateBitRate(width, height, frameRate, bitsPerPixel, encoderLimits);
+        return new RecordingInfo(width, height, frameRate, density, bitRate);
+    }
+
+    /**
+     * 把尺寸缩小到编码器要求的宽高对齐 (至少是偶数), 并尽量保持宽高比.
+     * 有些硬件编码器拒绝未对齐的尺寸, 或者走很慢的填充路径, 边缘出现绿边.
+     * <p>
+     * 分别以宽和高为基准对齐, 另一边按比例取最接近的对齐值, 选宽高比误差更小的一个.
+     * 结果不会超过原来的尺寸, 所以不会超过编码器的最大尺寸.
+     */
+    static int[] alignSize(int width, int height, EncoderLimits encoderLimits) {
+        int widthAlignment = Math.max(MIN_ALIGNMENT, encoderLimits.widthAlignment);
+        int heightAlignment = Math.max(MIN_ALIGNMENT, encoderLimits.heightAlignment);
+        int maxWidth = Math.max(widthAlignment, width / widthAlignment * widthAlignment);
+        int maxHeight = Math.max(heightAlignment, height / heightAlignment * heightAlignment);
+        if (maxWidth == width && maxHeight == height) {
+            return new int[] { width, height };
+        }
+
+        double aspect = (double) width / height;
+        int heightForWidth = Math.min(maxHeight,
+                alignNearest(maxWidth / aspect, heightAlignment));
+        int widthForHeight = Math.min(maxWidth,
+                alignNearest(maxHeight * aspect, widthAlignment));
+        double widthBasedError = Math.abs((double) maxWidth / heightForWidth - aspect);
+        double heightBasedError = Math.abs((double) widthForHeight / maxHeight - aspect);
+        return widthBasedError <= heightBasedError
+                ? new int[] { maxWidth, heightForWidth }
+                : new int[] { widthForHeight, maxHeight };
+    }
+
+    private static int alignNearest(double value, int alignment) {
+        return Math.max(alignment, (int) Math.round(value / alignment) * alignment);
+    }
+
+    /**
+     * 根据分辨率和帧率计算目标码率, 并限制在编码器支持的范围内
+     *
+     * @param bitsPerPixel 每帧每个像素的比特数 (质量因子)
+     */
+    static int calculateBitRate(int width, int height, int frameRate, float bitsPerPixel,
+                                EncoderLimits encoderLimits) {
+        long bitRate = Math.round((double) width * height * frameRate * bitsPerPixel);
+        return encoderLimits.clampBitRate(bitRate);
     }
 
     /**
@@ -502,36 +1359,80 @@ final class RecordingSession {
         final int height;
         final int frameRate;
         final int density;
+        final int bitRate;
+
+        /** 渲染整个屏幕的 VirtualDisplay 尺寸. 没有裁剪时与编码尺寸相同. */
+        final int displayWidth;
+        final int displayHeight;
+        final CropRegion crop;
+
+        RecordingInfo(int width, int height, int frameRate, int density, int bitRate) {
+            this(width, height, frameRate, density, bitRate, width, height, CropRegion.FULL);
+        }
 
-        RecordingInfo(int width, int height, int frameRate, int density) {
+        RecordingInfo(int width, int height, int frameRate, int density, int bitRate,
+                      int displayWidth, int displayHeight, CropRegion crop) {
             this.width = width;
             this.height = height;
             this.frameRate = frameRate;
             this.density = density;
+            this.bitRate = bitRate;
+            this.displayWidth = displayWidth;
+            this.displayHeight = displayHeight;
+            this.crop = crop;
         }
-    }
 
-    private static Bitmap createSquareBitmap(Bitmap bitmap) {
-        int x = 0;
-        int y = 0;
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        if (width > height) {
-            x = (width - height) / 2;
-            //noinspection SuspiciousNameCombination
-            width = height;
-        } else {
-            y = (height - width) / 2;
-            //noinspection SuspiciousNameCombination
-            height = width;
+        boolean isCropped() {
+            return !crop.isFull();
         }
-        return Bitmap.createBitmap(bitmap, x, y, width, height, null, true);
     }
 
     public void destroy() {
         if (running) {
             Timber.w("Destroyed while running!");
             stopRecording();
+        } else if (preparation != null) {
+            Timber.w("Destroyed while starting!");
+            releasePreparation();
+        }
+    }
+
+    /**
+     * 释放倒计时期间准备好但没有开始使用的资源.
+     */
+    private void releasePreparation() {
+        try {
+            awaitPreparation();
+        } catch (RuntimeException e) {
+            Timber.e(e, "Preparation failed.");
+        }
+        preparation = null;
+        if (display != null) {
+            display.release();
+        }
+        if (projection != null) {
+            projection.stop();
+        }
+        if (encoder != null) {
+            encoder.release();
+            encoder = null;
+        }
+    }
+
+    /**
+     * 查询媒体库中录像的文件路径
+     */
+    @Nullable
+    static String queryPath(ContentResolver contentResolver, Uri uri) {
+        Cursor cursor = contentResolver.query(uri,
+                new String[]{MediaStore.Video.Media.DATA}, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
         }
     }
 
@@ -539,9 +1440,11 @@ final class RecordingSession {
      * 删除的广播接受者
      */
     public static final class DeleteRecordingBroadcastReceiver extends BroadcastReceiver {
+        @Inject ShareTranscoder shareTranscoder;
 
         @Override
         public void onReceive(Context context, Intent intent) {
+            ((TelecineApplication) context.getApplicationContext()).inject(this);
             NotificationManager notificationManager =
                     (NotificationManager) context.getSystemService(NOTIFICATION_SERVICE);
             notificationManager.cancel(NOTIFICATION_ID);
@@ -550,6 +1453,10 @@ final class RecordingSession {
             new AsyncTask<Void, Void, Void>() {
                 @Override
                 protected Void doInBackground(@NonNull Void... none) {
+                    String path = queryPath(contentResolver, uri);
+                    if (path != null) {
+                        shareTranscoder.cancel(new File(path));
+                    }
                     int rowsDeleted = contentResolver.delete(uri, null, null);
                     if (rowsDeleted == 1) {
                         Timber.i("Deleted recording.");
@@ -561,4 +1468,67 @@ final class RecordingSession {
             }.execute();
         }
     }
+
+    /**
+     * 剪辑的广播接受者, 去掉录像开头和结尾的一秒
+     */
+    public static final class TrimRecordingBroadcastReceiver extends BroadcastReceiver {
+        @Inject ShareTranscoder shareTranscoder;
+        @Inject ThumbnailLoader thumbnailLoader;
+
+        @Override
+        public void onReceive(final Context context, Intent intent) {
+            ((TelecineApplication) context.getApplicationContext()).inject(this);
+            NotificationManager notificationManager =
+                    (NotificationManager) context.getSystemService(NOTIFICATION_SERVICE);
+            notificationManager.cancel(NOTIFICATION_ID);
+            final Uri uri = intent.getData();
+            final ContentResolver contentResolver = context.getContentResolver();
+            // The notification is gone so the result is shown as a toast.
+            new AsyncTask<Void, Void, Integer>() {
+                @Override
+                protected Integer doInBackground(@NonNull Void... none) {
+                    String path = queryPath(contentResolver, uri);
+                    if (path == null) {
+                        Timber.e("Unable to find recording for '%s'.", uri);
+                        return R.string.trim_failed;
+                    }
+
+                    long startNanos = System.nanoTime();
+                    File file = new File(path);
+                    // A smaller copy of the untrimmed recording would be out of date.
+                    shareTranscoder.cancel(file);
+                    File trimmed = new File(path + ".trim");
+                    try {
+                        if (!RecordingTrimmer.trim(file, trimmed, TRIM_START_US, TRIM_END_US)) {
+                            Timber.w("Recording too short to trim.");
+                            return R.string.trim_too_short;
+                        }
+                        if (!trimmed.renameTo(file)) {
+                            throw new IOException("Unable to rename " + trimmed);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // isoparser reports malformed files with runtime exceptions.
+                        Timber.e(e, "Unable to trim recording.");
+                        //noinspection ResultOfMethodCallIgnored
+                        trimmed.delete();
+                        return R.string.trim_failed;
+                    }
+                    Timber.i("Trimmed recording in %sms.",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+                    // The cached thumbnail is keyed by the URI which now has different contents.
+                    thumbnailLoader.invalidate(uri);
+                    // Refresh the duration and size the media store has for the file.
+                    MediaScannerConnection.scanFile(context, new String[]{path}, null, null);
+                    return R.string.trim_done;
+                }
+
+                @Override
+                protected void onPostExecute(Integer message) {
+                    Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
+                }
+            }.execute();
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.jakewharton.telecine;
+
+import com.coremedia.iso.boxes.Container;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.builder.DefaultMp4Builder;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+import com.googlecode.mp4parser.authoring.tracks.CroppedTrack;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import timber.log.Timber;
+
+/**
+ * Cuts the start and end off a recording without re-encoding it. The new start is moved forward to
+ * the next sync sample so the trimmed video begins with a decodable frame. Only the sample tables
+ * are rebuilt; sample data is streamed from the original file.
+ */
+final class RecordingTrimmer {
+  private RecordingTrimmer() {
+    throw new AssertionError("No instances.");
+  }
+
+  /**
+   * Write {@code input} to {@code output} without its first {@code startUs} and last {@code endUs}
+   * microseconds. Returns false and writes nothing if no sync sample is left to start from.
+   */
+  static boolean trim(File input, File output, long startUs, long endUs) throws IOException {
+    Movie movie = MovieCreator.build(input.getPath());
+    List<Track> tracks = movie.getTracks();
+    try {
+      Track video = findVideoTrack(tracks);
+      if (video == null) {
+        throw new IOException("No video track in " + input);
+      }
+
+      long[] videoTimes = sampleStartTimesUs(video);
+      long durationUs = toUs(video.getDuration(), video);
+      // Without a sync sample table every sample is a sync sample.
+      long[] syncSamples = video.getSyncSamples();
+      int syncCount = syncSamples != null ? syncSamples.length : videoTimes.length;
+      long trimmedStartUs = -1;
+      for (int i = 0; i < syncCount; i++) {
+        long timeUs = videoTimes[syncSamples != null ? (int) (syncSamples[i] - 1) : i];
+        if (timeUs >= startUs) {
+          trimmedStartUs = timeUs;
+          break;
+        }
+      }
+      long trimmedEndUs = durationUs - endUs;
+      if (trimmedStartUs < 0 || trimmedStartUs >= trimmedEndUs) {
+        Timber.d("Nothing left of %sus recording after trimming.", durationUs);
+        return false;
+      }
+      Timber.d("Trimming %sus recording to [%s, %s).", durationUs, trimmedStartUs, trimmedEndUs);
+
+      Movie trimmed = new Movie();
+      for (Track track : tracks) {
+        long[] times = track == video ? videoTimes : sampleStartTimesUs(track);
+        trimmed.addTrack(new CroppedTrack(track, indexAtOrAfter(times, trimmedStartUs),
+            indexAtOrAfter(times, trimmedEndUs)));
+      }
+
+      Container container = new DefaultMp4Builder().build(trimmed);
+      try (RandomAccessFile raf = new RandomAccessFile(output, "rw")) {
+        raf.setLength(0);
+        FileChannel channel = raf.getChannel();
+        container.writeContainer(channel);
+        channel.force(false);
+      }
+      return true;
+    } finally {
+      for (Track track : tracks) {
+        track.close();
+      }
+    }
+  }
+
+  private static Track findVideoTrack(List<Track> tracks) {
+    for (Track track : tracks) {
+      if ("vide".equals(track.getHandler())) {
+        return track;
+      }
+    }
+    return null;
+  }
+
+  private static long[] sampleStartTimesUs(Track track) {
+    long[] durations = track.getSampleDurations();
+    long[] times = new long[durations.length];
+    long ticks = 0;
+    for (int i = 0; i < durations.length; i++) {
+      times[i] = toUs(ticks, track);
+      ticks += durations[i];
+    }
+    return times;
+  }
+
+  private static long toUs(long ticks, Track track) {
+    long timescale = track.getTrackMetaData().getTimescale();
+    return ticks * 1000000 / timescale;
+  }
+
+  /** Index of the first sample starting at or after {@code timeUs}. */
+  private static int indexAtOrAfter(long[] times, long timeUs) {
+    int index = 0;
+    while (index < times.length && times[index] < timeUs) {
+      index++;
+    }
+    return index;
+  }
+}
@@ -0,0 +1,76 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import timber.log.Timber;
+
+import static android.media.MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
+
+/**
+ * A {@link SampleSink} which retains only the most recent samples in a {@link SampleRingBuffer}
+ * until asked to {@linkplain #save save} them.
+ */
+final class ReplaySampleSink implements SampleSink {
+  private final SampleRingBuffer buffer;
+  private volatile MediaFormat format;
+
+  ReplaySampleSink(SampleRingBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override public void onFormatChanged(MediaFormat format) {
+    this.format = format;
+  }
+
+  @Override public void onSample(ByteBuffer buffer, MediaCodec.BufferInfo info) {
+    this.buffer.write(buffer, info.presentationTimeUs, info.flags);
+  }
+
+  @Override public void onEnd() {
+    Timber.d("Replay buffer ended with %s samples. %s dropped.", buffer.sampleCount(),
+        buffer.droppedSamples());
+  }
+
+  @Override public void onAbort() {
+    // Samples only live in memory until saved.
+  }
+
+  /**
+   * Write at least the last {@code durationUs} of samples to {@code outputFile}. Returns false if
+   * there was nothing to write.
+   */
+  boolean save(String outputFile, long durationUs) throws IOException {
+    MediaFormat format = this.format;
+    if (format == null || buffer.sampleCount() == 0) {
+      Timber.w("Replay buffer is empty.");
+      return false;
+    }
+
+    final MediaMuxer muxer = new MediaMuxer(outputFile, MUXER_OUTPUT_MPEG_4);
+    try {
+      final int track = muxer.addTrack(format);
+      muxer.start();
+      final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+      final long[] firstPresentationTimeUs = { -1 };
+      int samples = buffer.read(durationUs, new SampleRingBuffer.Reader() {
+        @Override public void onSample(ByteBuffer data, long presentationTimeUs, int flags) {
+          if (firstPresentationTimeUs[0] == -1) {
+            firstPresentationTimeUs[0] = presentationTimeUs;
+          }
+          // Rebase so the saved video starts at zero rather than at the start of the session.
+          info.set(data.position(), data.remaining(),
+              presentationTimeUs - firstPresentationTimeUs[0], flags);
+          muxer.writeSampleData(track, data, info);
+        }
+      });
+      muxer.stop();
+      Timber.d("Saved %s replay samples to '%s'.", samples, outputFile);
+    } finally {
+      muxer.release();
+    }
+    return true;
+  }
+}
@@ -0,0 +1,174 @@
+package com.jakewharton.telecine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded ring of encoded samples which always begins on a key frame. Writing past capacity
+ * evicts the oldest samples, a whole group of pictures at a time, so memory use is fixed at
+ * construction no matter how many samples are written.
+ */
+final class SampleRingBuffer {
+  /** Matches {@code MediaCodec.BUFFER_FLAG_KEY_FRAME}. */
+  static final int FLAG_KEY_FRAME = 1;
+
+  interface Reader {
+    /** {@code data} holds the sample between its position and limit for this call only. */
+    void onSample(ByteBuffer data, long presentationTimeUs, int flags);
+  }
+
+  private final ByteBuffer data;
+  private final long[] presentationTimesUs;
+  private final int[] flags;
+  private final int[] offsets;
+  private final int[] sizes;
+
+  /** Index of the oldest sample. */
+  private int head;
+  private int count;
+  /** Offset in {@link #data} at which the next sample will be written. */
+  private int writeOffset;
+  private long droppedSamples;
+
+  SampleRingBuffer(int capacityBytes, int maxSamples) {
+    this(ByteBuffer.allocateDirect(capacityBytes), maxSamples);
+  }
+
+  SampleRingBuffer(ByteBuffer data, int maxSamples) {
+    if (maxSamples < 1) {
+      throw new IllegalArgumentException("maxSamples < 1: " + maxSamples);
+    }
+    this.data = data;
+    presentationTimesUs = new long[maxSamples];
+    flags = new int[maxSamples];
+    offsets = new int[maxSamples];
+    sizes = new int[maxSamples];
+  }
+
+  int capacityBytes() {
+    return data.capacity();
+  }
+
+  synchronized int sampleCount() {
+    return count;
+  }
+
+  /** Samples which were never stored because they were too large or could not be decoded. */
+  synchronized long droppedSamples() {
+    return droppedSamples;
+  }
+
+  synchronized long oldestPresentationTimeUs() {
+    if (count == 0) {
+      throw new IllegalStateException("Empty.");
+    }
+    return presentationTimesUs[head];
+  }
+
+  synchronized long newestPresentationTimeUs() {
+    if (count == 0) {
+      throw new IllegalStateException("Empty.");
+    }
+    return presentationTimesUs[index(count - 1)];
+  }
+
+  /** Append the sample between the position and limit of {@code sample}. */
+  synchronized void write(ByteBuffer sample, long presentationTimeUs, int sampleFlags) {
+    int size = sample.remaining();
+    if (size == 0) {
+      return;
+    }
+    if (size > data.capacity()) {
+      // Nothing can be decoded until the next key frame arrives.
+      clear();
+      droppedSamples++;
+      return;
+    }
+
+    // Samples are stored contiguously. Skip the unused tail if this one does not fit before it.
+    int offset = writeOffset + size <= data.capacity() ? writeOffset : 0;
+    while (count > 0 && (count == sizes.length || !fits(offset, size))) {
+      evictGroupOfPictures();
+    }
+    if (count == 0) {
+      if ((sampleFlags & FLAG_KEY_FRAME) == 0) {
+        droppedSamples++; // Undecodable without the key frame which precedes it.
+        return;
+      }
+      head = 0;
+      offset = 0;
+    }
+
+    int slot = index(count);
+    ByteBuffer target = data.duplicate();
+    target.clear().position(offset);
+    target.put(sample.duplicate());
+    presentationTimesUs[slot] = presentationTimeUs;
+    flags[slot] = sampleFlags;
+    offsets[slot] = offset;
+    sizes[slot] = size;
+    count++;
+    writeOffset = offset + size;
+  }
+
+  /**
+   * Read the samples covering at least the last {@code durationUs} in order. Reading begins at the
+   * newest key frame which is at least {@code durationUs} older than the newest sample, or at the
+   * oldest sample if none is. Returns the number of samples read.
+   */
+  synchronized int read(long durationUs, Reader reader) {
+    if (count == 0) {
+      return 0;
+    }
+    long startUs = newestPresentationTimeUs() - durationUs;
+    int start = 0;
+    for (int i = 0; i < count; i++) {
+      int slot = index(i);
+      if (presentationTimesUs[slot] > startUs) {
+        break;
+      }
+      if ((flags[slot] & FLAG_KEY_FRAME) != 0) {
+        start = i;
+      }
+    }
+    ByteBuffer source = data.duplicate();
+    for (int i = start; i < count; i++) {
+      int slot = index(i);
+      source.limit(offsets[slot] + sizes[slot]).position(offsets[slot]);
+      reader.onSample(source, presentationTimesUs[slot], flags[slot]);
+      source.clear();
+    }
+    return count - start;
+  }
+
+  synchronized void clear() {
+    head = 0;
+    count = 0;
+    writeOffset = 0;
+  }
+
+  /** Whether {@code size} bytes at {@code offset} are free. Only valid when non-empty. */
+  private boolean fits(int offset, int size) {
+    int headOffset = offsets[head];
+    if (headOffset < writeOffset) {
+      // Stored data is the contiguous run [headOffset, writeOffset).
+      return offset >= writeOffset || offset + size <= headOffset;
+    }
+    // Stored data has wrapped and occupies [headOffset, capacity) and [0, writeOffset).
+    return offset >= writeOffset && offset + size <= headOffset;
+  }
+
+  /** Remove the oldest key frame and every following sample up to the next key frame. */
+  private void evictGroupOfPictures() {
+    do {
+      head = index(1);
+      count--;
+    } while (count > 0 && (flags[head] & FLAG_KEY_FRAME) == 0);
+    if (count == 0) {
+      clear();
+    }
+  }
+
+  private int index(int i) {
+    return (head + i) % sizes.length;
+  }
+}
@@ -0,0 +1,30 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import java.nio.ByteBuffer;
+
+/**
+ * A consumer of encoded samples produced by {@link MediaCodecEncoder}. All methods are invoked on
+ * the encoder's drain thread.
+ */
+interface SampleSink {
+  /** Invoked once, before any samples, with the final output format of the encoder. */
+  void onFormatChanged(MediaFormat format);
+
+  /**
+   * Invoked for each encoded sample. The contents of {@code buffer} between its position and limit
+   * are only valid for the duration of this call.
+   */
+  void onSample(ByteBuffer buffer, MediaCodec.BufferInfo info);
+
+  /** Invoked after the last sample has been delivered. No other methods will be invoked after. */
+  void onEnd();
+
+  /**
+   * Invoked instead of {@link #onEnd} when the encoder is released without being stopped, such as
+   * after it failed to prepare. Release everything held since the output will be discarded. No
+   * other methods will be invoked after.
+   */
+  void onAbort();
+}
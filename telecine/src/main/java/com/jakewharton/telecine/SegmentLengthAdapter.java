@@ -0,0 +1,73 @@
+package com.jakewharton.telecine;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/** Segment lengths in minutes. Zero disables segmenting. */
+final class SegmentLengthAdapter extends BaseAdapter {
+  public static int getSelectedPosition(int value) {
+    switch (value) {
+      case 0:
+        return 0;
+      case 5:
+        return 1;
+      case 10:
+        return 2;
+      case 30:
+        return 3;
+      default:
+        return 0;
+    }
+  }
+
+  private final Context context;
+  private final LayoutInflater inflater;
+
+  SegmentLengthAdapter(Context context) {
+    this.context = context;
+    inflater = LayoutInflater.from(context);
+  }
+
+  @Override public int getCount() {
+    return 4;
+  }
+
+  @Override public Integer getItem(int position) {
+    switch (position) {
+      case 0:
+        return 0;
+      case 1:
+        return 5;
+      case 2:
+        return 10;
+      case 3:
+        return 30;
+      default:
+        throw new IllegalArgumentException("Unknown position: " + position);
+    }
+  }
+
+  @Override public long getItemId(int position) {
+    return position;
+  }
+
+  @Override public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+    TextView tv = (TextView) convertView;
+    if (tv == null) {
+      tv =
+          (TextView) inflater.inflate(android.R.layout.simple_spinner_dropdown_item, parent, false);
+    }
+
+    int minutes = getItem(position);
+    tv.setText(minutes == 0
+        ? context.getString(R.string.segment_length_off)
+        : context.getString(R.string.segment_length_minutes, minutes));
+
+    return tv;
+  }
+}
@@ -0,0 +1,82 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A JSON listing of the completed segments of a segmented recording. It is rewritten atomically
+ * as each segment completes so that a crash loses at most the segment being written.
+ */
+final class SegmentManifest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  static final class Segment {
+    final String fileName;
+    /** Relative to the start of the first segment. */
+    final long startUs;
+    final long durationUs;
+    final long bytes;
+
+    Segment(String fileName, long startUs, long durationUs, long bytes) {
+      this.fileName = fileName;
+      this.startUs = startUs;
+      this.durationUs = durationUs;
+      this.bytes = bytes;
+    }
+  }
+
+  private final File file;
+  private final List<Segment> segments = new ArrayList<>();
+
+  SegmentManifest(File file) {
+    this.file = file;
+  }
+
+  File file() {
+    return file;
+  }
+
+  List<Segment> segments() {
+    return Collections.unmodifiableList(segments);
+  }
+
+  void add(Segment segment) throws IOException {
+    segments.add(segment);
+    write();
+  }
+
+  private void write() throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), UTF_8)) {
+      writer.write(toJson());
+    }
+    if (!temp.renameTo(file)) {
+      throw new IOException("Unable to rename '" + temp + "' to '" + file + "'.");
+    }
+  }
+
+  String toJson() {
+    StringBuilder json = new StringBuilder("{\n  \"segments\": [");
+    for (int i = 0; i < segments.size(); i++) {
+      Segment segment = segments.get(i);
+      json.append(i == 0 ? "\n" : ",\n")
+          .append("    {\"file\": \"").append(escape(segment.fileName))
+          .append("\", \"startUs\": ").append(segment.startUs)
+          .append(", \"durationUs\": ").append(segment.durationUs)
+          .append(", \"bytes\": ").append(segment.bytes)
+          .append('}');
+    }
+    return json.append("\n  ]\n}\n").toString();
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
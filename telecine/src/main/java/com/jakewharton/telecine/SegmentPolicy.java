@@ -0,0 +1,30 @@
+package com.jakewharton.telecine;
+
+/** Decides when a segmented recording rolls over to a new file. */
+final class SegmentPolicy {
+  /** Comfortably below the 4 GiB file size limit of FAT-formatted storage. */
+  static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+  final long maxDurationUs;
+  final long maxBytes;
+
+  SegmentPolicy(long maxDurationUs, long maxBytes) {
+    if (maxDurationUs <= 0) {
+      throw new IllegalArgumentException("maxDurationUs <= 0: " + maxDurationUs);
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes <= 0: " + maxBytes);
+    }
+    this.maxDurationUs = maxDurationUs;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Whether a segment which has reached {@code bytes} and {@code durationUs} should end before a
+   * key frame. Segments only end on key frames so each one can be decoded on its own, which makes
+   * both limits soft by up to one key frame interval.
+   */
+  boolean shouldRollOver(long bytes, long durationUs) {
+    return durationUs >= maxDurationUs || bytes >= maxBytes;
+  }
+}
@@ -0,0 +1,156 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import timber.log.Timber;
+
+import static android.media.MediaCodec.BUFFER_FLAG_KEY_FRAME;
+import static android.media.MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
+
+/**
+ * A {@link SampleSink} which splits the recording into a new MP4 file whenever the
+ * {@link SegmentPolicy} asks for it. Files roll over on key frames while the encoder keeps
+ * running, so no frames are lost between segments.
+ */
+final class SegmentingSampleSink implements SampleSink {
+  private final String outputPrefix;
+  private final SegmentPolicy policy;
+  private final SegmentManifest manifest;
+  private final List<String> outputFiles = new ArrayList<>();
+  private final MediaCodec.BufferInfo segmentInfo = new MediaCodec.BufferInfo();
+
+  private MediaFormat format;
+  private MediaMuxer muxer;
+  private int track;
+  private String segmentFile;
+  private long segmentStartUs;
+  /** Segment start times in the manifest are relative to this so they begin at zero. */
+  private long firstStartUs = -1;
+  private long segmentBytes;
+  private long lastPresentationTimeUs;
+
+  /**
+   * @param outputFile The MP4 name from which segment and manifest names are derived. It is not
+   * written itself.
+   */
+  SegmentingSampleSink(String outputFile, SegmentPolicy policy) {
+    outputPrefix = outputFile.endsWith(".mp4")
+        ? outputFile.substring(0, outputFile.length() - 4)
+        : outputFile;
+    this.policy = policy;
+    manifest = new SegmentManifest(new File(outputPrefix + ".segments.json"));
+  }
+
+  /** The files of every segment started so far, in order. */
+  synchronized List<String> outputFiles() {
+    return new ArrayList<>(outputFiles);
+  }
+
+  File manifestFile() {
+    return manifest.file();
+  }
+
+  @Override public void onFormatChanged(MediaFormat format) {
+    this.format = format;
+  }
+
+  @Override public void onSample(ByteBuffer buffer, MediaCodec.BufferInfo info) {
+    long presentationTimeUs = info.presentationTimeUs;
+    boolean keyFrame = (info.flags & BUFFER_FLAG_KEY_FRAME) != 0;
+    try {
+      if (muxer == null) {
+        if (!keyFrame) {
+          return; // Undecodable without the key frame which precedes it.
+        }
+        openSegment(presentationTimeUs);
+      } else if (keyFrame
+          && policy.shouldRollOver(segmentBytes, presentationTimeUs - segmentStartUs)) {
+        try {
+          closeSegment(presentationTimeUs);
+        } catch (IOException e) {
+          Timber.e(e, "Unable to finish segment '%s'.", segmentFile);
+        }
+        openSegment(presentationTimeUs);
+      }
+    } catch (IOException e) {
+      Timber.e(e, "Unable to roll over to a new segment.");
+      muxer = null;
+      return;
+    }
+
+    segmentInfo.set(info.offset, info.size, presentationTimeUs - segmentStartUs, info.flags);
+    muxer.writeSampleData(track, buffer, segmentInfo);
+    segmentBytes += info.size;
+    lastPresentationTimeUs = presentationTimeUs;
+  }
+
+  @Override public void onEnd() {
+    if (muxer == null) {
+      return;
+    }
+    try {
+      closeSegment(lastPresentationTimeUs);
+    } catch (IOException e) {
+      Timber.e(e, "Unable to finish segment '%s'.", segmentFile);
+    }
+  }
+
+  @Override public void onAbort() {
+    if (muxer != null) {
+      muxer.release();
+      muxer = null;
+    }
+  }
+
+  private void openSegment(long startUs) throws IOException {
+    if (format == null) {
+      throw new IllegalStateException("Sample received before output format.");
+    }
+    int index;
+    synchronized (this) {
+      index = outputFiles.size() + 1;
+    }
+    String file = String.format(Locale.US, "%s_%03d.mp4", outputPrefix, index);
+    Timber.d("Starting segment %s at %sus: '%s'.", index, startUs, file);
+    MediaMuxer muxer = new MediaMuxer(file, MUXER_OUTPUT_MPEG_4);
+    try {
+      track = muxer.addTrack(format);
+      muxer.start();
+    } catch (RuntimeException e) {
+      muxer.release();
+      throw new IOException("Unable to start segment '" + file + "'.", e);
+    }
+    // Only list the segment once it exists.
+    synchronized (this) {
+      outputFiles.add(file);
+    }
+    this.muxer = muxer;
+    segmentFile = file;
+    if (firstStartUs == -1) {
+      firstStartUs = startUs;
+    }
+    segmentStartUs = startUs;
+    segmentBytes = 0;
+  }
+
+  private void closeSegment(long endUs) throws IOException {
+    MediaMuxer muxer = this.muxer;
+    this.muxer = null;
+    try {
+      muxer.stop();
+    } catch (IllegalStateException e) {
+      throw new IOException("Unable to stop muxer.", e);
+    } finally {
+      muxer.release();
+    }
+    manifest.add(new SegmentManifest.Segment(new File(segmentFile).getName(),
+        segmentStartUs - firstStartUs, endUs - segmentStartUs, segmentBytes));
+  }
+}
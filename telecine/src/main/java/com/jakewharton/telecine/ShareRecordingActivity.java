@@ -0,0 +1,63 @@
+package com.jakewharton.telecine;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.LabeledIntent;
+import android.net.Uri;
+import android.os.Bundle;
+import java.io.File;
+import javax.inject.Inject;
+import timber.log.Timber;
+
+import static android.content.Intent.ACTION_SEND;
+
+/**
+ * Target of the captured notification's share action. Deciding what to share when it is clicked
+ * rather than when the notification is posted lets it pick up the smaller copy once it is ready.
+ */
+public final class ShareRecordingActivity extends Activity {
+  private static final String MIME_TYPE = "video/mp4";
+
+  @Inject ShareTranscoder shareTranscoder;
+
+  @Override protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    ((TelecineApplication) getApplication()).inject(this);
+
+    Uri uri = getIntent().getData();
+    if (uri != null) {
+      startActivity(createChooser(this, uri, shareUri(uri)));
+    }
+    finish();
+  }
+
+  /** The smaller copy of the recording if it is finished, otherwise the recording itself. */
+  private Uri shareUri(Uri uri) {
+    String path = RecordingSession.queryPath(getContentResolver(), uri);
+    if (path != null) {
+      File transcoded = shareTranscoder.getTranscoded(new File(path));
+      if (transcoded != null) {
+        Timber.d("Sharing smaller copy of '%s'.", uri);
+        return Uri.fromFile(transcoded);
+      }
+    }
+    return uri;
+  }
+
+  private static Intent createChooser(Context context, Uri uri, Uri shareUri) {
+    Intent shareIntent = new Intent(ACTION_SEND);
+    shareIntent.setType(MIME_TYPE);
+    shareIntent.putExtra(Intent.EXTRA_STREAM, shareUri);
+    Intent chooser = Intent.createChooser(shareIntent, null);
+    // Offer converting to a GIF first. The notification only shows three actions so it has no
+    // button of its own. It always starts from the full size recording.
+    Intent gifIntent = new Intent(context, ExportGifActivity.class);
+    gifIntent.setData(uri);
+    chooser.putExtra(Intent.EXTRA_INITIAL_INTENTS, new Intent[] {
+        new LabeledIntent(gifIntent, context.getPackageName(), R.string.share_as_gif,
+            R.drawable.ic_videocam_white_24dp)
+    });
+    return chooser;
+  }
+}
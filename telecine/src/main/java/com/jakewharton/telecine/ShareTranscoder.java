@@ -0,0 +1,322 @@
+package com.jakewharton.telecine;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.support.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import timber.log.Timber;
+
+import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+
+/**
+ * Re-encodes recordings to a smaller copy which is quicker to share. Decoded frames are scaled on
+ * the GPU by a {@link CroppingEncoder} over the whole frame so they never touch the CPU.
+ * <p>
+ * Work runs on a single background thread with room for one waiting recording. Submitting while
+ * one is already waiting cancels the waiting one since only the newest recording is shown in the
+ * notification.
+ */
+final class ShareTranscoder {
+  static final int TARGET_SHORT_SIDE = 480;
+  static final int TARGET_BIT_RATE = 1500000;
+
+  private static final int DEFAULT_FRAME_RATE = 30;
+  private static final long TIMEOUT_US = 10000;
+  private static final long FRAME_TIMEOUT_MS = 500;
+  private static final String SUFFIX = "_share.mp4";
+
+  /** Null when there is nowhere other apps can read the copy from. */
+  @Nullable private final File outputDir;
+  private final ThreadPoolExecutor executor;
+  /** Submitted work keyed by source path. Guarded by itself. */
+  private final Map<String, TranscodeTask> pending = new LinkedHashMap<>();
+
+  /**
+   * @param outputDir a directory which the apps being shared with can read, or null to never
+   * create copies.
+   */
+  ShareTranscoder(@Nullable File outputDir) {
+    this.outputDir = outputDir;
+    executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+          @Override public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "telecine-share-transcode");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+        }, new RejectedExecutionHandler() {
+          @Override public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            // Make room by dropping the oldest waiting recording in favor of the new one.
+            Runnable oldest = executor.getQueue().poll();
+            if (oldest instanceof Future) {
+              ((Future<?>) oldest).cancel(false);
+            }
+            executor.execute(r);
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /** Start creating the small copy of {@code source} unless it exists or is being created. */
+  void submit(final File source) {
+    if (outputDir == null) {
+      return;
+    }
+    final String key = source.getPath();
+    synchronized (pending) {
+      if (pending.containsKey(key) || getTranscoded(source) != null) {
+        return;
+      }
+      TranscodeTask task = new TranscodeTask(new Runnable() {
+        @Override public void run() {
+          try {
+            long startNanos = System.nanoTime();
+            File output = outputFor(outputDir, source);
+            if (transcode(source, output)) {
+              Timber.i("Transcoded recording for sharing in %sms (%s bytes).",
+                  TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), output.length());
+            }
+          } catch (InterruptedIOException e) {
+            Timber.d("Transcode of %s canceled.", source);
+          } catch (IOException | RuntimeException e) {
+            Timber.e(e, "Unable to transcode recording for sharing.");
+          }
+        }
+      }) {
+        @Override protected void done() {
+          synchronized (pending) {
+            pending.remove(key);
+          }
+        }
+      };
+      pending.put(key, task);
+      executor.execute(task);
+    }
+  }
+
+  /**
+   * Stop any work for {@code source} and delete its small copy. Blocks until running work has
+   * finished so it cannot write the copy again afterwards. Do not call from the main thread.
+   */
+  void cancel(File source) {
+    TranscodeTask task;
+    synchronized (pending) {
+      task = pending.remove(source.getPath());
+    }
+    if (task != null) {
+      task.cancel(true);
+      // Work which never started is simply dropped. Otherwise wait for it to leave run().
+      if (!executor.remove(task)) {
+        task.awaitFinished();
+      }
+    }
+    if (outputDir != null) {
+      //noinspection ResultOfMethodCallIgnored
+      outputFor(outputDir, source).delete();
+    }
+  }
+
+  /** The small copy of {@code source}, or null if it is not finished. */
+  @Nullable File getTranscoded(File source) {
+    if (outputDir == null) {
+      return null;
+    }
+    File output = outputFor(outputDir, source);
+    return output.exists() ? output : null;
+  }
+
+  static File outputFor(File outputDir, File source) {
+    return new File(outputDir, source.getName().replaceFirst("\\.mp4$", "") + SUFFIX);
+  }
+
+  /**
+   * The even output size for a {@code width}x{@code height} source whose shorter side becomes
+   * {@link #TARGET_SHORT_SIDE}, or null if the source is already that small.
+   */
+  @Nullable static int[] targetSize(int width, int height) {
+    int shortSide = Math.min(width, height);
+    if (shortSide <= TARGET_SHORT_SIDE) {
+      return null;
+    }
+    float scale = TARGET_SHORT_SIDE / (float) shortSide;
+    int targetWidth = Math.round(width * scale) & ~1;
+    int targetHeight = Math.round(height * scale) & ~1;
+    return new int[] { targetWidth, targetHeight };
+  }
+
+  /**
+   * Write a smaller copy of {@code input} to {@code output}. The output only appears once it is
+   * complete. Returns false if the input does not need a smaller copy.
+   *
+   * @throws InterruptedIOException if the thread was interrupted.
+   */
+  static boolean transcode(File input, File output) throws IOException {
+    MediaExtractor extractor = new MediaExtractor();
+    File temp = new File(output.getPath() + ".tmp");
+    CroppingEncoder encoder = null;
+    MediaCodec decoder = null;
+    try {
+      extractor.setDataSource(input.getPath());
+      int videoTrack = -1;
+      MediaFormat inputFormat = null;
+      for (int i = 0; i < extractor.getTrackCount(); i++) {
+        MediaFormat format = extractor.getTrackFormat(i);
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        if (mime.startsWith("audio/")) {
+          // The small copy is video only. Sharing a recording without its sound is worse.
+          Timber.d("Not transcoding %s which has audio.", input);
+          return false;
+        }
+        if (mime.startsWith("video/") && videoTrack == -1) {
+          videoTrack = i;
+          inputFormat = format;
+        }
+      }
+      if (inputFormat == null) {
+        throw new IOException("No video track in " + input);
+      }
+
+      int width = inputFormat.getInteger(MediaFormat.KEY_WIDTH);
+      int height = inputFormat.getInteger(MediaFormat.KEY_HEIGHT);
+      int[] size = targetSize(width, height);
+      if (size == null) {
+        Timber.d("Not transcoding %sx%s recording which is already small.", width, height);
+        return false;
+      }
+      int frameRate = inputFormat.containsKey(MediaFormat.KEY_FRAME_RATE)
+          ? inputFormat.getInteger(MediaFormat.KEY_FRAME_RATE)
+          : DEFAULT_FRAME_RATE;
+      RecordingInfo info = new RecordingInfo(size[0], size[1], frameRate, 0, TARGET_BIT_RATE,
+          width, height, CropRegion.FULL);
+      Timber.d("Transcoding %sx%s recording to %sx%s.", width, height, size[0], size[1]);
+
+      //noinspection ResultOfMethodCallIgnored
+      output.getParentFile().mkdirs();
+      encoder = new CroppingEncoder(new MediaCodecEncoder(new MuxerSampleSink(temp.getPath()),
+          MediaCodecEncoder.NO_REPEAT));
+      encoder.prepare(info);
+      encoder.start();
+
+      decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+      decoder.configure(inputFormat, encoder.getInputSurface(), null, 0);
+      decoder.start();
+      extractor.selectTrack(videoTrack);
+      decode(extractor, decoder, encoder);
+
+      encoder.stop();
+      // Canceled after decoding finished. The copy must not appear once cancel() deleted it.
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+      if (!temp.renameTo(output)) {
+        throw new IOException("Unable to rename " + temp);
+      }
+      return true;
+    } finally {
+      if (decoder != null) {
+        try {
+          decoder.stop();
+        } catch (IllegalStateException ignored) {
+          // Never started.
+        }
+        decoder.release();
+      }
+      if (encoder != null) {
+        encoder.release();
+      }
+      extractor.release();
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+    }
+  }
+
+  /** Counts down once {@link #run()} returns, whether or not the work ran. */
+  private static class TranscodeTask extends FutureTask<Void> {
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    TranscodeTask(Runnable runnable) {
+      super(runnable, null);
+    }
+
+    @Override public void run() {
+      try {
+        super.run();
+      } finally {
+        finished.countDown();
+      }
+    }
+
+    void awaitFinished() {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          finished.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true; // Deleting before the work finishes would race with it.
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Render every decoded frame into the encoder, waiting for each one to be drawn. */
+  private static void decode(MediaExtractor extractor, MediaCodec decoder,
+      CroppingEncoder encoder) throws IOException {
+    MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    boolean inputDone = false;
+    while (true) {
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+
+      if (!inputDone) {
+        int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+        if (index >= 0) {
+          int size = extractor.readSampleData(decoder.getInputBuffer(index), 0);
+          if (size < 0) {
+            decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+          } else {
+            decoder.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+          }
+        }
+      }
+
+      int index = decoder.dequeueOutputBuffer(info, TIMEOUT_US);
+      if (index < 0) {
+        continue; // Try again later, or a format or buffers change which rendering handles.
+      }
+      boolean render = info.size > 0;
+      decoder.releaseOutputBuffer(index, render);
+      if (render) {
+        try {
+          if (!encoder.awaitFrame(FRAME_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            Timber.w("Frame at %sus was not drawn.", info.presentationTimeUs);
+          }
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+      if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+        return;
+      }
+    }
+  }
+}
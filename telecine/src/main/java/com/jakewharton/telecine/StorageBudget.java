@@ -0,0 +1,108 @@
+package com.jakewharton.telecine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projects how much longer a recording fits in the free space of its storage, from the bit rate
+ * it was configured with. Encoders use a variable bit rate so the projection is an upper bound on
+ * what is actually written.
+ */
+final class StorageBudget {
+  enum Action {
+    CONTINUE,
+    /** Space is running low. Halve the video bit rate to {@link #steppedDownBitRate()}. */
+    STEP_DOWN,
+    /** Stop now while there is still room to finish the file. */
+    STOP
+  }
+
+  /** Left free for the system and for the muxer to write the index of the file when stopping. */
+  static final long RESERVED_BYTES = 32L * 1024 * 1024;
+  /** Container overhead on top of the encoded streams. */
+  static final int OVERHEAD_PERCENT = 2;
+  static final long MIN_START_SECONDS = 10;
+  static final long STEP_DOWN_SECONDS = 60;
+  static final long STOP_SECONDS = 5;
+  static final int MIN_VIDEO_BIT_RATE = 500000;
+  static final long MIN_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+  static final long MAX_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+  final int videoBitRate;
+  final int audioBitRate;
+  /** Written all at once when stopping, such as the instant replay buffer. */
+  final long finalizeBytes;
+  /** Whether the encoder can change its bit rate while recording. */
+  final boolean adjustable;
+
+  StorageBudget(int videoBitRate, int audioBitRate, long finalizeBytes, boolean adjustable) {
+    this.videoBitRate = videoBitRate;
+    this.audioBitRate = audioBitRate;
+    this.finalizeBytes = finalizeBytes;
+    this.adjustable = adjustable;
+  }
+
+  StorageBudget withVideoBitRate(int videoBitRate) {
+    return new StorageBudget(videoBitRate, audioBitRate, finalizeBytes, adjustable);
+  }
+
+  StorageBudget withAdjustable(boolean adjustable) {
+    return new StorageBudget(videoBitRate, audioBitRate, finalizeBytes, adjustable);
+  }
+
+  /** Projected bytes written for each second of recording. */
+  long bytesPerSecond() {
+    long bytes = ((long) videoBitRate + audioBitRate) / 8;
+    return bytes * (100 + OVERHEAD_PERCENT) / 100;
+  }
+
+  /** Seconds of recording which fit in {@code availableBytes}. */
+  long secondsLeft(long availableBytes) {
+    long usableBytes = availableBytes - RESERVED_BYTES - finalizeBytes;
+    if (usableBytes <= 0) {
+      return 0;
+    }
+    long bytesPerSecond = bytesPerSecond();
+    return bytesPerSecond == 0 ? Long.MAX_VALUE : usableBytes / bytesPerSecond;
+  }
+
+  boolean canStart(long availableBytes) {
+    return secondsLeft(availableBytes) >= MIN_START_SECONDS;
+  }
+
+  Action check(long availableBytes) {
+    long secondsLeft = secondsLeft(availableBytes);
+    if (secondsLeft < STOP_SECONDS) {
+      return Action.STOP;
+    }
+    if (secondsLeft < STEP_DOWN_SECONDS && steppedDownBitRate() != 0) {
+      return Action.STEP_DOWN;
+    }
+    return Action.CONTINUE;
+  }
+
+  /** Half the video bit rate, or zero if it cannot go any lower. */
+  int steppedDownBitRate() {
+    int bitRate = videoBitRate / 2;
+    return adjustable && bitRate >= MIN_VIDEO_BIT_RATE ? bitRate : 0;
+  }
+
+  /**
+   * How long until space should be checked again: a quarter of the time left so checks speed up as
+   * space runs out.
+   */
+  long nextCheckDelayMs(long availableBytes) {
+    long secondsLeft = secondsLeft(availableBytes);
+    if (secondsLeft >= TimeUnit.MILLISECONDS.toSeconds(MAX_CHECK_INTERVAL_MS) * 4) {
+      return MAX_CHECK_INTERVAL_MS;
+    }
+    return Math.max(MIN_CHECK_INTERVAL_MS, TimeUnit.SECONDS.toMillis(secondsLeft) / 4);
+  }
+
+  @Override public String toString() {
+    return "StorageBudget{videoBitRate=" + videoBitRate
+        + ", audioBitRate=" + audioBitRate
+        + ", finalizeBytes=" + finalizeBytes
+        + ", adjustable=" + adjustable
+        + '}';
+  }
+}
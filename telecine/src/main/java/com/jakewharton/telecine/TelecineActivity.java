@@ -7,6 +7,7 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.widget.Button;
 import android.widget.Spinner;
 import android.widget.Switch;
 
@@ -26,11 +27,19 @@ import timber.log.Timber;
 
 public final class TelecineActivity extends Activity {
   @Bind(R.id.spinner_video_size_percentage) Spinner videoSizePercentageView;
+  @Bind(R.id.spinner_video_codec) Spinner videoCodecView;
+  @Bind(R.id.spinner_segment_length) Spinner segmentLengthView;
+  @Bind(R.id.spinner_keep_alive_interval) Spinner keepAliveIntervalView;
+  @Bind(R.id.recording_region) Button recordingRegionView;
   @Bind(R.id.switch_show_countdown) Switch showCountdownView;
   @Bind(R.id.switch_hide_from_recents) Switch hideFromRecentsView;
   @Bind(R.id.switch_recording_notification) Switch recordingNotificationView;
   @Bind(R.id.switch_show_touches) Switch showTouchesView;
   @Bind(R.id.switch_record_audio) Switch recordAudio;
+  @Bind(R.id.switch_use_media_codec) Switch useMediaCodecView;
+  @Bind(R.id.switch_instant_replay) Switch instantReplayView;
+  @Bind(R.id.switch_fragmented_output) Switch fragmentedOutputView;
+  @Bind(R.id.switch_share_transcode) Switch shareTranscodeView;
 
   @BindString(R.string.app_name) String appName;
   @BindColor(R.color.primary_normal) int primaryNormal;
@@ -41,10 +50,21 @@ public final class TelecineActivity extends Activity {
   @Inject @RecordingNotification BooleanPreference recordingNotificationPreference;
   @Inject @ShowTouches BooleanPreference showTouchesPreference;
   @Inject @RecordAudio BooleanPreference recordAudioPreference;
+  @Inject @UseMediaCodec BooleanPreference useMediaCodecPreference;
+  @Inject @InstantReplay BooleanPreference instantReplayPreference;
+  @Inject @SegmentMinutes IntPreference segmentMinutesPreference;
+  @Inject @KeepAliveSeconds IntPreference keepAliveSecondsPreference;
+  @Inject @VideoCodec IntPreference videoCodecPreference;
+  @Inject @RecordingRegion CropRegionPreference recordingRegionPreference;
+  @Inject @FragmentedOutput BooleanPreference fragmentedOutputPreference;
+  @Inject @ShareTranscode BooleanPreference shareTranscodePreference;
 
   @Inject Analytics analytics;
 
   private VideoSizePercentageAdapter videoSizePercentageAdapter;
+  private VideoCodecAdapter videoCodecAdapter;
+  private SegmentLengthAdapter segmentLengthAdapter;
+  private KeepAliveIntervalAdapter keepAliveIntervalAdapter;
   private int longClickCount;
 
   @Override protected void onCreate(Bundle savedInstanceState) {
@@ -67,11 +87,33 @@ public final class TelecineActivity extends Activity {
     videoSizePercentageView.setSelection(
         VideoSizePercentageAdapter.getSelectedPosition(videoSizePreference.get()));
 
+    videoCodecAdapter = new VideoCodecAdapter(this);
+    videoCodecView.setAdapter(videoCodecAdapter);
+    videoCodecView.setSelection(VideoCodecAdapter.getSelectedPosition(videoCodecPreference.get()));
+
+    segmentLengthAdapter = new SegmentLengthAdapter(this);
+    segmentLengthView.setAdapter(segmentLengthAdapter);
+    segmentLengthView.setSelection(
+        SegmentLengthAdapter.getSelectedPosition(segmentMinutesPreference.get()));
+
+    keepAliveIntervalAdapter = new KeepAliveIntervalAdapter(this);
+    keepAliveIntervalView.setAdapter(keepAliveIntervalAdapter);
+    keepAliveIntervalView.setSelection(
+        KeepAliveIntervalAdapter.getSelectedPosition(keepAliveSecondsPreference.get()));
+
+    recordingRegionView.setText(recordingRegionPreference.get().isFull()
+        ? R.string.recording_region_full
+        : R.string.recording_region_custom);
+
     showCountdownView.setChecked(showCountdownPreference.get());
     hideFromRecentsView.setChecked(hideFromRecentsPreference.get());
     recordingNotificationView.setChecked(recordingNotificationPreference.get());
     showTouchesView.setChecked(showTouchesPreference.get());
     recordAudio.setChecked(recordAudioPreference.get());
+    useMediaCodecView.setChecked(useMediaCodecPreference.get());
+    instantReplayView.setChecked(instantReplayPreference.get());
+    fragmentedOutputView.setChecked(fragmentedOutputPreference.get());
+    shareTranscodeView.setChecked(shareTranscodePreference.get());
   }
 
   @OnClick(R.id.launch) void onLaunchClicked() {
@@ -84,6 +126,30 @@ public final class TelecineActivity extends Activity {
     CaptureHelper.fireScreenCaptureIntent(this, analytics);
   }
 
+  @OnClick(R.id.recording_region) void onRecordingRegionClicked() {
+    final CropRegionPreference preference = recordingRegionPreference;
+    final Analytics analytics = this.analytics;
+    CropSelectionView.show(getApplicationContext(), preference.get(),
+        new CropSelectionView.Listener() {
+          @Override public void onSelected(CropRegion region) {
+            Timber.d("Recording region changing to %s", region);
+            preference.set(region);
+
+            analytics.send(new HitBuilders.EventBuilder() //
+                .setCategory(Analytics.CATEGORY_SETTINGS)
+                .setAction(Analytics.ACTION_CHANGE_RECORDING_REGION)
+                .setValue(region.isFull() ? 0 : 1)
+                .build());
+          }
+
+          @Override public void onCancel() {
+            Timber.d("Recording region selection canceled.");
+          }
+        });
+    // Get out of the way so the region can be chosen over the content which will be recorded.
+    finish();
+  }
+
   @OnLongClick(R.id.launch) boolean onLongClick() {
     if (++longClickCount == 5) {
       throw new RuntimeException("Crash! Bang! Pow! This is only a test...");
@@ -108,6 +174,52 @@ public final class TelecineActivity extends Activity {
     }
   }
 
+  @OnItemSelected(R.id.spinner_video_codec) void onVideoCodecSelected(int position) {
+    int newValue = videoCodecAdapter.getItem(position);
+    int oldValue = videoCodecPreference.get();
+    if (newValue != oldValue) {
+      Timber.d("Video codec changing to %s", newValue);
+      videoCodecPreference.set(newValue);
+
+      analytics.send(new HitBuilders.EventBuilder() //
+          .setCategory(Analytics.CATEGORY_SETTINGS)
+          .setAction(Analytics.ACTION_CHANGE_VIDEO_CODEC)
+          .setValue(newValue)
+          .build());
+    }
+  }
+
+  @OnItemSelected(R.id.spinner_segment_length) void onSegmentLengthSelected(int position) {
+    int newValue = segmentLengthAdapter.getItem(position);
+    int oldValue = segmentMinutesPreference.get();
+    if (newValue != oldValue) {
+      Timber.d("Segment length changing to %s minutes", newValue);
+      segmentMinutesPreference.set(newValue);
+
+      analytics.send(new HitBuilders.EventBuilder() //
+          .setCategory(Analytics.CATEGORY_SETTINGS)
+          .setAction(Analytics.ACTION_CHANGE_SEGMENT_LENGTH)
+          .setValue(newValue)
+          .build());
+    }
+  }
+
+  @OnItemSelected(R.id.spinner_keep_alive_interval) void onKeepAliveIntervalSelected(
+      int position) {
+    int newValue = keepAliveIntervalAdapter.getItem(position);
+    int oldValue = keepAliveSecondsPreference.get();
+    if (newValue != oldValue) {
+      Timber.d("Keep-alive interval changing to %s seconds", newValue);
+      keepAliveSecondsPreference.set(newValue);
+
+      analytics.send(new HitBuilders.EventBuilder() //
+          .setCategory(Analytics.CATEGORY_SETTINGS)
+          .setAction(Analytics.ACTION_CHANGE_KEEP_ALIVE_INTERVAL)
+          .setValue(newValue)
+          .build());
+    }
+  }
+
   @OnCheckedChanged(R.id.switch_show_countdown) void onShowCountdownChanged() {
     boolean newValue = showCountdownView.isChecked();
     boolean oldValue = showCountdownPreference.get();
@@ -179,6 +291,66 @@ public final class TelecineActivity extends Activity {
         }
     }
 
+  @OnCheckedChanged(R.id.switch_use_media_codec) void onUseMediaCodecChanged() {
+    boolean newValue = useMediaCodecView.isChecked();
+    boolean oldValue = useMediaCodecPreference.get();
+    if (newValue != oldValue) {
+      Timber.d("Use MediaCodec preference changing to %s", newValue);
+      useMediaCodecPreference.set(newValue);
+
+      analytics.send(new HitBuilders.EventBuilder() //
+          .setCategory(Analytics.CATEGORY_SETTINGS)
+          .setAction(Analytics.ACTION_CHANGE_USE_MEDIA_CODEC)
+          .setValue(newValue ? 1 : 0)
+          .build());
+    }
+  }
+
+  @OnCheckedChanged(R.id.switch_instant_replay) void onInstantReplayChanged() {
+    boolean newValue = instantReplayView.isChecked();
+    boolean oldValue = instantReplayPreference.get();
+    if (newValue != oldValue) {
+      Timber.d("Instant replay preference changing to %s", newValue);
+      instantReplayPreference.set(newValue);
+
+      analytics.send(new HitBuilders.EventBuilder() //
+          .setCategory(Analytics.CATEGORY_SETTINGS)
+          .setAction(Analytics.ACTION_CHANGE_INSTANT_REPLAY)
+          .setValue(newValue ? 1 : 0)
+          .build());
+    }
+  }
+
+  @OnCheckedChanged(R.id.switch_fragmented_output) void onFragmentedOutputChanged() {
+    boolean newValue = fragmentedOutputView.isChecked();
+    boolean oldValue = fragmentedOutputPreference.get();
+    if (newValue != oldValue) {
+      Timber.d("Fragmented output preference changing to %s", newValue);
+      fragmentedOutputPreference.set(newValue);
+
+      analytics.send(new HitBuilders.EventBuilder() //
+          .setCategory(Analytics.CATEGORY_SETTINGS)
+          .setAction(Analytics.ACTION_CHANGE_FRAGMENTED_OUTPUT)
+          .setValue(newValue ? 1 : 0)
+          .build());
+    }
+  }
+
+  @OnCheckedChanged(R.id.switch_share_transcode) void onShareTranscodeChanged() {
+    boolean newValue = shareTranscodeView.isChecked();
+    boolean oldValue = shareTranscodePreference.get();
+    if (newValue != oldValue) {
+      Timber.d("Share transcode preference changing to %s", newValue);
+      shareTranscodePreference.set(newValue);
+
+      analytics.send(new HitBuilders.EventBuilder() //
+          .setCategory(Analytics.CATEGORY_SETTINGS)
+          .setAction(Analytics.ACTION_CHANGE_SHARE_TRANSCODE)
+          .setValue(newValue ? 1 : 0)
+          .build());
+    }
+  }
+
   @Override protected void onActivityResult(int requestCode, int resultCode, Intent data) {
     if (!CaptureHelper.handleActivityResult(this, requestCode, resultCode, data, analytics)) {
       super.onActivityResult(requestCode, resultCode, data);
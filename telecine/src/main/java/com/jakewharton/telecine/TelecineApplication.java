@@ -33,6 +33,8 @@ public final class TelecineApplication extends Application {
 
     //获取TelecineApplication的对象图 （包含了其中的依赖关系）
     objectGraph = ObjectGraph.create(new TelecineModule(this));
+
+    RecordingRecovery.recoverInBackground(this, RecordingSession.getOutputRoot());
   }
 
   public void inject(Object o) {
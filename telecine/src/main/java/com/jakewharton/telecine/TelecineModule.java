@@ -2,11 +2,15 @@ package com.jakewharton.telecine;
 
 import android.content.ContentResolver;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.Build;
 
 import com.google.android.gms.analytics.GoogleAnalytics;
 import com.google.android.gms.analytics.Tracker;
 
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
@@ -21,6 +25,10 @@ import static android.content.Context.MODE_PRIVATE;
         injects = {
                 TelecineActivity.class,
                 TelecineService.class,
+                ExportGifActivity.class,
+                ShareRecordingActivity.class,
+                RecordingSession.DeleteRecordingBroadcastReceiver.class,
+                RecordingSession.TrimRecordingBroadcastReceiver.class,
                 TelecineShortcutConfigureActivity.class,
                 TelecineShortcutLaunchActivity.class,
                 //include标签可以引入已经声明的module
@@ -35,6 +43,16 @@ final class TelecineModule {
     private static final boolean DEFAULT_SHOW_TOUCHES = false;
     private static final boolean DEFAULT_RECORDING_NOTIFICATION = false;
     private static final int DEFAULT_VIDEO_SIZE_PERCENTAGE = 100;
+    private static final boolean DEFAULT_USE_MEDIA_CODEC = false;
+    private static final boolean DEFAULT_INSTANT_REPLAY = false;
+    private static final boolean DEFAULT_FRAGMENTED_OUTPUT = false;
+    private static final int DEFAULT_SEGMENT_MINUTES = 0;
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 0;
+    private static final boolean DEFAULT_SHARE_TRANSCODE = false;
+    private static final int DEFAULT_VIDEO_CODEC = RecordingConfig.VIDEO_CODEC_H264;
+    private static final int ANALYTICS_QUEUE_CAPACITY = 256;
+    private static final int ANALYTICS_BATCH_SIZE = 16;
+    private static final long ANALYTICS_BATCH_INTERVAL_SECONDS = 5;
 
     private final TelecineApplication app;
 
@@ -45,19 +63,26 @@ final class TelecineModule {
     @Provides
     @Singleton
     Analytics provideAnalytics() {
+        Analytics analytics;
         if (BuildConfig.DEBUG) {
-            return new Analytics() {
+            analytics = new Analytics() {
                 @Override
                 public void send(Map<String, String> params) {
                     Timber.tag("Analytics").d(String.valueOf(params));
                 }
             };
+        } else {
+            GoogleAnalytics googleAnalytics = GoogleAnalytics.getInstance(app);
+            Tracker tracker = googleAnalytics.newTracker(BuildConfig.ANALYTICS_KEY);
+            tracker.setSessionTimeout(300); // ms? s? better be s.
+            analytics = new Analytics.GoogleAnalytics(tracker);
         }
 
-        GoogleAnalytics googleAnalytics = GoogleAnalytics.getInstance(app);
-        Tracker tracker = googleAnalytics.newTracker(BuildConfig.ANALYTICS_KEY);
-        tracker.setSessionTimeout(300); // ms? s? better be s.
-        return new Analytics.GoogleAnalytics(tracker);
+        // Keep sending off the main thread, which is where every hit originates.
+        BatchingAnalytics batching = new BatchingAnalytics(analytics, ANALYTICS_QUEUE_CAPACITY,
+                ANALYTICS_BATCH_SIZE, ANALYTICS_BATCH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        batching.start();
+        return batching;
     }
 
     /**
@@ -75,6 +100,33 @@ final class TelecineModule {
         return app.getContentResolver();
     }
 
+    @Provides
+    @Singleton
+    ThumbnailLoader provideThumbnailLoader() {
+        return new ThumbnailLoader(app);
+    }
+
+    @Provides
+    @Singleton
+    ShareTranscoder provideShareTranscoder() {
+        // Copies are shared as file Uris so they must live where other apps can read them. Without
+        // external storage the original recording is shared instead.
+        File cacheDir = app.getExternalCacheDir();
+        return new ShareTranscoder(cacheDir != null ? new File(cacheDir, "share") : null);
+    }
+
+    @Provides
+    @Singleton
+    EncoderCapabilities provideEncoderCapabilities() {
+        File file = new File(app.getCacheDir(), "encoder-capabilities");
+        String buildKey = Build.FINGERPRINT + "/" + BuildConfig.VERSION_CODE;
+        EncoderCapabilities capabilities = new EncoderCapabilities(file, buildKey,
+                new EncoderCapabilities.MediaCodecProber());
+        // Usually finished by the time a recording needs it, which is after the countdown.
+        capabilities.loadInBackground(AsyncTask.THREAD_POOL_EXECUTOR);
+        return capabilities;
+    }
+
     @Provides
     @Singleton
     SharedPreferences provideSharedPreferences() {
@@ -83,30 +135,54 @@ final class TelecineModule {
 
     @Provides
     @Singleton
-    @ShowCountdown
-    BooleanPreference provideShowCountdownPreference(
-            SharedPreferences prefs) {
-        return new BooleanPreference(prefs, "show-countdown", DEFAULT_SHOW_COUNTDOWN);
+    RecordingConfigStore provideRecordingConfigStore(SharedPreferences prefs,
+            @ShowCountdown final BooleanPreference showCountdown,
+            @VideoSizePercentage final IntPreference videoSizePercentage,
+            @RecordingNotification final BooleanPreference recordingNotification,
+            @ShowTouches final BooleanPreference showTouches,
+            @RecordAudio final BooleanPreference recordAudio,
+            @UseMediaCodec final BooleanPreference useMediaCodec,
+            @InstantReplay final BooleanPreference instantReplay,
+            @SegmentMinutes final IntPreference segmentMinutes,
+            @FragmentedOutput final BooleanPreference fragmentedOutput,
+            @KeepAliveSeconds final IntPreference keepAliveSeconds,
+            @RecordingRegion final CropRegionPreference recordingRegion,
+            @ShareTranscode final BooleanPreference shareTranscode,
+            @VideoCodec final IntPreference videoCodec) {
+        RecordingConfigStore store = new RecordingConfigStore(new RecordingConfigStore.Loader() {
+            @Override
+            public RecordingConfig load() {
+                return new RecordingConfig(showCountdown.get(), videoSizePercentage.get(),
+                        recordingNotification.get(), showTouches.get(), recordAudio.get(),
+                        useMediaCodec.get(), instantReplay.get(), segmentMinutes.get(),
+                        fragmentedOutput.get(), keepAliveSeconds.get(), recordingRegion.get(),
+                        shareTranscode.get(), videoCodec.get());
+            }
+        });
+        // Preferences only hold listeners weakly. The store is a singleton so it stays reachable.
+        prefs.registerOnSharedPreferenceChangeListener(store);
+        return store;
     }
 
+    /** The settings at the time of injection. */
     @Provides
-    @ShowCountdown
-    Boolean provideShowCountdown(@ShowCountdown BooleanPreference pref) {
-        return pref.get();
+    RecordingConfig provideRecordingConfig(RecordingConfigStore store) {
+        return store.get();
     }
 
     @Provides
     @Singleton
-    @RecordingNotification
-    BooleanPreference provideRecordingNotificationPreference(SharedPreferences prefs) {
-        return new BooleanPreference(prefs, "recording-notification", DEFAULT_RECORDING_NOTIFICATION);
+    @ShowCountdown
+    BooleanPreference provideShowCountdownPreference(
+            SharedPreferences prefs) {
+        return new BooleanPreference(prefs, "show-countdown", DEFAULT_SHOW_COUNTDOWN);
     }
 
     @Provides
+    @Singleton
     @RecordingNotification
-    Boolean provideRecordingNotification(
-            @RecordingNotification BooleanPreference pref) {
-        return pref.get();
+    BooleanPreference provideRecordingNotificationPreference(SharedPreferences prefs) {
+        return new BooleanPreference(prefs, "recording-notification", DEFAULT_RECORDING_NOTIFICATION);
     }
 
     @Provides
@@ -125,12 +201,6 @@ final class TelecineModule {
         return new BooleanPreference(prefs, "show-touches", DEFAULT_SHOW_TOUCHES);
     }
 
-    @Provides
-    @ShowTouches
-    Boolean provideShowTouches(@ShowTouches BooleanPreference pref) {
-        return pref.get();
-    }
-
     @Provides
     @Singleton
     @RecordAudio
@@ -139,9 +209,52 @@ final class TelecineModule {
     }
 
     @Provides
-    @RecordAudio
-    Boolean provideRecordAudio(@RecordAudio BooleanPreference pref){
-        return pref.get();
+    @Singleton
+    @UseMediaCodec
+    BooleanPreference provideUseMediaCodecPreference(SharedPreferences prefs) {
+        return new BooleanPreference(prefs, "use-media-codec", DEFAULT_USE_MEDIA_CODEC);
+    }
+
+    @Provides
+    @Singleton
+    @InstantReplay
+    BooleanPreference provideInstantReplayPreference(SharedPreferences prefs) {
+        return new BooleanPreference(prefs, "instant-replay", DEFAULT_INSTANT_REPLAY);
+    }
+
+    @Provides
+    @Singleton
+    @FragmentedOutput
+    BooleanPreference provideFragmentedOutputPreference(SharedPreferences prefs) {
+        return new BooleanPreference(prefs, "fragmented-output", DEFAULT_FRAGMENTED_OUTPUT);
+    }
+
+    @Provides
+    @Singleton
+    @ShareTranscode
+    BooleanPreference provideShareTranscodePreference(SharedPreferences prefs) {
+        return new BooleanPreference(prefs, "share-transcode", DEFAULT_SHARE_TRANSCODE);
+    }
+
+    @Provides
+    @Singleton
+    @SegmentMinutes
+    IntPreference provideSegmentMinutesPreference(SharedPreferences prefs) {
+        return new IntPreference(prefs, "segment-minutes", DEFAULT_SEGMENT_MINUTES);
+    }
+
+    @Provides
+    @Singleton
+    @RecordingRegion
+    CropRegionPreference provideRecordingRegionPreference(SharedPreferences prefs) {
+        return new CropRegionPreference(prefs, "recording-region");
+    }
+
+    @Provides
+    @Singleton
+    @KeepAliveSeconds
+    IntPreference provideKeepAliveSecondsPreference(SharedPreferences prefs) {
+        return new IntPreference(prefs, "keep-alive-seconds", DEFAULT_KEEP_ALIVE_SECONDS);
     }
 
     @Provides
@@ -153,9 +266,10 @@ final class TelecineModule {
     }
 
     @Provides
-    @VideoSizePercentage
-    Integer provideVideoSizePercentage(
-            @VideoSizePercentage IntPreference pref) {
-        return pref.get();
+    @Singleton
+    @VideoCodec
+    IntPreference provideVideoCodecPreference(SharedPreferences prefs) {
+        return new IntPreference(prefs, "video-codec", DEFAULT_VIDEO_CODEC);
     }
+
 }
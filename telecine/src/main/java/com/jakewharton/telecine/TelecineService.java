@@ -9,7 +9,6 @@ import android.os.IBinder;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
 import javax.inject.Inject;
-import javax.inject.Provider;
 import timber.log.Timber;
 
 import static android.app.Notification.PRIORITY_MIN;
@@ -34,26 +33,25 @@ public final class TelecineService extends Service {
     return intent;
   }
 
-  @Inject @ShowCountdown Provider<Boolean> showCountdownProvider;
-  @Inject @VideoSizePercentage Provider<Integer> videoSizePercentageProvider;
-  @Inject @RecordingNotification Provider<Boolean> recordingNotificationProvider;
-  @Inject @ShowTouches Provider<Boolean> showTouchesProvider;
-  @Inject @RecordAudio Provider<Boolean> recordAudioProvider;
+  @Inject RecordingConfig config;
 
   @Inject Analytics analytics;
   @Inject ContentResolver contentResolver;
+  @Inject ThumbnailLoader thumbnailLoader;
+  @Inject ShareTranscoder shareTranscoder;
+  @Inject EncoderCapabilities encoderCapabilities;
 
   private boolean running;
   private RecordingSession recordingSession;
 
   private final RecordingSession.Listener listener = new RecordingSession.Listener() {
     @Override public void onStart() {
-      if (showTouchesProvider.get()) {
+      if (config.showTouches) {
         //显示系统的点按点
         Settings.System.putInt(contentResolver, SHOW_TOUCHES, 1);
       }
 
-      if (!recordingNotificationProvider.get()) {
+      if (!config.recordingNotification) {
         return; // No running notification was requested.
       }
 
@@ -75,7 +73,7 @@ public final class TelecineService extends Service {
     }
 
     @Override public void onStop() {
-      if (showTouchesProvider.get()) {
+      if (config.showTouches) {
         Settings.System.putInt(contentResolver, SHOW_TOUCHES, 0);
       }
 
@@ -103,12 +101,13 @@ public final class TelecineService extends Service {
       throw new IllegalStateException("Result code or data missing.");
     }
 
-    //将改服务注入到objectGraph
+    //将改服务注入到objectGraph, 同时取得当前设置的快照
     ((TelecineApplication) getApplication()).inject(this);
+    Timber.d("Recording with %s", config);
 
     recordingSession =
-        new RecordingSession(this, listener, resultCode, data, analytics, showCountdownProvider,
-            videoSizePercentageProvider,recordAudioProvider.get());
+        new RecordingSession(this, listener, resultCode, data, analytics, config,
+            thumbnailLoader, shareTranscoder, encoderCapabilities);
     recordingSession.showOverlay();
 
     return START_NOT_STICKY;
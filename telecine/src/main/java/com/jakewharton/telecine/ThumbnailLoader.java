@@ -0,0 +1,236 @@
+package com.jakewharton.telecine;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import timber.log.Timber;
+
+/**
+ * Produces notification-sized thumbnails of recordings. Frames are decoded close to the size they
+ * are displayed at and kept in a memory cache and a disk cache keyed by the recording's URI.
+ */
+final class ThumbnailLoader {
+  private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+  private static final int POOL_BYTES = 1024 * 1024;
+  private static final int MAX_DISK_ENTRIES = 20;
+  private static final int JPEG_QUALITY = 90;
+
+  private final Context context;
+  private final int width;
+  private final int height;
+  private final File diskDir;
+  private final BitmapPool pool = new BitmapPool(POOL_BYTES);
+  private final LruCache<String, Bitmap> memoryCache =
+      new LruCache<String, Bitmap>(MEMORY_CACHE_BYTES) {
+        @Override protected int sizeOf(String key, Bitmap value) {
+          return value.getByteCount();
+        }
+      };
+
+  ThumbnailLoader(Context context) {
+    this.context = context;
+    Resources res = context.getResources();
+    width = res.getDimensionPixelSize(R.dimen.notification_thumbnail_width);
+    height = res.getDimensionPixelSize(R.dimen.notification_thumbnail_height);
+    diskDir = new File(context.getCacheDir(), "thumbnails");
+  }
+
+  /** Load the thumbnail for {@code uri}. Must be called on a background thread. */
+  @Nullable Bitmap load(Uri uri) {
+    String key = uri.toString();
+    Bitmap bitmap = memoryCache.get(key);
+    if (bitmap != null) {
+      return bitmap;
+    }
+
+    File diskFile = new File(diskDir, diskKey(key));
+    bitmap = decode(diskFile);
+    if (bitmap == null) {
+      long startNanos = System.nanoTime();
+      bitmap = createThumbnail(uri);
+      if (bitmap == null) {
+        return null;
+      }
+      Timber.d("Created %sx%s thumbnail in %sms.", bitmap.getWidth(), bitmap.getHeight(),
+          (System.nanoTime() - startNanos) / 1000000);
+      write(bitmap, diskFile);
+    }
+    memoryCache.put(key, bitmap);
+    return bitmap;
+  }
+
+  /** Forget the thumbnail of {@code uri} after the recording behind it was rewritten. */
+  void invalidate(Uri uri) {
+    String key = uri.toString();
+    memoryCache.remove(key);
+    //noinspection ResultOfMethodCallIgnored
+    new File(diskDir, diskKey(key)).delete();
+  }
+
+  /** Draw the centered square of {@code bitmap} into a pooled bitmap of {@code size}. */
+  Bitmap createSquareBitmap(Bitmap bitmap, int size) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    int side = Math.min(width, height);
+    int x = (width - side) / 2;
+    int y = (height - side) / 2;
+    Bitmap square = pool.get(size, size, Bitmap.Config.ARGB_8888);
+    new Canvas(square).drawBitmap(bitmap, new Rect(x, y, x + side, y + side),
+        new Rect(0, 0, size, size), null);
+    return square;
+  }
+
+  /** Return a bitmap from {@link #createSquareBitmap} once it is no longer used. */
+  void release(Bitmap bitmap) {
+    pool.put(bitmap);
+  }
+
+  @Nullable private Bitmap createThumbnail(Uri uri) {
+    // The media provider decodes and stores a small thumbnail out of our process.
+    Bitmap bitmap = null;
+    try {
+      long id = ContentUris.parseId(uri);
+      bitmap = MediaStore.Video.Thumbnails.getThumbnail(context.getContentResolver(), id,
+          MediaStore.Video.Thumbnails.MINI_KIND, null);
+    } catch (RuntimeException e) {
+      Timber.w(e, "Unable to get thumbnail from media store.");
+    }
+    if (bitmap == null) {
+      // Scaled frame retrieval is not available before API 27 so this decodes a full frame.
+      MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+      try {
+        retriever.setDataSource(context, uri);
+        bitmap = retriever.getFrameAtTime();
+      } catch (RuntimeException e) {
+        Timber.w(e, "Unable to retrieve frame.");
+      } finally {
+        retriever.release();
+      }
+    }
+    return bitmap != null ? scaleToFit(bitmap) : null;
+  }
+
+  private Bitmap scaleToFit(Bitmap bitmap) {
+    float scale = Math.min((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+    if (scale >= 1) {
+      return bitmap;
+    }
+    Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * scale),
+        Math.round(bitmap.getHeight() * scale), true);
+    bitmap.recycle();
+    return scaled;
+  }
+
+  @Nullable private Bitmap decode(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(file.getPath(), options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return null;
+    }
+
+    options.inJustDecodeBounds = false;
+    options.inSampleSize =
+        calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+    options.inMutable = true;
+    if (options.inSampleSize == 1) {
+      options.inBitmap =
+          pool.take(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+    }
+    try {
+      return BitmapFactory.decodeFile(file.getPath(), options);
+    } catch (IllegalArgumentException e) {
+      // Thrown when inBitmap cannot be reused for this image.
+      options.inBitmap = null;
+      return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+  }
+
+  private void write(Bitmap bitmap, File file) {
+    if (!diskDir.isDirectory() && !diskDir.mkdirs()) {
+      Timber.w("Unable to create thumbnail cache '%s'.", diskDir);
+      return;
+    }
+    File temp = new File(file.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(temp)) {
+      bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+    } catch (IOException e) {
+      Timber.w(e, "Unable to write thumbnail.");
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+      return;
+    }
+    if (!temp.renameTo(file)) {
+      Timber.w("Unable to rename thumbnail '%s'.", temp);
+      return;
+    }
+    trimDiskCache();
+  }
+
+  private void trimDiskCache() {
+    File[] files = diskDir.listFiles();
+    if (files == null || files.length <= MAX_DISK_ENTRIES) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override public int compare(File lhs, File rhs) {
+        long left = lhs.lastModified();
+        long right = rhs.lastModified();
+        return left < right ? -1 : (left == right ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < files.length - MAX_DISK_ENTRIES; i++) {
+      //noinspection ResultOfMethodCallIgnored
+      files[i].delete();
+    }
+  }
+
+  /**
+   * Largest power of two which, used as {@code inSampleSize}, keeps the decoded image at least as
+   * large as the requested size in both dimensions.
+   */
+  static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /** File name safe cache key for a recording URI. */
+  static String diskKey(String uri) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest(uri.getBytes(Charset.forName("UTF-8")));
+      StringBuilder builder = new StringBuilder(hash.length * 2 + 4);
+      for (byte b : hash) {
+        builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+            .append(Character.forDigit(b & 0xF, 16));
+      }
+      return builder.append(".jpg").toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
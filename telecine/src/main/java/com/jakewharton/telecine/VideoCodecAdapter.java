@@ -0,0 +1,65 @@
+package com.jakewharton.telecine;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import static com.jakewharton.telecine.RecordingConfig.VIDEO_CODEC_H264;
+import static com.jakewharton.telecine.RecordingConfig.VIDEO_CODEC_HEVC;
+
+/** The preferred video codec. HEVC falls back to H.264 where it cannot be used. */
+final class VideoCodecAdapter extends BaseAdapter {
+  public static int getSelectedPosition(int value) {
+    switch (value) {
+      case VIDEO_CODEC_H264:
+        return 0;
+      case VIDEO_CODEC_HEVC:
+        return 1;
+      default:
+        return 0;
+    }
+  }
+
+  private final LayoutInflater inflater;
+
+  VideoCodecAdapter(Context context) {
+    inflater = LayoutInflater.from(context);
+  }
+
+  @Override public int getCount() {
+    return 2;
+  }
+
+  @Override public Integer getItem(int position) {
+    switch (position) {
+      case 0:
+        return VIDEO_CODEC_H264;
+      case 1:
+        return VIDEO_CODEC_HEVC;
+      default:
+        throw new IllegalArgumentException("Unknown position: " + position);
+    }
+  }
+
+  @Override public long getItemId(int position) {
+    return position;
+  }
+
+  @Override public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+    TextView tv = (TextView) convertView;
+    if (tv == null) {
+      tv =
+          (TextView) inflater.inflate(android.R.layout.simple_spinner_dropdown_item, parent, false);
+    }
+
+    tv.setText(getItem(position) == VIDEO_CODEC_HEVC
+        ? R.string.video_codec_hevc
+        : R.string.video_codec_h264);
+
+    return tv;
+  }
+}
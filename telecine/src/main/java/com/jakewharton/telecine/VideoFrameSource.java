@@ -0,0 +1,260 @@
+package com.jakewharton.telecine;
+
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.Nullable;
+import android.view.Surface;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+
+/**
+ * Decodes a video once, in order, and samples its frames at a fixed rate downsampled to at most
+ * {@code maxWidth}. Sampled frames are scaled on the GPU by a {@link CroppingEncoder} into an
+ * {@link ImageReader} at the output size. The rest are dropped by the decoder without being drawn.
+ * <p>
+ * Screen recordings only have frames when the screen changes, so a sample followed by a gap is
+ * shown for the whole gap. Finding the gap means decoding one sample ahead.
+ */
+final class VideoFrameSource implements GifExportPipeline.FrameSource {
+  private static final long TIMEOUT_US = 10000;
+  private static final long FRAME_TIMEOUT_MS = 500;
+
+  private final MediaExtractor extractor = new MediaExtractor();
+  private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+  private final FrameReader reader = new FrameReader();
+  private final long frameIntervalUs;
+  private final int width;
+  private final int height;
+  private CroppingEncoder scaler;
+  private MediaCodec decoder;
+  private boolean inputDone;
+  private boolean outputDone;
+  private long nextTimeUs;
+  /** Samples skipped before the one last decoded since the recording had no frames for them. */
+  private int skipped;
+  /** The sample after the one last returned, decoded to learn how long that one is shown. */
+  private int[] pending;
+  private boolean decodedFirst;
+  private int intervals;
+
+  VideoFrameSource(File file, int frameRate, int maxWidth) throws IOException {
+    frameIntervalUs = TimeUnit.SECONDS.toMicros(1) / frameRate;
+    try {
+      extractor.setDataSource(file.getAbsolutePath());
+      MediaFormat format = selectVideoTrack(extractor);
+      if (format == null) {
+        throw new IOException("No video in " + file);
+      }
+      int videoWidth = format.getInteger(MediaFormat.KEY_WIDTH);
+      int videoHeight = format.getInteger(MediaFormat.KEY_HEIGHT);
+      if (videoWidth > maxWidth) {
+        width = maxWidth;
+        height = Math.max(1, videoHeight * maxWidth / videoWidth);
+      } else {
+        width = videoWidth;
+        height = videoHeight;
+      }
+
+      CroppingEncoder scaler = new CroppingEncoder(reader);
+      scaler.prepare(new RecordingInfo(width, height, frameRate, 0, 0, videoWidth, videoHeight,
+          CropRegion.FULL));
+      this.scaler = scaler;
+      scaler.start();
+
+      decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+      decoder.configure(format, scaler.getInputSurface(), null, 0);
+      decoder.start();
+    } catch (IOException | RuntimeException e) {
+      release();
+      throw e;
+    }
+  }
+
+  @Override public int width() {
+    return width;
+  }
+
+  @Override public int height() {
+    return height;
+  }
+
+  @Nullable @Override public int[] nextFrame() throws IOException {
+    if (!decodedFirst) {
+      decodedFirst = true;
+      pending = decodeNextSample();
+    }
+    int[] frame = pending;
+    if (frame == null) {
+      return null;
+    }
+    pending = decodeNextSample();
+    intervals = pending != null ? skipped + 1 : 1;
+    return frame;
+  }
+
+  @Override public int intervals() {
+    return intervals;
+  }
+
+  void release() {
+    if (decoder != null) {
+      try {
+        decoder.stop();
+      } catch (IllegalStateException ignored) {
+        // Never started.
+      }
+      decoder.release();
+    }
+    if (scaler != null) {
+      scaler.release(); // Also releases the reader.
+    } else {
+      reader.release();
+    }
+    extractor.release();
+  }
+
+  /**
+   * Decode until the first frame at or after the next sample time and read it back. Sets
+   * {@link #skipped} to the samples which fell in the gap before it. Returns null at the end.
+   */
+  @Nullable private int[] decodeNextSample() throws IOException {
+    while (!outputDone) {
+      if (!inputDone) {
+        int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+        if (index >= 0) {
+          int size = extractor.readSampleData(decoder.getInputBuffer(index), 0);
+          if (size < 0) {
+            decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+          } else {
+            decoder.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+          }
+        }
+      }
+
+      int index = decoder.dequeueOutputBuffer(info, TIMEOUT_US);
+      if (index < 0) {
+        continue; // Try again later, or a format or buffers change which rendering handles.
+      }
+      outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+      boolean sample = info.size > 0 && info.presentationTimeUs >= nextTimeUs;
+      decoder.releaseOutputBuffer(index, sample);
+      if (sample) {
+        skipped = samplesBefore(nextTimeUs, info.presentationTimeUs, frameIntervalUs);
+        nextTimeUs += (skipped + 1) * frameIntervalUs;
+        return reader.readFrame(FRAME_TIMEOUT_MS);
+      }
+    }
+    return null;
+  }
+
+  /** The number of samples from {@code sampleTimeUs} onwards which are before {@code timeUs}. */
+  static int samplesBefore(long sampleTimeUs, long timeUs, long intervalUs) {
+    if (timeUs <= sampleTimeUs) {
+      return 0;
+    }
+    return (int) ((timeUs - sampleTimeUs + intervalUs - 1) / intervalUs);
+  }
+
+  /** Convert pixels read as little endian RGBA to opaque ARGB in place. */
+  static void rgbaToArgb(int[] pixels) {
+    for (int i = 0; i < pixels.length; i++) {
+      int abgr = pixels[i];
+      pixels[i] = 0xFF000000 | (abgr & 0x0000FF00) | ((abgr & 0xFF) << 16) | ((abgr >> 16) & 0xFF);
+    }
+  }
+
+  @Nullable private static MediaFormat selectVideoTrack(MediaExtractor extractor) {
+    for (int i = 0; i < extractor.getTrackCount(); i++) {
+      MediaFormat format = extractor.getTrackFormat(i);
+      if (format.getString(MediaFormat.KEY_MIME).startsWith("video/")) {
+        extractor.selectTrack(i);
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /** Stands in for an encoder behind the {@link CroppingEncoder} and reads back what it draws. */
+  private static final class FrameReader implements RecordingEncoder {
+    private final HandlerThread thread = new HandlerThread("telecine-gif-frames");
+    private final Semaphore framesAvailable = new Semaphore(0);
+    private ImageReader imageReader;
+    private int width;
+    private int height;
+
+    @Override public void prepare(RecordingInfo info) {
+      width = info.width;
+      height = info.height;
+      thread.start();
+      imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, 2);
+      imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+        @Override public void onImageAvailable(ImageReader reader) {
+          framesAvailable.release();
+        }
+      }, new Handler(thread.getLooper()));
+    }
+
+    @Override public Surface getInputSurface() {
+      return imageReader.getSurface();
+    }
+
+    @Override public void start() {
+    }
+
+    @Override public void stop() {
+    }
+
+    @Override public boolean setBitRate(int bitRate) {
+      return false;
+    }
+
+    @Override public void release() {
+      if (imageReader != null) {
+        imageReader.close();
+        imageReader = null;
+      }
+      thread.quitSafely();
+    }
+
+    /** Wait for the next drawn frame and return its pixels as ARGB. */
+    int[] readFrame(long timeoutMs) throws IOException {
+      try {
+        if (!framesAvailable.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+          throw new IOException("Frame was not drawn within " + timeoutMs + "ms.");
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      Image image = imageReader.acquireNextImage();
+      try {
+        Image.Plane plane = image.getPlanes()[0];
+        IntBuffer rows = plane.getBuffer().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        int rowStride = plane.getRowStride() / 4;
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+          rows.position(y * rowStride);
+          rows.get(pixels, y * width, width);
+        }
+        rgbaToArgb(pixels);
+        return pixels;
+      } finally {
+        image.close();
+      }
+    }
+  }
+}
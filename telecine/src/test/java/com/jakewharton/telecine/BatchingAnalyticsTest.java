@@ -0,0 +1,69 @@
+package com.jakewharton.telecine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class BatchingAnalyticsTest {
+  private final List<Map<String, String>> sent =
+      Collections.synchronizedList(new ArrayList<Map<String, String>>());
+  private final Analytics delegate = new Analytics() {
+    @Override public void send(Map<String, String> params) {
+      sent.add(params);
+    }
+  };
+
+  @Test public void hitsHeldUntilFlushed() {
+    BatchingAnalytics analytics = new BatchingAnalytics(delegate, 10, 5, 1, TimeUnit.SECONDS);
+    Map<String, String> first = Collections.singletonMap("a", "1");
+    Map<String, String> second = Collections.singletonMap("b", "2");
+    analytics.send(first);
+    analytics.send(second);
+    assertThat(sent).isEmpty();
+
+    assertThat(analytics.flush()).isEqualTo(2);
+    assertThat(sent).containsExactly(first, second).inOrder();
+    assertThat(analytics.flush()).isEqualTo(0);
+  }
+
+  @Test public void fullQueueDropsAndCounts() {
+    BatchingAnalytics analytics = new BatchingAnalytics(delegate, 3, 5, 1, TimeUnit.SECONDS);
+    for (int i = 0; i < 5; i++) {
+      analytics.send(Collections.singletonMap("i", String.valueOf(i)));
+    }
+    assertThat(analytics.droppedCount()).isEqualTo(2);
+    assertThat(analytics.flush()).isEqualTo(3);
+
+    // Space frees up once the queue has been flushed.
+    analytics.send(Collections.singletonMap("i", "5"));
+    assertThat(analytics.flush()).isEqualTo(1);
+    assertThat(analytics.droppedCount()).isEqualTo(2);
+  }
+
+  @Test public void concurrentSendersNeverExceedCapacity() throws InterruptedException {
+    final BatchingAnalytics analytics =
+        new BatchingAnalytics(delegate, 100, 1000, 1, TimeUnit.SECONDS);
+    final Map<String, String> hit = Collections.singletonMap("a", "1");
+    final CountDownLatch done = new CountDownLatch(4);
+    for (int t = 0; t < 4; t++) {
+      new Thread(new Runnable() {
+        @Override public void run() {
+          for (int i = 0; i < 1000; i++) {
+            analytics.send(hit);
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(analytics.flush()).isEqualTo(100);
+    assertThat(analytics.droppedCount()).isEqualTo(3900);
+  }
+}
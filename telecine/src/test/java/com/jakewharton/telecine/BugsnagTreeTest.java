@@ -0,0 +1,53 @@
+package com.jakewharton.telecine;
+
+import android.util.Log;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class BugsnagTreeTest {
+  @Test public void keepsNewestMessagesInOrder() {
+    BugsnagTree tree = new BugsnagTree();
+    for (int i = 0; i < 300; i++) {
+      tree.log(Log.INFO, null, "message " + i, null);
+    }
+
+    String[] snapshot = tree.snapshot();
+    assertThat(snapshot).hasLength(200);
+    assertThat(snapshot[0]).endsWith(" I message 100");
+    assertThat(snapshot[199]).endsWith(" I message 299");
+    assertThat(snapshot[199]).matches("\\d+ I message 299");
+  }
+
+  @Test public void empty() {
+    assertThat(new BugsnagTree().snapshot()).isEmpty();
+  }
+
+  @Test public void concurrentWritersNeverTearEntries() throws InterruptedException {
+    final BugsnagTree tree = new BugsnagTree();
+    final int threads = 4;
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      final int priority = Log.DEBUG + t;
+      final String name = "thread" + t;
+      new Thread(new Runnable() {
+        @Override public void run() {
+          for (int i = 0; i < 20000; i++) {
+            tree.log(priority, null, name, null);
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+
+    while (!done.await(1, TimeUnit.MILLISECONDS)) {
+      for (String entry : tree.snapshot()) {
+        // Each thread pairs one priority with one message.
+        assertThat(entry).matches("\\d+ (D thread0|I thread1|W thread2|E thread3)");
+      }
+    }
+    assertThat(tree.snapshot()).hasLength(200);
+  }
+}
@@ -0,0 +1,68 @@
+package com.jakewharton.telecine;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class CodecProfileTest {
+  private static final String AVC = "video/avc";
+  private static final String HEVC = "video/hevc";
+
+  @Test public void codecNames() {
+    assertThat(CodecProfile.codecName(AVC)).isEqualTo("H.264");
+    assertThat(CodecProfile.codecName(HEVC)).isEqualTo("HEVC");
+    assertThat(CodecProfile.codecName("video/x-vnd.on2.vp8")).isEqualTo("video/x-vnd.on2.vp8");
+  }
+
+  @Test public void avcProfileFromSps() {
+    // Start code, SPS NAL header, profile_idc, constraint flags, level_idc.
+    assertThat(CodecProfile.profileName(AVC, bytes(0, 0, 0, 1, 0x67, 66, 0xC0, 31)))
+        .isEqualTo("Baseline");
+    assertThat(CodecProfile.profileName(AVC, bytes(0, 0, 0, 1, 0x67, 100, 0, 40)))
+        .isEqualTo("High");
+    assertThat(CodecProfile.profileName(AVC, bytes(0, 0, 1, 0x67, 77, 0, 40))).isEqualTo("Main");
+  }
+
+  @Test public void hevcProfileFromVps() {
+    // Start code, VPS NAL header, four bytes of VPS fields, then profile_tier_level.
+    ByteBuffer vps = bytes(0, 0, 0, 1, 0x40, 0x01, 0x0C, 0x01, 0xFF, 0xFF, 0x01, 0x60);
+    assertThat(CodecProfile.profileName(HEVC, vps)).isEqualTo("Main");
+    ByteBuffer main10 = bytes(0, 0, 0, 1, 0x40, 0x01, 0x0C, 0x01, 0xFF, 0xFF, 0x02, 0x20);
+    assertThat(CodecProfile.profileName(HEVC, main10)).isEqualTo("Main 10");
+  }
+
+  @Test public void hevcProfileFromSps() {
+    // Start code, SPS NAL header, one byte of SPS fields, then profile_tier_level.
+    ByteBuffer sps = bytes(0, 0, 0, 1, 0x42, 0x01, 0x01, 0x01, 0x60);
+    assertThat(CodecProfile.profileName(HEVC, sps)).isEqualTo("Main");
+  }
+
+  @Test public void unknownProfileIsNumbered() {
+    assertThat(CodecProfile.profileName(AVC, bytes(0, 0, 0, 1, 0x67, 42, 0, 0)))
+        .isEqualTo("profile 42");
+  }
+
+  @Test public void malformedDataHasNoProfile() {
+    assertThat(CodecProfile.profileName(AVC, bytes(0x67, 100, 0, 40))).isNull();
+    assertThat(CodecProfile.profileName(AVC, bytes(0, 0, 0, 1, 0x67))).isNull();
+    assertThat(CodecProfile.profileName(HEVC, bytes(0, 0, 0, 1, 0x26, 0x01, 0x00))).isNull();
+    assertThat(CodecProfile.profileName(HEVC, bytes(0, 0, 0, 1, 0x40, 0x01))).isNull();
+    assertThat(CodecProfile.profileName("video/x-vnd.on2.vp8", bytes(0, 0, 0, 1, 0))).isNull();
+  }
+
+  @Test public void bufferPositionIsUnchanged() {
+    ByteBuffer sps = bytes(0, 0, 0, 1, 0x67, 100, 0, 40);
+    CodecProfile.profileName(AVC, sps);
+    assertThat(sps.position()).isEqualTo(0);
+  }
+
+  private static ByteBuffer bytes(int... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length);
+    for (int value : values) {
+      buffer.put((byte) value);
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,61 @@
+package com.jakewharton.telecine;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.jakewharton.telecine.ColorQuantizer.IndexedFrame;
+
+public final class ColorQuantizerTest {
+  private final ColorQuantizer quantizer = new ColorQuantizer();
+
+  @Test public void fewColorsAreKeptExactly() {
+    int[] pixels = { 0xffff0000, 0xff00ff00, 0xff0000ff, 0xffff0000 };
+    IndexedFrame frame = quantizer.quantize(pixels, 2, 2);
+
+    assertThat(frame.palette.length).isEqualTo(3);
+    for (int i = 0; i < pixels.length; i++) {
+      assertThat(frame.palette[frame.indices[i] & 0xff]).isEqualTo(pixels[i] & 0xffffff);
+    }
+  }
+
+  @Test public void manyColorsReduceToPalette() {
+    int width = 256;
+    int height = 256;
+    int[] pixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels[y * width + x] = 0xff000000 | x << 16 | y << 8 | (x + y) / 2;
+      }
+    }
+    IndexedFrame frame = quantizer.quantize(pixels, width, height);
+
+    assertThat(frame.palette.length).isEqualTo(ColorQuantizer.MAX_COLORS);
+    // Every pixel should land on a nearby color.
+    long error = 0;
+    for (int i = 0; i < pixels.length; i++) {
+      int expected = pixels[i];
+      int actual = frame.palette[frame.indices[i] & 0xff];
+      error += Math.abs(((expected >> 16) & 0xff) - ((actual >> 16) & 0xff));
+      error += Math.abs(((expected >> 8) & 0xff) - ((actual >> 8) & 0xff));
+      error += Math.abs((expected & 0xff) - (actual & 0xff));
+    }
+    assertThat(error / pixels.length).isLessThan(24L);
+  }
+
+  @Test public void reusableAcrossFrames() {
+    Random random = new Random(1);
+    int[] noise = new int[64 * 64];
+    for (int i = 0; i < noise.length; i++) {
+      noise[i] = random.nextInt();
+    }
+    quantizer.quantize(noise, 64, 64);
+
+    int[] solid = new int[16];
+    Arrays.fill(solid, 0xff123456);
+    IndexedFrame frame = quantizer.quantize(solid, 4, 4);
+    assertThat(frame.palette.length).isEqualTo(1);
+    assertThat(frame.indices).isEqualTo(new byte[16]);
+  }
+}
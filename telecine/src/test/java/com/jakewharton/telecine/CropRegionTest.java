@@ -0,0 +1,33 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class CropRegionTest {
+  @Test public void fromPixelsNormalizesCorners() {
+    CropRegion region = CropRegion.fromPixels(540, 1440, 108, 480, 1080, 1920);
+    assertThat(region).isEqualTo(new CropRegion(0.1f, 0.25f, 0.5f, 0.75f));
+  }
+
+  @Test public void fromPixelsClampsToScreen() {
+    CropRegion region = CropRegion.fromPixels(-100, -100, 540, 960, 1080, 1920);
+    assertThat(region).isEqualTo(new CropRegion(0, 0, 0.5f, 0.5f));
+  }
+
+  @Test public void tinySelectionIsFull() {
+    CropRegion region = CropRegion.fromPixels(100, 100, 150, 1000, 1080, 1920);
+    assertThat(region.isFull()).isTrue();
+  }
+
+  @Test public void flattenRoundTrip() {
+    CropRegion region = new CropRegion(0.125f, 0.25f, 0.5f, 0.75f);
+    assertThat(CropRegion.unflatten(region.flatten())).isEqualTo(region);
+  }
+
+  @Test public void malformedIsFull() {
+    assertThat(CropRegion.unflatten(null)).isEqualTo(CropRegion.FULL);
+    assertThat(CropRegion.unflatten("")).isEqualTo(CropRegion.FULL);
+    assertThat(CropRegion.unflatten("0,0,a,1")).isEqualTo(CropRegion.FULL);
+  }
+}
@@ -0,0 +1,27 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class CroppingEncoderTest {
+  @Test public void fullRegionCoversTexture() {
+    assertThat(CroppingEncoder.texCoordsFor(CropRegion.FULL)).isEqualTo(new float[] {
+        0, 0,
+        1, 0,
+        0, 1,
+        1, 1,
+    }, 0);
+  }
+
+  @Test public void regionIsFlippedIntoTextureSpace() {
+    // The top quarter of the screen is the top quarter of the texture, which starts at the bottom.
+    CropRegion region = new CropRegion(0.5f, 0, 1, 0.25f);
+    assertThat(CroppingEncoder.texCoordsFor(region)).isEqualTo(new float[] {
+        0.5f, 0.75f,
+        1, 0.75f,
+        0.5f, 1,
+        1, 1,
+    }, 0);
+  }
+}
@@ -0,0 +1,123 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class EncoderCapabilitiesTest {
+  private static final String AVC = "video/avc";
+
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  private final CountingProber prober = new CountingProber();
+
+  @Test public void probedOnceAndSaved() {
+    File file = new File(temp.getRoot(), "encoders");
+    EncoderCapabilities capabilities = new EncoderCapabilities(file, "build1", prober);
+    assertThat(capabilities.get(AVC).name).isEqualTo("OMX.test.avc");
+    assertThat(capabilities.get(AVC).name).isEqualTo("OMX.test.avc");
+    assertThat(prober.count).isEqualTo(1);
+    assertThat(file.exists()).isTrue();
+  }
+
+  @Test public void savedCapabilitiesAreReadBack() {
+    File file = new File(temp.getRoot(), "encoders");
+    new EncoderCapabilities(file, "build1", prober).get(AVC);
+
+    EncoderCapabilities.Encoder encoder = new EncoderCapabilities(file, "build1", prober).get(AVC);
+    assertThat(prober.count).isEqualTo(1);
+    assertThat(encoder.name).isEqualTo("OMX.test.avc");
+    assertThat(encoder.mimeType).isEqualTo(AVC);
+    assertThat(encoder.hardware).isTrue();
+    assertThat(encoder.profiles).isEqualTo(new int[] { 1, 2, 8 });
+    EncoderLimits limits = encoder.limits;
+    assertThat(limits.minBitRate).isEqualTo(64000);
+    assertThat(limits.maxBitRate).isEqualTo(40000000);
+    assertThat(limits.maxWidth).isEqualTo(1920);
+    assertThat(limits.maxHeight).isEqualTo(1088);
+    assertThat(limits.maxFrameRate).isEqualTo(60);
+    assertThat(limits.widthAlignment).isEqualTo(16);
+    assertThat(limits.heightAlignment).isEqualTo(16);
+  }
+
+  @Test public void differentBuildProbesAgain() {
+    File file = new File(temp.getRoot(), "encoders");
+    new EncoderCapabilities(file, "build1", prober).get(AVC);
+    new EncoderCapabilities(file, "build2", prober).get(AVC);
+    assertThat(prober.count).isEqualTo(2);
+  }
+
+  @Test public void malformedFileProbesAgain() throws IOException {
+    File file = new File(temp.getRoot(), "encoders");
+    new EncoderCapabilities(file, "build1", prober).get(AVC);
+    String contents = new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+    Files.write(file.toPath(),
+        contents.replaceAll("maxSize=.*", "maxSize=1920").getBytes(Charset.forName("UTF-8")));
+
+    EncoderCapabilities.Encoder encoder = new EncoderCapabilities(file, "build1", prober).get(AVC);
+    assertThat(prober.count).isEqualTo(2);
+    assertThat(encoder.limits.maxHeight).isEqualTo(1088);
+  }
+
+  @Test public void missingEncoderIsNull() {
+    File file = new File(temp.getRoot(), "encoders");
+    new EncoderCapabilities(file, "build1", prober).get(AVC);
+    EncoderCapabilities capabilities = new EncoderCapabilities(file, "build1", prober);
+    assertThat(capabilities.get("video/hevc")).isNull();
+  }
+
+  @Test public void noEncodersIsSaved() {
+    File file = new File(temp.getRoot(), "encoders");
+    EncoderCapabilities.Prober empty = new EncoderCapabilities.Prober() {
+      @Override public List<EncoderCapabilities.Encoder> probe() {
+        return Collections.emptyList();
+      }
+    };
+    assertThat(new EncoderCapabilities(file, "build1", empty).get(AVC)).isNull();
+    assertThat(new EncoderCapabilities(file, "build1", prober).get(AVC)).isNull();
+    assertThat(prober.count).isEqualTo(0);
+  }
+
+  @Test public void loadInBackgroundProbes() {
+    File file = new File(temp.getRoot(), "encoders");
+    EncoderCapabilities capabilities = new EncoderCapabilities(file, "build1", prober);
+    capabilities.loadInBackground(new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    });
+    assertThat(prober.count).isEqualTo(1);
+    capabilities.get(AVC);
+    assertThat(prober.count).isEqualTo(1);
+  }
+
+  @Test public void softwareEncodersAreNotHardware() {
+    assertThat(EncoderCapabilities.MediaCodecProber.isHardware("OMX.google.h264.encoder"))
+        .isFalse();
+    assertThat(EncoderCapabilities.MediaCodecProber.isHardware("c2.android.avc.encoder"))
+        .isFalse();
+    assertThat(EncoderCapabilities.MediaCodecProber.isHardware("OMX.qcom.video.encoder.avc"))
+        .isTrue();
+  }
+
+  private static final class CountingProber implements EncoderCapabilities.Prober {
+    int count;
+
+    @Override public List<EncoderCapabilities.Encoder> probe() {
+      count++;
+      EncoderLimits limits = new EncoderLimits(64000, 40000000, 1920, 1088, 60, 16, 16);
+      return Collections.singletonList(
+          new EncoderCapabilities.Encoder("OMX.test.avc", AVC, true, new int[] { 1, 2, 8 },
+              limits));
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package com.jakewharton.telecine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class FastStartTest {
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final byte[] FTYP = box("ftyp", "isom".getBytes(ASCII), new byte[4]);
+
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  @Test public void alreadyFastStartIsUntouched() throws IOException {
+    byte[] mdat = mdat(100);
+    long dataOffset = FTYP.length + moov("stco", 0).length + 8;
+    File file = write(FTYP, moov("stco", dataOffset), mdat);
+    long before = file.length();
+
+    assertThat(FastStart.process(file)).isFalse();
+    assertThat(file.length()).isEqualTo(before);
+  }
+
+  @Test public void moovAtEndIsMovedAheadOfMdat() throws IOException {
+    byte[] mdat = mdat(1000);
+    long dataOffset = FTYP.length + 8;
+    byte[] moov = moov("stco", dataOffset, dataOffset + 500);
+    File file = write(FTYP, mdat, moov);
+
+    assertThat(FastStart.process(file)).isTrue();
+
+    assertThat(types(file)).containsExactly("ftyp", "moov", "mdat").inOrder();
+    assertThat(file.length()).isEqualTo((long) FTYP.length + mdat.length + moov.length);
+    long[] offsets = chunkOffsets(file);
+    assertThat(offsets).asList().containsExactly(dataOffset + moov.length,
+        dataOffset + 500 + moov.length).inOrder();
+    assertThat(readByte(file, offsets[0])).isEqualTo((byte) 0);
+    assertThat(readByte(file, offsets[1])).isEqualTo((byte) (500 % 251));
+  }
+
+  @Test public void co64OffsetsArePatched() throws IOException {
+    byte[] mdat = mdat(300);
+    long dataOffset = FTYP.length + 8;
+    byte[] moov = moov("co64", dataOffset + 250);
+    File file = write(FTYP, mdat, moov);
+
+    assertThat(FastStart.process(file)).isTrue();
+
+    long[] offsets = chunkOffsets(file);
+    assertThat(offsets).asList().containsExactly(dataOffset + 250 + moov.length);
+    assertThat(readByte(file, offsets[0])).isEqualTo((byte) 250);
+  }
+
+  @Test public void reservedFreeSpaceIsUsedInPlace() throws IOException {
+    byte[] mdat = mdat(1000);
+    byte[] moovProbe = moov("stco", 0);
+    byte[] free = box("free", new byte[moovProbe.length + 100 - 8]);
+    long dataOffset = FTYP.length + free.length + 8;
+    byte[] moov = moov("stco", dataOffset + 10);
+    File file = write(FTYP, free, mdat, moov);
+
+    assertThat(FastStart.process(file)).isTrue();
+
+    assertThat(types(file)).containsExactly("ftyp", "moov", "free", "mdat").inOrder();
+    assertThat(file.length()).isEqualTo((long) FTYP.length + free.length + mdat.length);
+    // Media data did not move so neither did the offsets.
+    assertThat(chunkOffsets(file)).asList().containsExactly(dataOffset + 10);
+  }
+
+  @Test public void reservedFreeSpaceExactFit() throws IOException {
+    byte[] mdat = mdat(10);
+    byte[] moovProbe = moov("stco", 0);
+    byte[] free = box("free", new byte[moovProbe.length - 8]);
+    long dataOffset = FTYP.length + free.length + 8;
+    File file = write(FTYP, free, mdat, moov("stco", dataOffset));
+
+    assertThat(FastStart.process(file)).isTrue();
+
+    assertThat(types(file)).containsExactly("ftyp", "moov", "mdat").inOrder();
+    assertThat(chunkOffsets(file)).asList().containsExactly(dataOffset);
+  }
+
+  @Test public void tooSmallFreeSpaceIsIgnored() throws IOException {
+    byte[] mdat = mdat(10);
+    byte[] free = box("free", new byte[4]);
+    long dataOffset = FTYP.length + free.length + 8;
+    byte[] moov = moov("stco", dataOffset);
+    File file = write(FTYP, free, mdat, moov);
+
+    assertThat(FastStart.process(file)).isTrue();
+
+    assertThat(types(file)).containsExactly("ftyp", "free", "moov", "mdat").inOrder();
+    assertThat(chunkOffsets(file)).asList().containsExactly(dataOffset + moov.length);
+  }
+
+  @Test public void missingMoovThrows() throws IOException {
+    File file = write(FTYP, mdat(10));
+    try {
+      FastStart.process(file);
+      throw new AssertionError();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("Missing moov");
+    }
+  }
+
+  private File write(byte[]... boxes) throws IOException {
+    File file = new File(temp.getRoot(), "test.mp4");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      for (byte[] box : boxes) {
+        out.write(box);
+      }
+    }
+    return file;
+  }
+
+  private static List<String> types(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      List<Mp4Box> boxes = Mp4Box.scan(raf.getChannel());
+      String[] types = new String[boxes.size()];
+      for (int i = 0; i < types.length; i++) {
+        types[i] = boxes.get(i).type;
+      }
+      return Arrays.asList(types);
+    }
+  }
+
+  private static long[] chunkOffsets(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      Mp4Box moov = Mp4Box.find(Mp4Box.scan(channel), "moov");
+      ByteBuffer bytes = FastStart.readMovieBox(channel, moov, Long.MAX_VALUE, 0);
+      // Skip the moov, trak, mdia, minf, and stbl headers to reach the chunk offset box.
+      bytes.position(5 * 8);
+      bytes.getInt(); // size
+      byte[] type = new byte[4];
+      bytes.get(type);
+      boolean is64Bit = "co64".equals(new String(type, ASCII));
+      bytes.getInt(); // version and flags
+      long[] offsets = new long[bytes.getInt()];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = is64Bit ? bytes.getLong() : bytes.getInt() & 0xFFFFFFFFL;
+      }
+      return offsets;
+    }
+  }
+
+  private static byte readByte(File file, long position) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      raf.seek(position);
+      return raf.readByte();
+    }
+  }
+
+  /** An mdat whose payload byte at index {@code i} is {@code i % 251}. */
+  private static byte[] mdat(int size) {
+    byte[] payload = new byte[size];
+    for (int i = 0; i < size; i++) {
+      payload[i] = (byte) (i % 251);
+    }
+    return box("mdat", payload);
+  }
+
+  private static byte[] moov(String chunkOffsetType, long... offsets) {
+    boolean is64Bit = "co64".equals(chunkOffsetType);
+    ByteBuffer content = ByteBuffer.allocate(8 + offsets.length * (is64Bit ? 8 : 4));
+    content.putInt(0).putInt(offsets.length);
+    for (long offset : offsets) {
+      if (is64Bit) {
+        content.putLong(offset);
+      } else {
+        content.putInt((int) offset);
+      }
+    }
+    byte[] box = box(chunkOffsetType, content.array());
+    for (String container : new String[] { "stbl", "minf", "mdia", "trak", "moov" }) {
+      box = box(container, box);
+    }
+    return box;
+  }
+
+  private static byte[] box(String type, byte[]... contents) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int size = 8;
+    for (byte[] content : contents) {
+      size += content.length;
+    }
+    ByteBuffer header = ByteBuffer.allocate(8).putInt(size).put(type.getBytes(ASCII));
+    out.write(header.array(), 0, 8);
+    for (byte[] content : contents) {
+      out.write(content, 0, content.length);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,85 @@
+package com.jakewharton.telecine;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.jakewharton.telecine.ColorQuantizer.IndexedFrame;
+
+public final class GifEncoderTest {
+  @Test public void tableBits() {
+    assertThat(GifEncoder.tableBits(1)).isEqualTo(1);
+    assertThat(GifEncoder.tableBits(2)).isEqualTo(1);
+    assertThat(GifEncoder.tableBits(3)).isEqualTo(2);
+    assertThat(GifEncoder.tableBits(256)).isEqualTo(8);
+  }
+
+  @Test public void framesDecode() throws IOException {
+    int width = 97;
+    int height = 61;
+    Random random = new Random(2);
+    IndexedFrame[] frames = new IndexedFrame[3];
+    for (int f = 0; f < frames.length; f++) {
+      int[] palette = new int[256];
+      for (int i = 0; i < palette.length; i++) {
+        palette[i] = random.nextInt() & 0xffffff;
+      }
+      byte[] indices = new byte[width * height];
+      for (int i = 0; i < indices.length; i++) {
+        // Runs of repeated indices exercise the dictionary, noise forces table resets.
+        indices[i] = (byte) (f == 1 ? random.nextInt(256) : (i / 7) % 256);
+      }
+      frames[f] = new IndexedFrame(width, height, indices, palette);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GifEncoder encoder = new GifEncoder(out, width, height);
+    for (IndexedFrame frame : frames) {
+      encoder.writeFrame(GifEncoder.encodeFrame(frame, 10));
+    }
+    encoder.finish();
+
+    ImageReader reader = gifReader(out.toByteArray());
+    assertThat(reader.getNumImages(true)).isEqualTo(frames.length);
+    for (int f = 0; f < frames.length; f++) {
+      BufferedImage image = reader.read(f);
+      assertThat(image.getWidth()).isEqualTo(width);
+      assertThat(image.getHeight()).isEqualTo(height);
+      IndexedFrame frame = frames[f];
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int expected = frame.palette[frame.indices[y * width + x] & 0xff];
+          assertThat(image.getRGB(x, y) & 0xffffff).isEqualTo(expected);
+        }
+      }
+    }
+  }
+
+  @Test public void smallPaletteDecodes() throws IOException {
+    IndexedFrame frame =
+        new IndexedFrame(3, 1, new byte[] { 0, 0, 0 }, new int[] { 0xabcdef });
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GifEncoder encoder = new GifEncoder(out, 3, 1);
+    encoder.writeFrame(GifEncoder.encodeFrame(frame, 10));
+    encoder.finish();
+
+    BufferedImage image = gifReader(out.toByteArray()).read(0);
+    assertThat(image.getRGB(2, 0) & 0xffffff).isEqualTo(0xabcdef);
+  }
+
+  static ImageReader gifReader(byte[] gif) throws IOException {
+    ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(gif));
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+    ImageReader reader = readers.next();
+    reader.setInput(input);
+    return reader;
+  }
+}
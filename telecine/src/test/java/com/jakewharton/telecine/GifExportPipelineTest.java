@@ -0,0 +1,105 @@
+package com.jakewharton.telecine;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import org.junit.After;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class GifExportPipelineTest {
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  /** Each frame is one solid gray level so its position in the output is easy to verify. */
+  static final class SolidFrames implements GifExportPipeline.FrameSource {
+    final int count;
+    /** How many intervals each frame is shown for, by index. Defaults to 1. */
+    final int[] intervals;
+    int next;
+
+    SolidFrames(int count, int... intervals) {
+      this.count = count;
+      this.intervals = intervals;
+    }
+
+    @Override public int width() {
+      return 8;
+    }
+
+    @Override public int height() {
+      return 4;
+    }
+
+    @Override public int[] nextFrame() {
+      if (next == count) {
+        return null;
+      }
+      int gray = gray(next++);
+      int[] pixels = new int[32];
+      Arrays.fill(pixels, 0xff000000 | gray << 16 | gray << 8 | gray);
+      return pixels;
+    }
+
+    @Override public int intervals() {
+      int index = next - 1;
+      return index < intervals.length ? intervals[index] : 1;
+    }
+  }
+
+  /** A gray level which survives the quantizer's 5-bit channels unchanged. */
+  static int gray(int level) {
+    return level << 3 | level >> 2;
+  }
+
+  @Test public void framesWrittenInOrder() throws IOException {
+    SolidFrames source = new SolidFrames(20);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int frames = new GifExportPipeline(pool, 3).export(source, out, 10);
+    assertThat(frames).isEqualTo(20);
+
+    ImageReader reader = GifEncoderTest.gifReader(out.toByteArray());
+    assertThat(reader.getNumImages(true)).isEqualTo(20);
+    for (int i = 0; i < 20; i++) {
+      BufferedImage image = reader.read(i);
+      int gray = gray(i);
+      assertThat(image.getRGB(3, 2) & 0xffffff).isEqualTo(gray << 16 | gray << 8 | gray);
+    }
+  }
+
+  @Test public void intervalsLengthenFrameDelay() throws IOException {
+    SolidFrames source = new SolidFrames(3, 1, 25, 1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int frames = new GifExportPipeline(pool, 3).export(source, out, 10);
+    assertThat(frames).isEqualTo(3);
+
+    ImageReader reader = GifEncoderTest.gifReader(out.toByteArray());
+    assertThat(reader.getNumImages(true)).isEqualTo(3);
+    assertThat(delayCentis(reader, 0)).isEqualTo(10);
+    assertThat(delayCentis(reader, 1)).isEqualTo(250);
+    assertThat(delayCentis(reader, 2)).isEqualTo(10);
+  }
+
+  private static int delayCentis(ImageReader reader, int index) throws IOException {
+    IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(index)
+        .getAsTree("javax_imageio_gif_image_1.0");
+    IIOMetadataNode control =
+        (IIOMetadataNode) root.getElementsByTagName("GraphicControlExtension").item(0);
+    return Integer.parseInt(control.getAttribute("delayTime"));
+  }
+
+  @Test public void noFramesIsStillAGif() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int frames = new GifExportPipeline(pool, 3).export(new SolidFrames(0), out, 10);
+    assertThat(frames).isEqualTo(0);
+    assertThat(new String(out.toByteArray(), 0, 6, "US-ASCII")).isEqualTo("GIF89a");
+  }
+}
@@ -0,0 +1,45 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class HistogramTest {
+  @Test public void empty() {
+    Histogram histogram = new Histogram();
+    assertThat(histogram.count()).isEqualTo(0);
+    assertThat(histogram.min()).isEqualTo(0);
+    assertThat(histogram.mean()).isEqualTo(0);
+    assertThat(histogram.percentile(0.5)).isEqualTo(0);
+  }
+
+  @Test public void exactSummary() {
+    Histogram histogram = new Histogram();
+    histogram.record(10);
+    histogram.record(20);
+    histogram.record(30);
+    assertThat(histogram.count()).isEqualTo(3);
+    assertThat(histogram.min()).isEqualTo(10);
+    assertThat(histogram.max()).isEqualTo(30);
+    assertThat(histogram.mean()).isEqualTo(20);
+  }
+
+  @Test public void percentilesWithinFactorOfTwo() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000);
+    }
+    long p50 = histogram.percentile(0.5);
+    assertThat(p50).isAtLeast(50000L);
+    assertThat(p50).isAtMost(100000L);
+    assertThat(histogram.percentile(1)).isEqualTo(100000);
+    assertThat(histogram.percentile(0.01)).isAtMost(2000L);
+  }
+
+  @Test public void negativeValuesClampedToZero() {
+    Histogram histogram = new Histogram();
+    histogram.record(-5);
+    assertThat(histogram.min()).isEqualTo(0);
+    assertThat(histogram.percentile(0.5)).isEqualTo(0);
+  }
+}
@@ -0,0 +1,118 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.jakewharton.telecine.QualityController.Reason.CRITICAL_TEMPERATURE;
+import static com.jakewharton.telecine.QualityController.Reason.ENCODER_BEHIND;
+import static com.jakewharton.telecine.QualityController.Reason.HOT;
+import static com.jakewharton.telecine.QualityController.Reason.RECOVERED;
+
+public final class QualityControllerTest {
+  private static final int BIT_RATE = 8000000;
+  /** At 25 fps a frame interval is 40ms. */
+  private static final int FRAME_RATE = 25;
+  private static final long ON_TIME_US = 20000;
+  private static final long BEHIND_US = 200000;
+  private static final float NORMAL = 30;
+  private static final float UNKNOWN = Float.NaN;
+
+  private final QualityController controller = new QualityController(BIT_RATE, FRAME_RATE);
+
+  @Test public void startsAtFullQuality() {
+    assertThat(controller.level()).isEqualTo(0);
+    assertThat(controller.bitRate()).isEqualTo(BIT_RATE);
+  }
+
+  @Test public void healthyWindowsChangeNothing() {
+    for (int i = 0; i < 20; i++) {
+      assertThat(controller.onWindow(50, ON_TIME_US, NORMAL)).isNull();
+    }
+    assertThat(controller.level()).isEqualTo(0);
+  }
+
+  @Test public void encoderBehindStepsDownAfterTwoWindows() {
+    assertThat(controller.onWindow(30, BEHIND_US, NORMAL)).isNull();
+    assertThat(controller.onWindow(30, BEHIND_US, NORMAL)).isEqualTo(ENCODER_BEHIND);
+    assertThat(controller.level()).isEqualTo(1);
+    assertThat(controller.bitRate()).isEqualTo(6000000);
+  }
+
+  @Test public void singleSlowWindowIsIgnored() {
+    assertThat(controller.onWindow(30, BEHIND_US, NORMAL)).isNull();
+    assertThat(controller.onWindow(50, ON_TIME_US, NORMAL)).isNull();
+    assertThat(controller.onWindow(30, BEHIND_US, NORMAL)).isNull();
+    assertThat(controller.level()).isEqualTo(0);
+  }
+
+  @Test public void idleWindowIsNotBehind() {
+    assertThat(controller.onWindow(0, 0, NORMAL)).isNull();
+    assertThat(controller.onWindow(0, 0, NORMAL)).isNull();
+    assertThat(controller.level()).isEqualTo(0);
+  }
+
+  @Test public void hotStepsDown() {
+    assertThat(controller.onWindow(50, ON_TIME_US, 43)).isNull();
+    assertThat(controller.onWindow(50, ON_TIME_US, 43)).isEqualTo(HOT);
+    assertThat(controller.level()).isEqualTo(1);
+  }
+
+  @Test public void criticalStepsDownImmediately() {
+    assertThat(controller.onWindow(50, ON_TIME_US, 46)).isEqualTo(CRITICAL_TEMPERATURE);
+    assertThat(controller.onWindow(50, ON_TIME_US, 46)).isEqualTo(CRITICAL_TEMPERATURE);
+    assertThat(controller.level()).isEqualTo(2);
+  }
+
+  @Test public void neverStepsBelowLowestLevel() {
+    for (int i = 0; i < 20; i++) {
+      controller.onWindow(30, BEHIND_US, 50);
+    }
+    assertThat(controller.level()).isEqualTo(QualityController.BIT_RATE_FACTORS.length - 1);
+    assertThat(controller.bitRate()).isEqualTo(2800000);
+    assertThat(controller.onWindow(30, BEHIND_US, 50)).isNull();
+  }
+
+  @Test public void recoversAfterFiveHealthyWindows() {
+    controller.onWindow(30, BEHIND_US, NORMAL);
+    controller.onWindow(30, BEHIND_US, NORMAL);
+    assertThat(controller.level()).isEqualTo(1);
+
+    for (int i = 0; i < QualityController.STEP_UP_WINDOWS - 1; i++) {
+      assertThat(controller.onWindow(50, ON_TIME_US, UNKNOWN)).isNull();
+    }
+    assertThat(controller.onWindow(50, ON_TIME_US, UNKNOWN)).isEqualTo(RECOVERED);
+    assertThat(controller.level()).isEqualTo(0);
+    assertThat(controller.bitRate()).isEqualTo(BIT_RATE);
+  }
+
+  @Test public void warmDoesNotRecover() {
+    controller.onWindow(50, ON_TIME_US, 46);
+    assertThat(controller.level()).isEqualTo(1);
+    // Between the cool and hot thresholds nothing changes in either direction.
+    for (int i = 0; i < 20; i++) {
+      assertThat(controller.onWindow(50, ON_TIME_US, 40)).isNull();
+    }
+    assertThat(controller.level()).isEqualTo(1);
+  }
+
+  @Test public void delayBetweenThresholdsDoesNotRecover() {
+    controller.onWindow(30, BEHIND_US, NORMAL);
+    controller.onWindow(30, BEHIND_US, NORMAL);
+    // Two intervals of delay is neither behind nor caught up.
+    for (int i = 0; i < 20; i++) {
+      assertThat(controller.onWindow(50, 80000, NORMAL)).isNull();
+    }
+    assertThat(controller.level()).isEqualTo(1);
+  }
+
+  @Test public void stressResetsRecovery() {
+    controller.onWindow(30, BEHIND_US, NORMAL);
+    controller.onWindow(30, BEHIND_US, NORMAL);
+    for (int i = 0; i < QualityController.STEP_UP_WINDOWS - 1; i++) {
+      controller.onWindow(50, ON_TIME_US, NORMAL);
+    }
+    assertThat(controller.onWindow(30, BEHIND_US, NORMAL)).isNull();
+    assertThat(controller.onWindow(50, ON_TIME_US, NORMAL)).isNull();
+    assertThat(controller.level()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,36 @@
+package com.jakewharton.telecine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class RecordingConfigStoreTest {
+  private final AtomicInteger percentage = new AtomicInteger(100);
+  private final AtomicInteger loads = new AtomicInteger();
+  private final RecordingConfigStore store =
+      new RecordingConfigStore(new RecordingConfigStore.Loader() {
+        @Override public RecordingConfig load() {
+          loads.incrementAndGet();
+          return new RecordingConfig(true, percentage.get(), true, false, false, false, false, 0,
+              false, 0, CropRegion.FULL, false, RecordingConfig.VIDEO_CODEC_H264);
+        }
+      });
+
+  @Test public void getDoesNotReload() {
+    RecordingConfig first = store.get();
+    RecordingConfig second = store.get();
+    assertThat(second).isSameAs(first);
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test public void preferenceChangeSwapsSnapshot() {
+    RecordingConfig before = store.get();
+    percentage.set(50);
+    store.onSharedPreferenceChanged(null, "video-size");
+
+    RecordingConfig after = store.get();
+    assertThat(after.videoSizePercentage).isEqualTo(50);
+    assertThat(before.videoSizePercentage).isEqualTo(100);
+  }
+}
@@ -0,0 +1,73 @@
+package com.jakewharton.telecine;
+
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class RecordingJoinerTest {
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  @Test public void pausedTimeRemoved() throws IOException {
+    // The second piece starts 10 seconds later, as though recording was paused in between.
+    File first = TestRecordings.write(new File(temp.getRoot(), "first.mp4"), 0, 20);
+    File second = TestRecordings.write(new File(temp.getRoot(), "second.mp4"), 10000000, 10);
+    File output = new File(temp.getRoot(), "joined.mp4");
+
+    RecordingJoiner.join(Arrays.asList(first, second), output);
+
+    Track track = MovieCreator.build(output.getPath()).getTracks().get(0);
+    try {
+      assertThat(track.getSamples()).hasSize(30);
+      assertThat(track.getDuration()).isEqualTo(duration(first) + duration(second));
+      assertThat(track.getSyncSamples()).isEqualTo(new long[] { 1, 11, 21 });
+    } finally {
+      track.close();
+    }
+  }
+
+  @Test public void indexPrecedesMediaData() throws IOException {
+    File first = TestRecordings.write(new File(temp.getRoot(), "first.mp4"), 0, 10);
+    File second = TestRecordings.write(new File(temp.getRoot(), "second.mp4"), 0, 10);
+    File output = new File(temp.getRoot(), "joined.mp4");
+
+    RecordingJoiner.join(Arrays.asList(first, second), output);
+
+    try (FileChannel channel = new RandomAccessFile(output, "r").getChannel()) {
+      List<Mp4Box> boxes = Mp4Box.scan(channel);
+      assertThat(Mp4Box.find(boxes, "moov").offset)
+          .isLessThan(Mp4Box.find(boxes, "mdat").offset);
+    }
+    assertThat(FastStart.process(output)).isFalse();
+  }
+
+  @Test(expected = IOException.class) public void mismatchedPiecesRejected() throws IOException {
+    File first = TestRecordings.write(new File(temp.getRoot(), "first.mp4"), 0, 10);
+    File second = temp.newFile("second.mp4");
+    try (FileChannel channel = new RandomAccessFile(second, "rw").getChannel()) {
+      new FragmentedMp4Writer(channel, 640, 480, TestRecordings.SPS, TestRecordings.PPS, 1000000)
+          .close();
+    }
+
+    RecordingJoiner.join(Arrays.asList(first, second), new File(temp.getRoot(), "joined.mp4"));
+  }
+
+  private static long duration(File file) throws IOException {
+    Track track = MovieCreator.build(file.getPath()).getTracks().get(0);
+    try {
+      return track.getDuration();
+    } finally {
+      track.close();
+    }
+  }
+
+}
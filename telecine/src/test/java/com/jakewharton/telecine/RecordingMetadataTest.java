@@ -0,0 +1,37 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class RecordingMetadataTest {
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  @Test public void readFromMovieBox() throws IOException {
+    File fragmented = TestRecordings.write(new File(temp.getRoot(), "in.mp4"), 0, 30);
+    File file = new File(temp.getRoot(), "out.mp4");
+    assertThat(RecordingTrimmer.trim(fragmented, file, 0, 0)).isTrue();
+
+    RecordingMetadata metadata = RecordingMetadata.read(file);
+    assertThat(metadata.durationMs).isEqualTo(3000);
+    assertThat(metadata.width).isEqualTo(320);
+    assertThat(metadata.height).isEqualTo(240);
+    assertThat(metadata.sizeBytes).isEqualTo(file.length());
+  }
+
+  @Test public void fragmentedHasNoDuration() throws IOException {
+    File file = TestRecordings.write(new File(temp.getRoot(), "in.mp4"), 0, 30);
+
+    RecordingMetadata metadata = RecordingMetadata.read(file);
+    assertThat(metadata.durationMs).isEqualTo(0);
+    assertThat(metadata.width).isEqualTo(320);
+  }
+
+  @Test(expected = IOException.class) public void missingMovieBoxThrows() throws IOException {
+    RecordingMetadata.read(temp.newFile("empty.mp4"));
+  }
+}
@@ -0,0 +1,114 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class RecordingMetricsTest {
+  @Test public void steadyFrames() {
+    RecordingMetrics metrics = new RecordingMetrics(10);
+    for (int i = 0; i < 10; i++) {
+      metrics.onFrame(i * 100000L, 1000, i == 0, 5000);
+    }
+    metrics.onEnd();
+
+    assertThat(metrics.frames()).isEqualTo(10);
+    assertThat(metrics.droppedFrames()).isEqualTo(0);
+    assertThat(Math.round(metrics.actualFrameRate())).isEqualTo(10);
+    assertThat(metrics.bytesPerSecond()).isEqualTo(10000);
+    assertThat(metrics.frameIntervalUs.mean()).isEqualTo(100000);
+  }
+
+  @Test public void gapsCountAsDroppedFrames() {
+    RecordingMetrics metrics = new RecordingMetrics(10);
+    metrics.onFrame(0, 1, true, 0);
+    metrics.onFrame(100000, 1, false, 0);
+    metrics.onFrame(400000, 1, false, 0); // Two frames missing.
+    metrics.onFrame(540000, 1, false, 0); // Late, but not by a whole frame.
+    metrics.onEnd();
+
+    assertThat(metrics.droppedFrames()).isEqualTo(2);
+  }
+
+  @Test public void variableFrameRateGapsCountAsSkippedFrames() {
+    RecordingMetrics metrics = new RecordingMetrics(10, true);
+    metrics.onFrame(0, 1, true, 0);
+    metrics.onFrame(100000, 1, false, 0);
+    metrics.onFrame(1100000, 1, false, 0); // Idle screen repeated after one second.
+    metrics.onEnd();
+
+    assertThat(metrics.droppedFrames()).isEqualTo(0);
+    assertThat(metrics.skippedFrames()).isEqualTo(9);
+    assertThat(Math.round(metrics.actualFrameRate())).isEqualTo(3);
+    assertThat(metrics.toString()).contains("(variable)");
+  }
+
+  @Test public void pausedTimeNotCounted() {
+    RecordingMetrics metrics = new RecordingMetrics(10);
+    metrics.onFrame(0, 1, true, 0);
+    metrics.onFrame(100000, 1, false, 0);
+    metrics.onEnd();
+    metrics.onFrame(60000000, 1, true, 0);
+    metrics.onFrame(60100000, 1, false, 0);
+    metrics.onEnd();
+
+    assertThat(metrics.droppedFrames()).isEqualTo(0);
+    assertThat(Math.round(metrics.actualFrameRate())).isEqualTo(10);
+  }
+
+  @Test public void fileFillsInFramesForEncodersWithoutCallbacks() {
+    RecordingMetrics metrics = new RecordingMetrics(30);
+    metrics.onFile(new RecordingMetadata(2000, 1080, 1920, 500000, 60));
+
+    assertThat(metrics.frames()).isEqualTo(60);
+    assertThat(Math.round(metrics.actualFrameRate())).isEqualTo(30);
+    assertThat(metrics.bytesPerSecond()).isEqualTo(250000);
+    assertThat(metrics.toJson()).contains("\"frames\": 60,");
+  }
+
+  @Test public void windowResetsWhenTaken() {
+    RecordingMetrics metrics = new RecordingMetrics(10);
+    metrics.onFrame(0, 1, true, 5000);
+    metrics.onFrame(100000, 1, false, 30000);
+    metrics.onFrame(200000, 1, false, 10000);
+
+    RecordingMetrics.Window window = metrics.takeWindow();
+    assertThat(window.frames).isEqualTo(3);
+    assertThat(window.maxEncoderDelayUs).isEqualTo(30000);
+
+    window = metrics.takeWindow();
+    assertThat(window.frames).isEqualTo(0);
+    assertThat(window.maxEncoderDelayUs).isEqualTo(0);
+  }
+
+  @Test public void adjustmentsInJson() {
+    RecordingMetrics metrics = new RecordingMetrics(10);
+    assertThat(metrics.toJson()).contains("\"adjustments\": []");
+
+    metrics.onAdjustment(
+        new RecordingMetrics.Adjustment(2000000, "HOT", 1, 6000000, 20, 5000, 43.5f));
+    metrics.onAdjustment(
+        new RecordingMetrics.Adjustment(4000000, "RECOVERED", 0, 8000000, 20, 5000, Float.NaN));
+    String json = metrics.toJson();
+    assertThat(json).contains("{\"timeUs\": 2000000, \"reason\": \"HOT\", \"level\": 1, "
+        + "\"bitRate\": 6000000, \"frames\": 20, \"maxEncoderDelayUs\": 5000, "
+        + "\"temperatureCelsius\": 43.5}");
+    assertThat(json).contains("\"temperatureCelsius\": null}");
+    assertThat(metrics.toString()).contains("2 adjustments");
+  }
+
+  @Test public void codecAndProfileInSummary() {
+    RecordingMetrics metrics = new RecordingMetrics(30);
+    assertThat(metrics.codecDescription()).isEqualTo("unknown codec");
+    assertThat(metrics.toJson()).contains("\"codec\": null,\n  \"profile\": null,");
+
+    metrics.onCodec("video/hevc");
+    assertThat(metrics.codecDescription()).isEqualTo("HEVC");
+
+    metrics.onProfile("Main");
+    assertThat(metrics.codecDescription()).isEqualTo("HEVC Main");
+    assertThat(metrics.toString()).startsWith("HEVC Main, ");
+    assertThat(metrics.toJson())
+        .contains("\"codec\": \"video/hevc\",\n  \"profile\": \"Main\",");
+  }
+}
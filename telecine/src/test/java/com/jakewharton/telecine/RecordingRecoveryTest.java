@@ -0,0 +1,100 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class RecordingRecoveryTest {
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  @Test public void annexBConvertedToLengthPrefixed() {
+    ByteBuffer in = ByteBuffer.wrap(new byte[] {
+        0, 0, 0, 1, 0x65, 1, 2, 0, 0, 1, 0x06, 3
+    });
+    assertThat(FragmentedMp4Writer.countNalUnits(in)).isEqualTo(2);
+    ByteBuffer out = ByteBuffer.allocate(13);
+    FragmentedMp4Writer.annexBToLengthPrefixed(in, out);
+    assertThat(out.array()).isEqualTo(new byte[] {
+        0, 0, 0, 3, 0x65, 1, 2, 0, 0, 0, 2, 0x06, 3
+    });
+  }
+
+  @Test public void fragmentsStartOnKeyFrames() throws IOException {
+    File file = TestRecordings.write(new File(temp.getRoot(), "recording.mp4"), 0, 30);
+    assertThat(boxTypes(file)).containsExactly("ftyp", "moov", "moof", "mdat", "moof", "mdat",
+        "moof", "mdat").inOrder();
+  }
+
+  @Test public void completeRecordingIsIntact() throws IOException {
+    File file = TestRecordings.write(new File(temp.getRoot(), "recording.mp4"), 0, 20);
+    long length = file.length();
+    assertThat(RecordingRecovery.recover(file)).isEqualTo(RecordingRecovery.Result.INTACT);
+    assertThat(file.length()).isEqualTo(length);
+  }
+
+  @Test public void partialFragmentTruncated() throws IOException {
+    File file = TestRecordings.write(new File(temp.getRoot(), "recording.mp4"), 0, 30);
+    List<Mp4Box> boxes = scan(file);
+    Mp4Box lastMdat = boxes.get(boxes.size() - 1);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(lastMdat.offset + 20);
+    }
+
+    assertThat(RecordingRecovery.recover(file)).isEqualTo(RecordingRecovery.Result.REPAIRED);
+    assertThat(file.length()).isEqualTo(lastMdat.offset - boxes.get(boxes.size() - 2).size);
+    assertThat(boxTypes(file)).containsExactly("ftyp", "moov", "moof", "mdat", "moof", "mdat")
+        .inOrder();
+  }
+
+  @Test public void missingMovieBoxIsUnrecoverable() throws IOException {
+    File file = temp.newFile("broken.mp4");
+    try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+      ByteBuffer bytes = ByteBuffer.allocate(24);
+      bytes.putInt(8).put("ftyp".getBytes("US-ASCII"));
+      bytes.putInt(100).put("mdat".getBytes("US-ASCII"));
+      bytes.flip();
+      channel.write(bytes);
+    }
+    assertThat(RecordingRecovery.recover(file)).isEqualTo(RecordingRecovery.Result.UNRECOVERABLE);
+  }
+
+  @Test public void onlyMarkedRecordingsExamined() throws IOException {
+    File marked = TestRecordings.write(new File(temp.getRoot(), "recording.mp4"), 0, 20);
+    File unmarked = temp.newFile("other.mp4");
+    List<Mp4Box> boxes = scan(marked);
+    try (RandomAccessFile raf = new RandomAccessFile(marked, "rw")) {
+      raf.setLength(boxes.get(boxes.size() - 1).offset + 4);
+    }
+    File marker = RecordingRecovery.markerFor(marked);
+    assertThat(marker.createNewFile()).isTrue();
+
+    List<String> repaired = RecordingRecovery.recoverAll(temp.getRoot());
+    assertThat(repaired).containsExactly(marked.getPath());
+    assertThat(marker.exists()).isFalse();
+    assertThat(unmarked.exists()).isTrue();
+  }
+
+
+  private static List<Mp4Box> scan(File file) throws IOException {
+    try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+      return Mp4Box.scan(channel);
+    }
+  }
+
+  private static List<String> boxTypes(File file) throws IOException {
+    List<String> types = new ArrayList<>();
+    for (Mp4Box box : scan(file)) {
+      types.add(box.type);
+    }
+    return types;
+  }
+}
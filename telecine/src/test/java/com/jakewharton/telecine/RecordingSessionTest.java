@@ -3,70 +3,309 @@ package com.jakewharton.telecine;
 import org.junit.Test;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.jakewharton.telecine.EncoderLimits.NONE;
+import static com.jakewharton.telecine.RecordingSession.BITS_PER_PIXEL;
+import static com.jakewharton.telecine.RecordingSession.HEVC_BITS_PER_PIXEL;
 import static com.jakewharton.telecine.RecordingSession.RecordingInfo;
+import static com.jakewharton.telecine.RecordingSession.alignSize;
+import static com.jakewharton.telecine.RecordingSession.calculateBitRate;
+import static com.jakewharton.telecine.RecordingSession.calculateReplayBufferBytes;
 import static com.jakewharton.telecine.RecordingSession.calculateRecordingInfo;
+import static com.jakewharton.telecine.RecordingSession.chooseVideoMimeType;
 
 public final class RecordingSessionTest {
+  private static final EncoderLimits MACROBLOCK_ALIGNED = new EncoderLimits(1, Integer.MAX_VALUE,
+      EncoderLimits.UNKNOWN, EncoderLimits.UNKNOWN, EncoderLimits.UNKNOWN, 16, 16);
+
   @Test public void videoSizeNoCamera() {
-    RecordingInfo size = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100);
+    RecordingInfo size = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, NONE);
     assertThat(size.width).isEqualTo(1080);
     assertThat(size.height).isEqualTo(1920);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeResize() {
-    RecordingInfo size = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 75);
+    RecordingInfo size = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 75, NONE);
     assertThat(size.width).isEqualTo(810);
     assertThat(size.height).isEqualTo(1440);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeFitsInCamera() {
-    RecordingInfo size = calculateRecordingInfo(1080, 1920, 160, false, 1920, 1080, 30, 100);
+    RecordingInfo size = calculateRecordingInfo(1080, 1920, 160, false, 1920, 1080, 30, 100, NONE);
     assertThat(size.width).isEqualTo(1080);
     assertThat(size.height).isEqualTo(1920);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeFitsInCameraLandscape() {
-    RecordingInfo size = calculateRecordingInfo(1920, 1080, 160, true, 1920, 1080, 30, 100);
+    RecordingInfo size = calculateRecordingInfo(1920, 1080, 160, true, 1920, 1080, 30, 100, NONE);
     assertThat(size.width).isEqualTo(1920);
     assertThat(size.height).isEqualTo(1080);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeLargerThanCamera() {
-    RecordingInfo size = calculateRecordingInfo(2160, 3840, 160, false, 1920, 1080, 30, 100);
+    RecordingInfo size = calculateRecordingInfo(2160, 3840, 160, false, 1920, 1080, 30, 100, NONE);
     assertThat(size.width).isEqualTo(1080);
     assertThat(size.height).isEqualTo(1920);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeLargerThanCameraLandscape() {
-    RecordingInfo size = calculateRecordingInfo(3840, 2160, 160, true, 1920, 1080, 30, 100);
+    RecordingInfo size = calculateRecordingInfo(3840, 2160, 160, true, 1920, 1080, 30, 100, NONE);
     assertThat(size.width).isEqualTo(1920);
     assertThat(size.height).isEqualTo(1080);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeLargerThanCameraScaling() {
-    RecordingInfo size = calculateRecordingInfo(1200, 1920, 160, false, 1920, 1080, 30, 100);
+    RecordingInfo size = calculateRecordingInfo(1200, 1920, 160, false, 1920, 1080, 30, 100, NONE);
     assertThat(size.width).isEqualTo(1080);
     assertThat(size.height).isEqualTo(1728);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeLargerThanCameraScalingResizesFirst() {
-    RecordingInfo size = calculateRecordingInfo(1200, 1920, 160, false, 1920, 1080, 30, 75);
+    RecordingInfo size = calculateRecordingInfo(1200, 1920, 160, false, 1920, 1080, 30, 75, NONE);
     assertThat(size.width).isEqualTo(900);
     assertThat(size.height).isEqualTo(1440);
     assertThat(size.density).isEqualTo(160);
   }
 
   @Test public void videoSizeLargerThanCameraScalingLandscape() {
-    RecordingInfo size = calculateRecordingInfo(1920, 1200, 160, true, 1920, 1080, 30, 100);
+    RecordingInfo size = calculateRecordingInfo(1920, 1200, 160, true, 1920, 1080, 30, 100, NONE);
     assertThat(size.width).isEqualTo(1728);
     assertThat(size.height).isEqualTo(1080);
     assertThat(size.density).isEqualTo(160);
   }
+
+  @Test public void videoSizeEncoderMaximumReplacesCamera() {
+    EncoderLimits limits = new EncoderLimits(1, Integer.MAX_VALUE, 2560, 1440, 60, 2, 2);
+    RecordingInfo size =
+        calculateRecordingInfo(1440, 2560, 160, false, 1920, 1080, 30, 100, limits);
+    assertThat(size.width).isEqualTo(1440);
+    assertThat(size.height).isEqualTo(2560);
+  }
+
+  @Test public void videoSizeLargerThanEncoderMaximum() {
+    EncoderLimits limits = new EncoderLimits(1, Integer.MAX_VALUE, 1280, 720, 60, 2, 2);
+    RecordingInfo size = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, limits);
+    assertThat(size.width).isEqualTo(720);
+    assertThat(size.height).isEqualTo(1280);
+  }
+
+  @Test public void videoSizeEncoderMaximumWithoutSizeUsesCamera() {
+    EncoderLimits limits = new EncoderLimits(64000, 10000000);
+    RecordingInfo size =
+        calculateRecordingInfo(2160, 3840, 160, false, 1920, 1080, 30, 100, limits);
+    assertThat(size.width).isEqualTo(1080);
+    assertThat(size.height).isEqualTo(1920);
+  }
+
+  @Test public void frameRateClampedToEncoderMaximum() {
+    EncoderLimits limits = new EncoderLimits(1, Integer.MAX_VALUE, 1920, 1080, 24, 2, 2);
+    RecordingInfo info = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, limits);
+    assertThat(info.frameRate).isEqualTo(24);
+  }
+
+  @Test public void videoSizeAlignedToEncoder() {
+    RecordingInfo size =
+        calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 75, MACROBLOCK_ALIGNED);
+    assertThat(size.width).isEqualTo(800);
+    assertThat(size.height).isEqualTo(1424);
+    assertThat(size.displayWidth).isEqualTo(800);
+    assertThat(size.displayHeight).isEqualTo(1424);
+  }
+
+  @Test public void videoSizeAlignedToEncoderLandscape() {
+    RecordingInfo size =
+        calculateRecordingInfo(1920, 1200, 160, true, 1920, 1080, 30, 100, MACROBLOCK_ALIGNED);
+    assertThat(size.width).isEqualTo(1712);
+    assertThat(size.height).isEqualTo(1072);
+    assertThat(size.displayWidth).isEqualTo(1712);
+    assertThat(size.displayHeight).isEqualTo(1072);
+  }
+
+  @Test public void videoSizeAlignedKeepsAspectRatio() {
+    RecordingInfo size =
+        calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, MACROBLOCK_ALIGNED);
+    assertThat(size.width).isEqualTo(1072);
+    assertThat(size.height).isEqualTo(1904);
+    assertThat(Math.abs((float) size.width / size.height - 1080f / 1920)).isLessThan(0.001f);
+  }
+
+  @Test public void videoSizeAlreadyAlignedIsUnchanged() {
+    RecordingInfo size =
+        calculateRecordingInfo(1280, 720, 160, true, -1, -1, 30, 100, MACROBLOCK_ALIGNED);
+    assertThat(size.width).isEqualTo(1280);
+    assertThat(size.height).isEqualTo(720);
+  }
+
+  @Test public void videoSizeAlignedIsAtLeastEven() {
+    RecordingInfo size = calculateRecordingInfo(1081, 1921, 160, false, -1, -1, 30, 100, NONE);
+    assertThat(size.width % 2).isEqualTo(0);
+    assertThat(size.height % 2).isEqualTo(0);
+  }
+
+  @Test public void videoSizeAlignedNeverExceedsEncoderMaximum() {
+    EncoderLimits limits = new EncoderLimits(1, Integer.MAX_VALUE, 1920, 1080, 60, 16, 16);
+    RecordingInfo size =
+        calculateRecordingInfo(1920, 1200, 160, true, -1, -1, 30, 100, limits);
+    assertThat(size.width % 16).isEqualTo(0);
+    assertThat(size.height % 16).isEqualTo(0);
+    assertThat(size.width).isAtMost(1920);
+    assertThat(size.height).isAtMost(1080);
+  }
+
+  @Test public void videoSizeCroppedAlignedToEncoder() {
+    CropRegion crop = new CropRegion(0.25f, 0.5f, 0.75f, 1);
+    RecordingInfo info = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100,
+        MACROBLOCK_ALIGNED, crop);
+    assertThat(info.width).isEqualTo(528);
+    assertThat(info.height).isEqualTo(944);
+    // The virtual display is scaled so the cropped region exactly fills the aligned frame.
+    assertThat(info.displayWidth).isEqualTo(1056);
+    assertThat(info.displayHeight).isEqualTo(1888);
+  }
+
+  @Test public void alignSizeTinyFrameIsOneBlock() {
+    assertThat(alignSize(10, 6, MACROBLOCK_ALIGNED)).isEqualTo(new int[] { 16, 16 });
+  }
+
+  @Test public void videoCodecH264IsUsedWhenPreferred() {
+    EncoderCapabilities.Encoder hevc = hevcEncoder(true);
+    assertThat(chooseVideoMimeType(RecordingConfig.VIDEO_CODEC_H264, true, hevc))
+        .isEqualTo("video/avc");
+  }
+
+  @Test public void videoCodecHevcWithHardwareEncoder() {
+    EncoderCapabilities.Encoder hevc = hevcEncoder(true);
+    assertThat(chooseVideoMimeType(RecordingConfig.VIDEO_CODEC_HEVC, true, hevc))
+        .isEqualTo("video/hevc");
+  }
+
+  @Test public void videoCodecHevcFallsBackWithoutEncoder() {
+    assertThat(chooseVideoMimeType(RecordingConfig.VIDEO_CODEC_HEVC, true, null))
+        .isEqualTo("video/avc");
+  }
+
+  @Test public void videoCodecHevcFallsBackWithSoftwareEncoder() {
+    EncoderCapabilities.Encoder hevc = hevcEncoder(false);
+    assertThat(chooseVideoMimeType(RecordingConfig.VIDEO_CODEC_HEVC, true, hevc))
+        .isEqualTo("video/avc");
+  }
+
+  @Test public void videoCodecHevcFallsBackWhenUnsupported() {
+    EncoderCapabilities.Encoder hevc = hevcEncoder(true);
+    assertThat(chooseVideoMimeType(RecordingConfig.VIDEO_CODEC_HEVC, false, hevc))
+        .isEqualTo("video/avc");
+  }
+
+  @Test public void bitRateLowerForHevc() {
+    RecordingInfo avc = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, NONE,
+        CropRegion.FULL, BITS_PER_PIXEL);
+    RecordingInfo hevc = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, NONE,
+        CropRegion.FULL, HEVC_BITS_PER_PIXEL);
+    assertThat(hevc.width).isEqualTo(avc.width);
+    assertThat(hevc.height).isEqualTo(avc.height);
+    assertThat(hevc.bitRate).isEqualTo(Math.round(avc.bitRate * 0.6f));
+  }
+
+  @Test public void bitRateMatchesPreviousDefaultAt1080p() {
+    RecordingInfo info = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, NONE);
+    assertThat(info.bitRate).isEqualTo(8087040);
+  }
+
+  @Test public void bitRateScalesWithSizePercentage() {
+    RecordingInfo full = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, NONE);
+    RecordingInfo half = calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 50, NONE);
+    assertThat(half.bitRate).isEqualTo(full.bitRate / 4);
+  }
+
+  @Test public void bitRateUsesCalculatedSize() {
+    RecordingInfo info = calculateRecordingInfo(2160, 3840, 160, false, 1920, 1080, 30, 100, NONE);
+    assertThat(info.bitRate).isEqualTo(calculateBitRate(1080, 1920, 30, BITS_PER_PIXEL, NONE));
+  }
+
+  @Test public void videoSizeCropped() {
+    CropRegion crop = new CropRegion(0.25f, 0.5f, 0.75f, 1);
+    RecordingInfo info =
+        calculateRecordingInfo(1080, 1920, 160, false, 1920, 1080, 30, 100, NONE, crop);
+    assertThat(info.width).isEqualTo(540);
+    assertThat(info.height).isEqualTo(960);
+    assertThat(info.displayWidth).isEqualTo(1080);
+    assertThat(info.displayHeight).isEqualTo(1920);
+    assertThat(info.isCropped()).isTrue();
+    assertThat(info.bitRate).isEqualTo(calculateBitRate(540, 960, 30, BITS_PER_PIXEL, NONE));
+  }
+
+  @Test public void videoSizeCroppedAndResized() {
+    CropRegion crop = new CropRegion(0, 0, 0.5f, 0.5f);
+    RecordingInfo info =
+        calculateRecordingInfo(1080, 1920, 160, false, 1920, 1080, 30, 50, NONE, crop);
+    assertThat(info.width).isEqualTo(270);
+    assertThat(info.height).isEqualTo(480);
+    assertThat(info.displayWidth).isEqualTo(540);
+    assertThat(info.displayHeight).isEqualTo(960);
+  }
+
+  @Test public void videoSizeCroppedLargerThanCamera() {
+    // A wide region of a portrait 4K display is limited by the camera's 1080 pixel width.
+    CropRegion crop = new CropRegion(0, 0, 1, 0.25f);
+    RecordingInfo info =
+        calculateRecordingInfo(2160, 3840, 160, false, 1920, 1080, 30, 100, NONE, crop);
+    assertThat(info.width).isEqualTo(1080);
+    assertThat(info.height).isEqualTo(480);
+    assertThat(info.displayWidth).isEqualTo(1080);
+    assertThat(info.displayHeight).isEqualTo(1920);
+  }
+
+  @Test public void videoSizeCroppedIsEven() {
+    CropRegion crop = new CropRegion(0.1f, 0.1f, 0.6f, 0.6f);
+    RecordingInfo info =
+        calculateRecordingInfo(1081, 1921, 160, false, -1, -1, 30, 100, NONE, crop);
+    assertThat(info.width % 2).isEqualTo(0);
+    assertThat(info.height % 2).isEqualTo(0);
+  }
+
+  @Test public void videoSizeFullIsNotCropped() {
+    RecordingInfo info =
+        calculateRecordingInfo(1080, 1920, 160, false, -1, -1, 30, 100, NONE, CropRegion.FULL);
+    assertThat(info.isCropped()).isFalse();
+    assertThat(info.displayWidth).isEqualTo(1080);
+    assertThat(info.displayHeight).isEqualTo(1920);
+  }
+
+  @Test public void bitRateScalesWithFrameRate() {
+    assertThat(calculateBitRate(1000, 1000, 60, 0.1f, NONE)).isEqualTo(6000000);
+    assertThat(calculateBitRate(1000, 1000, 30, 0.1f, NONE)).isEqualTo(3000000);
+  }
+
+  @Test public void bitRateClampedToEncoderMaximum() {
+    EncoderLimits limits = new EncoderLimits(64000, 10000000);
+    assertThat(calculateBitRate(1440, 2560, 60, BITS_PER_PIXEL, limits)).isEqualTo(10000000);
+  }
+
+  @Test public void bitRateClampedToEncoderMinimum() {
+    EncoderLimits limits = new EncoderLimits(1000000, 10000000);
+    assertThat(calculateBitRate(100, 100, 10, BITS_PER_PIXEL, limits)).isEqualTo(1000000);
+  }
+
+  @Test public void bitRateDoesNotOverflow() {
+    assertThat(calculateBitRate(8192, 8192, 240, 1f, NONE)).isEqualTo(Integer.MAX_VALUE);
+  }
+
+  @Test public void replayBufferHoldsReplayPlusMargin() {
+    assertThat(calculateReplayBufferBytes(8000000)).isEqualTo(1000000 * 35);
+  }
+
+  @Test public void replayBufferIsCapped() {
+    assertThat(calculateReplayBufferBytes(Integer.MAX_VALUE)).isEqualTo(64 * 1024 * 1024);
+  }
+
+  private static EncoderCapabilities.Encoder hevcEncoder(boolean hardware) {
+    return new EncoderCapabilities.Encoder("OMX.test.hevc", "video/hevc", hardware,
+        new int[] { 1 }, NONE);
+  }
 }
@@ -0,0 +1,72 @@
+package com.jakewharton.telecine;
+
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class RecordingTrimmerTest {
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  @Test public void startMovesForwardToSyncSample() throws IOException {
+    File input = TestRecordings.write(new File(temp.getRoot(), "in.mp4"), 0, 30);
+    File output = new File(temp.getRoot(), "out.mp4");
+
+    assertThat(RecordingTrimmer.trim(input, output, 500000, 0)).isTrue();
+
+    Track track = MovieCreator.build(output.getPath()).getTracks().get(0);
+    try {
+      // Frames 0-9 are dropped since the first sync sample at or after 500ms is frame 10.
+      assertThat(track.getSamples()).hasSize(20);
+      assertThat(track.getSyncSamples()).isEqualTo(new long[] { 1, 11 });
+    } finally {
+      track.close();
+    }
+  }
+
+  @Test public void everySampleIsSyncWithoutSyncSampleTable() throws IOException {
+    File input = TestRecordings.write(new File(temp.getRoot(), "in.mp4"), 0, 30, 1);
+    File output = new File(temp.getRoot(), "out.mp4");
+
+    assertThat(RecordingTrimmer.trim(input, output, 550000, 0)).isTrue();
+
+    Track track = MovieCreator.build(output.getPath()).getTracks().get(0);
+    try {
+      // Starts at frame 6, the first at or after 550ms.
+      assertThat(track.getSamples()).hasSize(24);
+    } finally {
+      track.close();
+    }
+  }
+
+  @Test public void endCutsAtAnySample() throws IOException {
+    File input = TestRecordings.write(new File(temp.getRoot(), "in.mp4"), 0, 30);
+    File output = new File(temp.getRoot(), "out.mp4");
+
+    // The recording lasts 3s, so it now ends at 2.4s.
+    assertThat(RecordingTrimmer.trim(input, output, 0, 600000)).isTrue();
+
+    Track track = MovieCreator.build(output.getPath()).getTracks().get(0);
+    try {
+      assertThat(track.getSamples()).hasSize(24);
+      assertThat(track.getSyncSamples()).isEqualTo(new long[] { 1, 11, 21 });
+    } finally {
+      track.close();
+    }
+  }
+
+  @Test public void nothingLeftWritesNothing() throws IOException {
+    File input = TestRecordings.write(new File(temp.getRoot(), "in.mp4"), 0, 30);
+    File output = new File(temp.getRoot(), "out.mp4");
+
+    // The last sync sample is at 2s, which is after the trimmed end.
+    assertThat(RecordingTrimmer.trim(input, output, 2100000, 0)).isFalse();
+    assertThat(RecordingTrimmer.trim(input, output, 1000000, 2000000)).isFalse();
+    assertThat(output.exists()).isFalse();
+  }
+}
@@ -0,0 +1,189 @@
+package com.jakewharton.telecine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.jakewharton.telecine.SampleRingBuffer.FLAG_KEY_FRAME;
+
+public final class SampleRingBufferTest {
+  private static final long FRAME_US = 100000; // 10fps keeps the arithmetic readable.
+
+  @Test public void readsSamplesInOrder() {
+    SampleRingBuffer buffer = new SampleRingBuffer(1024, 16);
+    write(buffer, 0, FLAG_KEY_FRAME, 10);
+    write(buffer, 1, 0, 10);
+    write(buffer, 2, 0, 10);
+
+    List<Sample> samples = readAll(buffer);
+    assertThat(samples).hasSize(3);
+    for (int i = 0; i < 3; i++) {
+      assertThat(samples.get(i).index).isEqualTo(i);
+      assertThat(samples.get(i).intact).isTrue();
+    }
+  }
+
+  @Test public void leadingNonKeyFramesAreDropped() {
+    SampleRingBuffer buffer = new SampleRingBuffer(1024, 16);
+    write(buffer, 0, 0, 10);
+    write(buffer, 1, 0, 10);
+    write(buffer, 2, FLAG_KEY_FRAME, 10);
+
+    assertThat(buffer.sampleCount()).isEqualTo(1);
+    assertThat(buffer.droppedSamples()).isEqualTo(2);
+    assertThat(buffer.oldestPresentationTimeUs()).isEqualTo(2 * FRAME_US);
+  }
+
+  @Test public void evictionRemovesWholeGroupsOfPictures() {
+    // Room for exactly 10 samples of 10 bytes.
+    SampleRingBuffer buffer = new SampleRingBuffer(100, 64);
+    for (int i = 0; i < 10; i++) {
+      write(buffer, i, i % 5 == 0 ? FLAG_KEY_FRAME : 0, 10);
+    }
+    assertThat(buffer.sampleCount()).isEqualTo(10);
+
+    write(buffer, 10, FLAG_KEY_FRAME, 10);
+
+    // The first group of five was evicted to make room for one sample.
+    assertThat(buffer.sampleCount()).isEqualTo(6);
+    assertThat(buffer.oldestPresentationTimeUs()).isEqualTo(5 * FRAME_US);
+    assertThat(readAll(buffer).get(0).flags & FLAG_KEY_FRAME).isEqualTo(FLAG_KEY_FRAME);
+  }
+
+  @Test public void evictionWhenSampleSlotsAreFull() {
+    SampleRingBuffer buffer = new SampleRingBuffer(1024, 4);
+    for (int i = 0; i < 6; i++) {
+      write(buffer, i, i % 2 == 0 ? FLAG_KEY_FRAME : 0, 1);
+    }
+    assertThat(buffer.sampleCount()).isEqualTo(4);
+    assertThat(buffer.oldestPresentationTimeUs()).isEqualTo(2 * FRAME_US);
+  }
+
+  @Test public void evictingCurrentGroupDropsUntilNextKeyFrame() {
+    SampleRingBuffer buffer = new SampleRingBuffer(30, 64);
+    write(buffer, 0, FLAG_KEY_FRAME, 10);
+    write(buffer, 1, 0, 10);
+    write(buffer, 2, 0, 10);
+    write(buffer, 3, 0, 10); // Only group is evicted and this sample cannot be decoded.
+
+    assertThat(buffer.sampleCount()).isEqualTo(0);
+    write(buffer, 4, 0, 10);
+    assertThat(buffer.sampleCount()).isEqualTo(0);
+    write(buffer, 5, FLAG_KEY_FRAME, 10);
+    assertThat(buffer.sampleCount()).isEqualTo(1);
+    assertThat(buffer.droppedSamples()).isEqualTo(2);
+  }
+
+  @Test public void oversizedSampleClearsBuffer() {
+    SampleRingBuffer buffer = new SampleRingBuffer(50, 64);
+    write(buffer, 0, FLAG_KEY_FRAME, 10);
+    write(buffer, 1, 0, 51);
+    assertThat(buffer.sampleCount()).isEqualTo(0);
+    assertThat(buffer.droppedSamples()).isEqualTo(1);
+  }
+
+  @Test public void wrappedSamplesAreIntact() {
+    SampleRingBuffer buffer = new SampleRingBuffer(100, 64);
+    // Sizes which do not divide the capacity force a wasted tail at each wrap.
+    for (int i = 0; i < 200; i++) {
+      write(buffer, i, i % 3 == 0 ? FLAG_KEY_FRAME : 0, 7 + i % 5);
+    }
+    List<Sample> samples = readAll(buffer);
+    assertThat(samples).isNotEmpty();
+    assertThat(samples.get(0).flags & FLAG_KEY_FRAME).isEqualTo(FLAG_KEY_FRAME);
+    int expected = samples.get(0).index;
+    for (Sample sample : samples) {
+      assertThat(sample.index).isEqualTo(expected++);
+      assertThat(sample.intact).isTrue();
+    }
+    assertThat(expected).isEqualTo(200);
+  }
+
+  @Test public void memoryIsConstantForLongSessions() {
+    SampleRingBuffer buffer = new SampleRingBuffer(4096, 128);
+    for (int i = 0; i < 100000; i++) {
+      write(buffer, i, i % 30 == 0 ? FLAG_KEY_FRAME : 0, 20 + i % 13);
+      assertThat(buffer.sampleCount()).isAtMost(128);
+    }
+    assertThat(buffer.capacityBytes()).isEqualTo(4096);
+    assertThat(buffer.newestPresentationTimeUs()).isEqualTo(99999 * FRAME_US);
+  }
+
+  @Test public void readStartsAtKeyFrameCoveringDuration() {
+    SampleRingBuffer buffer = new SampleRingBuffer(4096, 256);
+    for (int i = 0; i < 100; i++) {
+      write(buffer, i, i % 10 == 0 ? FLAG_KEY_FRAME : 0, 10);
+    }
+    // The last two seconds begin at sample 79, so reading must start at the key frame 70.
+    List<Sample> samples = read(buffer, 2000000);
+    assertThat(samples.get(0).index).isEqualTo(70);
+    assertThat(samples.get(samples.size() - 1).index).isEqualTo(99);
+    assertThat(samples).hasSize(30);
+  }
+
+  @Test public void readOnKeyFrameBoundary() {
+    SampleRingBuffer buffer = new SampleRingBuffer(4096, 256);
+    for (int i = 0; i <= 100; i++) {
+      write(buffer, i, i % 10 == 0 ? FLAG_KEY_FRAME : 0, 10);
+    }
+    List<Sample> samples = read(buffer, 2000000);
+    assertThat(samples.get(0).index).isEqualTo(80);
+  }
+
+  @Test public void readLongerThanBufferedReturnsEverything() {
+    SampleRingBuffer buffer = new SampleRingBuffer(4096, 256);
+    for (int i = 0; i < 25; i++) {
+      write(buffer, i, i % 10 == 0 ? FLAG_KEY_FRAME : 0, 10);
+    }
+    assertThat(read(buffer, 60000000)).hasSize(25);
+  }
+
+  @Test public void readEmpty() {
+    SampleRingBuffer buffer = new SampleRingBuffer(100, 4);
+    assertThat(read(buffer, 1000)).isEmpty();
+  }
+
+  /** Write a sample of {@code size} bytes, each of which is {@code index}. */
+  private static void write(SampleRingBuffer buffer, int index, int flags, int size) {
+    ByteBuffer sample = ByteBuffer.allocate(size + 6);
+    sample.position(3); // Exercise a non-zero position and a limit short of capacity.
+    for (int i = 0; i < size; i++) {
+      sample.put((byte) index);
+    }
+    sample.flip().position(3);
+    buffer.write(sample, index * FRAME_US, flags);
+  }
+
+  private static List<Sample> readAll(SampleRingBuffer buffer) {
+    return read(buffer, Long.MAX_VALUE / 2);
+  }
+
+  private static List<Sample> read(SampleRingBuffer buffer, long durationUs) {
+    final List<Sample> samples = new ArrayList<>();
+    buffer.read(durationUs, new SampleRingBuffer.Reader() {
+      @Override public void onSample(ByteBuffer data, long presentationTimeUs, int flags) {
+        int index = (int) (presentationTimeUs / FRAME_US);
+        boolean intact = data.hasRemaining();
+        while (data.hasRemaining()) {
+          intact &= data.get() == (byte) index;
+        }
+        samples.add(new Sample(index, flags, intact));
+      }
+    });
+    return samples;
+  }
+
+  private static final class Sample {
+    final int index;
+    final int flags;
+    final boolean intact;
+
+    Sample(int index, int flags, boolean intact) {
+      this.index = index;
+      this.flags = flags;
+      this.intact = intact;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class SegmentManifestTest {
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+  @Test public void writtenAfterEachSegment() throws IOException {
+    File file = new File(temp.getRoot(), "Telecine.segments.json");
+    SegmentManifest manifest = new SegmentManifest(file);
+
+    manifest.add(new SegmentManifest.Segment("Telecine_001.mp4", 0, 600000000, 1234));
+    assertThat(read(file)).isEqualTo(""
+        + "{\n"
+        + "  \"segments\": [\n"
+        + "    {\"file\": \"Telecine_001.mp4\", \"startUs\": 0, \"durationUs\": 600000000,"
+        + " \"bytes\": 1234}\n"
+        + "  ]\n"
+        + "}\n");
+
+    manifest.add(new SegmentManifest.Segment("Telecine_002.mp4", 600000000, 5, 6));
+    assertThat(read(file)).contains("\"Telecine_002.mp4\", \"startUs\": 600000000");
+    assertThat(temp.getRoot().list()).asList().containsExactly("Telecine.segments.json");
+  }
+
+  @Test public void emptyManifest() {
+    SegmentManifest manifest = new SegmentManifest(new File(temp.getRoot(), "x.json"));
+    assertThat(manifest.toJson()).isEqualTo("{\n  \"segments\": [\n  ]\n}\n");
+  }
+
+  @Test public void policyRollsOverOnEitherLimit() {
+    SegmentPolicy policy = new SegmentPolicy(1000, 500);
+    assertThat(policy.shouldRollOver(499, 999)).isFalse();
+    assertThat(policy.shouldRollOver(500, 0)).isTrue();
+    assertThat(policy.shouldRollOver(0, 1000)).isTrue();
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+  }
+}
@@ -0,0 +1,35 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ShareTranscoderTest {
+  @Test public void targetSizeScalesShortSide() {
+    assertThat(ShareTranscoder.targetSize(1080, 1920)).isEqualTo(new int[] { 480, 852 });
+    assertThat(ShareTranscoder.targetSize(1440, 2560)).isEqualTo(new int[] { 480, 852 });
+  }
+
+  @Test public void targetSizeKeepsOrientation() {
+    assertThat(ShareTranscoder.targetSize(1920, 1080)).isEqualTo(new int[] { 852, 480 });
+  }
+
+  @Test public void targetSizeIsEven() {
+    int[] size = ShareTranscoder.targetSize(1000, 1333);
+    assertThat(size[0] % 2).isEqualTo(0);
+    assertThat(size[1] % 2).isEqualTo(0);
+  }
+
+  @Test public void smallSourceIsNotTranscoded() {
+    assertThat(ShareTranscoder.targetSize(480, 800)).isNull();
+    assertThat(ShareTranscoder.targetSize(800, 480)).isNull();
+  }
+
+  @Test public void outputIsNamedAfterSource() {
+    File output = ShareTranscoder.outputFor(new File("/cache/share"),
+        new File("/movies/Telecine/Telecine_2016-01-01-00-00-00.mp4"));
+    assertThat(output).isEqualTo(
+        new File("/cache/share/Telecine_2016-01-01-00-00-00_share.mp4"));
+  }
+}
@@ -0,0 +1,86 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.jakewharton.telecine.StorageBudget.Action.CONTINUE;
+import static com.jakewharton.telecine.StorageBudget.Action.STEP_DOWN;
+import static com.jakewharton.telecine.StorageBudget.Action.STOP;
+import static com.jakewharton.telecine.StorageBudget.RESERVED_BYTES;
+
+public final class StorageBudgetTest {
+  private static final int VIDEO_BIT_RATE = 8000000;
+  /** One second of {@link #VIDEO_BIT_RATE} video, including container overhead. */
+  private static final long SECOND_BYTES = 1020000;
+
+  private final StorageBudget budget = new StorageBudget(VIDEO_BIT_RATE, 0, 0, true);
+
+  private static long free(long seconds) {
+    return RESERVED_BYTES + seconds * SECOND_BYTES;
+  }
+
+  @Test public void bytesPerSecondIncludesAudioAndOverhead() {
+    assertThat(budget.bytesPerSecond()).isEqualTo(SECOND_BYTES);
+    StorageBudget withAudio = new StorageBudget(VIDEO_BIT_RATE, 64000, 0, false);
+    assertThat(withAudio.bytesPerSecond()).isEqualTo(1028160);
+  }
+
+  @Test public void secondsLeftExcludesReserve() {
+    assertThat(budget.secondsLeft(free(100))).isEqualTo(100);
+    assertThat(budget.secondsLeft(free(100) - 1)).isEqualTo(99);
+    assertThat(budget.secondsLeft(RESERVED_BYTES)).isEqualTo(0);
+    assertThat(budget.secondsLeft(0)).isEqualTo(0);
+  }
+
+  @Test public void secondsLeftExcludesFinalizeBytes() {
+    StorageBudget replay = new StorageBudget(0, 0, 10 * 1024 * 1024, false);
+    assertThat(replay.secondsLeft(RESERVED_BYTES + 10 * 1024 * 1024)).isEqualTo(0);
+    assertThat(replay.secondsLeft(RESERVED_BYTES + 10 * 1024 * 1024 + 1))
+        .isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test public void canStartNeedsMinimumDuration() {
+    assertThat(budget.canStart(free(StorageBudget.MIN_START_SECONDS))).isTrue();
+    assertThat(budget.canStart(free(StorageBudget.MIN_START_SECONDS) - 1)).isFalse();
+  }
+
+  @Test public void checkContinuesWithPlentyOfSpace() {
+    assertThat(budget.check(free(3600))).isEqualTo(CONTINUE);
+    assertThat(budget.check(free(StorageBudget.STEP_DOWN_SECONDS))).isEqualTo(CONTINUE);
+  }
+
+  @Test public void checkStepsDownWhenLow() {
+    assertThat(budget.check(free(StorageBudget.STEP_DOWN_SECONDS - 1))).isEqualTo(STEP_DOWN);
+    assertThat(budget.steppedDownBitRate()).isEqualTo(VIDEO_BIT_RATE / 2);
+  }
+
+  @Test public void steppingDownDoublesTimeLeft() {
+    StorageBudget lower = budget.withVideoBitRate(budget.steppedDownBitRate());
+    assertThat(lower.secondsLeft(free(40))).isEqualTo(80);
+    assertThat(lower.check(free(40))).isEqualTo(CONTINUE);
+  }
+
+  @Test public void checkStopsBeforeFull() {
+    assertThat(budget.check(free(StorageBudget.STOP_SECONDS))).isEqualTo(STEP_DOWN);
+    assertThat(budget.check(free(StorageBudget.STOP_SECONDS) - 1)).isEqualTo(STOP);
+  }
+
+  @Test public void noStepDownAtMinimumBitRate() {
+    StorageBudget low = budget.withVideoBitRate(StorageBudget.MIN_VIDEO_BIT_RATE);
+    assertThat(low.steppedDownBitRate()).isEqualTo(0);
+    assertThat(low.check(RESERVED_BYTES + 30 * low.bytesPerSecond())).isEqualTo(CONTINUE);
+  }
+
+  @Test public void noStepDownWhenNotAdjustable() {
+    StorageBudget fixed = budget.withAdjustable(false);
+    assertThat(fixed.steppedDownBitRate()).isEqualTo(0);
+    assertThat(fixed.check(free(30))).isEqualTo(CONTINUE);
+    assertThat(fixed.check(free(1))).isEqualTo(STOP);
+  }
+
+  @Test public void checkIntervalShrinksAsSpaceRunsOut() {
+    assertThat(budget.nextCheckDelayMs(free(3600))).isEqualTo(StorageBudget.MAX_CHECK_INTERVAL_MS);
+    assertThat(budget.nextCheckDelayMs(free(40))).isEqualTo(10000);
+    assertThat(budget.nextCheckDelayMs(free(2))).isEqualTo(StorageBudget.MIN_CHECK_INTERVAL_MS);
+  }
+}
@@ -0,0 +1,42 @@
+package com.jakewharton.telecine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Writes small synthetic H.264 recordings for tests. */
+final class TestRecordings {
+  static final byte[] SPS = { 0x67, 0x42, 0x00, 0x1f, (byte) 0xe9, 0x01, 0x40, 0x7b, 0x20 };
+  static final byte[] PPS = { 0x68, (byte) 0xce, 0x38, (byte) 0x80 };
+
+  private TestRecordings() {
+    throw new AssertionError("No instances.");
+  }
+
+  /**
+   * Writes {@code frames} frames at 10 fps starting at {@code startUs}, with a key frame every
+   * second, as a fragmented MP4.
+   */
+  static File write(File file, long startUs, int frames) throws IOException {
+    return write(file, startUs, frames, 10);
+  }
+
+  /** Like {@link #write(File, long, int)} with a key frame every {@code keyFrameInterval} frames. */
+  static File write(File file, long startUs, int frames, int keyFrameInterval)
+      throws IOException {
+    try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+      FragmentedMp4Writer writer = new FragmentedMp4Writer(channel, 320, 240, SPS, PPS, 1000000);
+      for (int i = 0; i < frames; i++) {
+        boolean keyFrame = i % keyFrameInterval == 0;
+        ByteBuffer sample = ByteBuffer.wrap(new byte[] {
+            0, 0, 0, 1, (byte) (keyFrame ? 0x65 : 0x41), (byte) i, 0, 0
+        });
+        writer.writeSample(sample, startUs + i * 100000L, keyFrame);
+      }
+      writer.close();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,25 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ThumbnailLoaderTest {
+  @Test public void sampleSizeKeepsImageAtLeastRequestedSize() {
+    assertThat(ThumbnailLoader.calculateInSampleSize(1440, 2560, 1350, 768)).isEqualTo(1);
+    assertThat(ThumbnailLoader.calculateInSampleSize(2560, 1440, 1350, 768)).isEqualTo(1);
+    assertThat(ThumbnailLoader.calculateInSampleSize(2560, 1440, 450, 256)).isEqualTo(4);
+    assertThat(ThumbnailLoader.calculateInSampleSize(2560, 1440, 320, 180)).isEqualTo(8);
+  }
+
+  @Test public void sampleSizeNeverUpsamples() {
+    assertThat(ThumbnailLoader.calculateInSampleSize(100, 100, 450, 256)).isEqualTo(1);
+  }
+
+  @Test public void diskKeyIsStableAndFileNameSafe() {
+    String key = ThumbnailLoader.diskKey("content://media/external/video/media/42");
+    assertThat(key).isEqualTo(ThumbnailLoader.diskKey("content://media/external/video/media/42"));
+    assertThat(key).isNotEqualTo(ThumbnailLoader.diskKey("content://media/external/video/media/43"));
+    assertThat(key).matches("[0-9a-f]{40}\\.jpg");
+  }
+}
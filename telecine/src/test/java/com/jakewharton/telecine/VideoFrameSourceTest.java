@@ -0,0 +1,25 @@
+package com.jakewharton.telecine;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class VideoFrameSourceTest {
+  @Test public void noSamplesBeforeFrameAtSampleTime() {
+    assertThat(VideoFrameSource.samplesBefore(100000, 100000, 100000)).isEqualTo(0);
+    assertThat(VideoFrameSource.samplesBefore(100000, 50000, 100000)).isEqualTo(0);
+  }
+
+  @Test public void samplesInGapBeforeFrame() {
+    assertThat(VideoFrameSource.samplesBefore(100000, 100001, 100000)).isEqualTo(1);
+    assertThat(VideoFrameSource.samplesBefore(100000, 300000, 100000)).isEqualTo(2);
+    assertThat(VideoFrameSource.samplesBefore(100000, 350000, 100000)).isEqualTo(3);
+  }
+
+  @Test public void rgbaBecomesOpaqueArgb() {
+    // Bytes R=0x11 G=0x22 B=0x33 A=0x00 read as a little endian int.
+    int[] pixels = { 0x00332211, 0xFFFFFFFF };
+    VideoFrameSource.rgbaToArgb(pixels);
+    assertThat(pixels).isEqualTo(new int[] { 0xFF112233, 0xFFFFFFFF });
+  }
+}